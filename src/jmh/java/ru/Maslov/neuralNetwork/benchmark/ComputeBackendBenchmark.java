@@ -0,0 +1,76 @@
+package ru.Maslov.neuralNetwork.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import ru.Maslov.neuralNetwork.generator.CircleGenerator;
+import ru.Maslov.neuralNetwork.generator.FigureDataGenerator;
+import ru.Maslov.neuralNetwork.generator.SquareGenerator;
+import ru.Maslov.neuralNetwork.generator.TriangleGenerator;
+import ru.Maslov.neuralNetwork.model.ComputeBackend;
+import ru.Maslov.neuralNetwork.model.FigureImage;
+import ru.Maslov.neuralNetwork.model.FigureType;
+import ru.Maslov.neuralNetwork.model.NetworkTopology;
+import ru.Maslov.neuralNetwork.model.NeuralNetwork;
+import ru.Maslov.neuralNetwork.model.Precision;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Бенчмарки предсказания на изображениях 64x64 для каждого вычислителя и точности.
+ * Вычислитель VECTOR доступен только в сборке с профилем {@code vector}: {@code ./mvnw -Pbenchmark,vector verify}.
+ * Список вычислителей передается профилями Maven ({@code jmh.backend.args}): без профиля {@code vector} измеряется
+ * только SCALAR. Модуль Vector API форки JMH получают из параметров родительской JVM ({@code vector.module.args}).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ComputeBackendBenchmark {
+    private static final int IMAGE_SIZE = 64;
+
+    @Param({"SCALAR", "VECTOR"})
+    private ComputeBackend backend;
+
+    @Param({"DOUBLE", "FLOAT"})
+    private Precision precision;
+
+    private NeuralNetwork neuralNetwork;
+    private List<FigureImage> validDataSet;
+    private int index;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        FigureDataGenerator figureDataGenerator = new FigureDataGenerator(List.of(
+                new CircleGenerator(IMAGE_SIZE), new SquareGenerator(IMAGE_SIZE), new TriangleGenerator(IMAGE_SIZE)));
+        validDataSet = figureDataGenerator.getValidDataSet(1);
+
+        neuralNetwork = new NeuralNetwork(NetworkTopology.of(IMAGE_SIZE, 256, 64), 1);
+        neuralNetwork.configureCompute(backend, precision);
+    }
+
+    @Benchmark
+    public FigureType predict() {
+        FigureImage figure = validDataSet.get(index);
+        index = index + 1 == validDataSet.size() ? 0 : index + 1;
+        return neuralNetwork.predict(figure);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public List<FigureType> predictBatch() {
+        return neuralNetwork.predictBatch(validDataSet);
+    }
+}
@@ -0,0 +1,97 @@
+package ru.Maslov.neuralNetwork.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import ru.Maslov.neuralNetwork.generator.CircleGenerator;
+import ru.Maslov.neuralNetwork.generator.FigureDataGenerator;
+import ru.Maslov.neuralNetwork.generator.FigureDataSet;
+import ru.Maslov.neuralNetwork.generator.FigureDataStore;
+import ru.Maslov.neuralNetwork.generator.SquareGenerator;
+import ru.Maslov.neuralNetwork.generator.TriangleGenerator;
+import ru.Maslov.neuralNetwork.model.FigureImage;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Бенчмарк генерации тренировочного набора данных и прохода по тому же набору, сгенерированному заново
+ * лениво (в одном потоке и частями во всех процессорах) или прочитанному из файла через отображение в память.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class FigureDataGeneratorBenchmark {
+    private FigureDataGenerator figureDataGenerator;
+    private FigureDataSet dataSet;
+    private FigureDataSet parallelDataSet;
+    private ForkJoinPool pool;
+    private FigureDataStore dataStore;
+    private Path dataStorePath;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        figureDataGenerator = new FigureDataGenerator(
+                List.of(new CircleGenerator(), new SquareGenerator(), new TriangleGenerator()));
+        dataSet = figureDataGenerator.streamTrainDataSet();
+        int threads = Runtime.getRuntime().availableProcessors();
+        pool = new ForkJoinPool(threads);
+        parallelDataSet = dataSet.withExecutor(pool, threads);
+        dataStorePath = Files.createTempFile("train", ".dataset");
+        dataStore = figureDataGenerator.openDataStore(dataStorePath, dataSet.size() / 3, 1);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(dataStorePath);
+        pool.shutdown();
+    }
+
+    @Benchmark
+    public List<FigureImage> trainDataSet() {
+        return figureDataGenerator.getTrainDataSet();
+    }
+
+    @Benchmark
+    public long passGenerated() {
+        long pixels = 0;
+        for (FigureImage figure : dataSet) {
+            pixels += figure.image().cardinality();
+        }
+        return pixels;
+    }
+
+    @Benchmark
+    public long passGeneratedParallel() {
+        long pixels = 0;
+        for (FigureImage figure : parallelDataSet) {
+            pixels += figure.image().cardinality();
+        }
+        return pixels;
+    }
+
+    @Benchmark
+    public long passStored() {
+        long pixels = 0;
+        for (int i = 0; i < dataStore.size(); i++) {
+            pixels += dataStore.get(i).image().cardinality();
+        }
+        return pixels;
+    }
+}
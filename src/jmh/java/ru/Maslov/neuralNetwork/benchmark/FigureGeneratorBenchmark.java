@@ -0,0 +1,57 @@
+package ru.Maslov.neuralNetwork.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import ru.Maslov.neuralNetwork.generator.CircleGenerator;
+import ru.Maslov.neuralNetwork.generator.FigureGenerator;
+import ru.Maslov.neuralNetwork.generator.SquareGenerator;
+import ru.Maslov.neuralNetwork.generator.TriangleGenerator;
+import ru.Maslov.neuralNetwork.model.FigureImage;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Бенчмарки генераторов фигур.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class FigureGeneratorBenchmark {
+
+    @Param({"circle", "square", "triangle"})
+    private String figure;
+
+    @Param({"1000"})
+    private int countFigure;
+
+    private FigureGenerator figureGenerator;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        figureGenerator = switch (figure) {
+            case "circle" -> new CircleGenerator();
+            case "square" -> new SquareGenerator();
+            case "triangle" -> new TriangleGenerator();
+            default -> throw new IllegalArgumentException(figure);
+        };
+    }
+
+    @Benchmark
+    public List<FigureImage> generate() {
+        return figureGenerator.generate(countFigure);
+    }
+}
@@ -0,0 +1,64 @@
+package ru.Maslov.neuralNetwork.benchmark;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.mock.http.MockHttpInputMessage;
+import ru.Maslov.neuralNetwork.controller.FigureImageBinaryHttpMessageConverter;
+import ru.Maslov.neuralNetwork.generator.SquareGenerator;
+import ru.Maslov.neuralNetwork.metrics.NeuralNetworkMetrics;
+import ru.Maslov.neuralNetwork.model.FigureImage;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Бенчмарк десериализации тела запроса POST / в объект FigureImage
+ * с настройками ObjectMapper, которые использует Spring MVC, и для сравнения — из двоичного формата
+ * {@link FigureImageBinaryHttpMessageConverter}.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class FigureImageJsonBenchmark {
+    private ObjectReader reader;
+    private String requestBody;
+    private FigureImageBinaryHttpMessageConverter binaryConverter;
+    private byte[] binaryBody;
+
+    @Setup(Level.Trial)
+    public void setUp() throws JsonProcessingException {
+        ObjectMapper objectMapper = Jackson2ObjectMapperBuilder.json().build();
+        reader = objectMapper.readerFor(FigureImage.class);
+        FigureImage figureImage = new SquareGenerator().generate(1).get(0);
+        requestBody = objectMapper.writeValueAsString(new FigureImage(figureImage.image(), null));
+        binaryConverter = new FigureImageBinaryHttpMessageConverter(new NeuralNetworkMetrics(new SimpleMeterRegistry()));
+        binaryBody = FigureImageBinaryHttpMessageConverter.encode(new FigureImage(figureImage.image(), null));
+    }
+
+    @Benchmark
+    public FigureImage deserialize() throws JsonProcessingException {
+        return reader.readValue(requestBody);
+    }
+
+    @Benchmark
+    public FigureImage deserializeBinary() throws IOException {
+        return binaryConverter.read(FigureImage.class, new MockHttpInputMessage(binaryBody));
+    }
+}
@@ -0,0 +1,93 @@
+package ru.Maslov.neuralNetwork.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import ru.Maslov.neuralNetwork.generator.CircleGenerator;
+import ru.Maslov.neuralNetwork.generator.FigureDataGenerator;
+import ru.Maslov.neuralNetwork.generator.SquareGenerator;
+import ru.Maslov.neuralNetwork.generator.TriangleGenerator;
+import ru.Maslov.neuralNetwork.model.FigureImage;
+import ru.Maslov.neuralNetwork.model.FigureType;
+import ru.Maslov.neuralNetwork.model.NetworkTopology;
+import ru.Maslov.neuralNetwork.model.NeuralNetwork;
+import ru.Maslov.neuralNetwork.model.QuantizedNeuralNetwork;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Бенчмарки нейронной сети: одиночное и пакетное предсказание (в том числе квантованной копией), одна эпоха обучения.
+ * Топология задается параметрами: размер изображения и ширины скрытых слоев через запятую.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class NeuralNetworkBenchmark {
+    @Param({"7", "64"})
+    private int imageSize;
+
+    @Param({"20", "256,64"})
+    private String hiddenLayers;
+
+    private NeuralNetwork trainedNetwork;
+    private NeuralNetwork trainingNetwork;
+    private QuantizedNeuralNetwork quantizedNetwork;
+    private List<FigureImage> trainDataSet;
+    private List<FigureImage> validDataSet;
+    private int index;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        FigureDataGenerator figureDataGenerator = new FigureDataGenerator(List.of(
+                new CircleGenerator(imageSize), new SquareGenerator(imageSize), new TriangleGenerator(imageSize)));
+        trainDataSet = figureDataGenerator.getTrainDataSet();
+        validDataSet = figureDataGenerator.getValidDataSet();
+
+        NetworkTopology topology = NetworkTopology.of(imageSize,
+                Arrays.stream(hiddenLayers.split(",")).mapToInt(Integer::parseInt).toArray());
+        trainedNetwork = new NeuralNetwork(topology, 1);
+        trainedNetwork.train(trainDataSet, 10);
+        quantizedNetwork = trainedNetwork.quantize();
+        trainingNetwork = new NeuralNetwork(topology, 1);
+    }
+
+    @Benchmark
+    public FigureType predict() {
+        FigureImage figure = validDataSet.get(index);
+        index = index + 1 == validDataSet.size() ? 0 : index + 1;
+        return trainedNetwork.predict(figure);
+    }
+
+    @Benchmark
+    public FigureType predictQuantized() {
+        FigureImage figure = validDataSet.get(index);
+        index = index + 1 == validDataSet.size() ? 0 : index + 1;
+        return quantizedNetwork.predict(figure);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public List<FigureType> predictBatch() {
+        return trainedNetwork.predictBatch(validDataSet);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public void trainEpoch() {
+        trainingNetwork.train(trainDataSet, 1);
+    }
+}
@@ -4,7 +4,7 @@ package ru.Maslov.neuralNetwork;
 public class Constants {
 
     /**
-     * Размер изображения фигуры.
+     * Размер изображения фигуры по умолчанию (настраивается свойством neural-network.image-size).
      */
     public static final int SIZE = 7;
 
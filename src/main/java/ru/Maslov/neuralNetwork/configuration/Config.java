@@ -1,30 +1,253 @@
 package ru.Maslov.neuralNetwork.configuration;
 
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import ru.Maslov.neuralNetwork.metrics.NeuralNetworkMetrics;
+import ru.Maslov.neuralNetwork.model.Activation;
+import ru.Maslov.neuralNetwork.model.Checkpointing;
+import ru.Maslov.neuralNetwork.model.ComputeBackend;
+import ru.Maslov.neuralNetwork.model.EarlyStopping;
+import ru.Maslov.neuralNetwork.model.NetworkTopology;
 import ru.Maslov.neuralNetwork.model.NeuralNetwork;
+import ru.Maslov.neuralNetwork.model.Precision;
+import ru.Maslov.neuralNetwork.model.TrainingCheckpoint;
+import ru.Maslov.neuralNetwork.model.TrainingParameters;
+import ru.Maslov.neuralNetwork.model.TrainingSummary;
 import ru.Maslov.neuralNetwork.generator.FigureDataGenerator;
+import ru.Maslov.neuralNetwork.generator.FigureDataSet;
+import ru.Maslov.neuralNetwork.generator.FigureDataStore;
+import ru.Maslov.neuralNetwork.model.FigureImage;
 
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Random;
+
+import static ru.Maslov.neuralNetwork.Constants.COUNT_FIGURE_IN_TRAIN;
 import static ru.Maslov.neuralNetwork.Constants.EPOCHS;
 
+@Slf4j
 @Configuration
 public class Config {
 
     /**
-     * Создает и обучает объект нейронной сети.
+     * Создает топологию нейронной сети из настроек: размер изображения, ширины скрытых слоев и функции активации.
      *
+     * @param imageSize длина стороны входного изображения в пикселях.
+     * @param hiddenLayers ширины скрытых слоев через запятую, от входа к выходу.
+     * @param hiddenActivation функция активации скрытых слоев.
+     * @param outputActivation функция активации выходного слоя: сигмоида или softmax.
+     * @return топология нейронной сети.
+     */
+    @Bean
+    public NetworkTopology networkTopology(@Value("${neural-network.image-size:7}") int imageSize,
+                                           @Value("${neural-network.hidden-layers:20}") int[] hiddenLayers,
+                                           @Value("${neural-network.activation.hidden:SIGMOID}") Activation hiddenActivation,
+                                           @Value("${neural-network.activation.output:SIGMOID}") Activation outputActivation) {
+        return NetworkTopology.of(imageSize, hiddenLayers).withActivations(hiddenActivation, outputActivation);
+    }
+
+    /**
+     * Создает нейронную сеть. Если задан путь к снимку, файл существует и топология снимка совпадает
+     * с настроенной, сеть загружается из снимка; иначе сеть обучается, и результат сохраняется
+     * в снимок для следующих запусков. Во время обучения периодически записывается контрольная точка;
+     * если при старте найдена подходящая точка прерванного обучения, оно продолжается с нее.
+     *
+     * @param topology топология нейронной сети.
      * @param figureDataGenerator генератор данных для обучения нейронной сети.
+     * @param metrics метрики, в которые записываются длительность обучения и итоговая ошибка.
+     * @param batchSize размер мини-пакета (1 — обновление весов после каждого примера).
+     * @param workers количество потоков обучения (0 — по числу доступных процессоров).
+     * @param shuffleBuffer размер буфера перемешивания ленивого тренировочного набора (0 — без буфера).
+     * @param dataStorePath путь к файлу тренировочного набора; пустое значение — ленивый набор.
+     * @param dataStoreCount количество изображений каждого типа в файле тренировочного набора.
+     * @param dataStoreSeed зерно генерации файла тренировочного набора.
+     * @param earlyStopping включена ли ранняя остановка по ошибке на отложенном валидационном наборе.
+     * @param patience количество эпох без улучшения, после которого обучение останавливается.
+     * @param minDelta минимальное уменьшение ошибки на отложенном наборе, считающееся улучшением.
+     * @param earlyStoppingSeed зерно отложенного валидационного набора (отличается от зерна отчета GET /valid).
+     * @param seed зерно инициализации весов и обучающих данных; если не задано, они случайны.
+     * @param checkpointPath путь к контрольной точке обучения; пустое значение отключает контрольные точки.
+     * @param checkpointEpochs количество эпох между контрольными точками (0 — без ограничения по эпохам).
+     * @param checkpointSeconds время между контрольными точками в секундах (0 — без ограничения по времени).
+     * @param snapshotPath путь к двоичному снимку сети; пустое значение отключает снимки.
+     * @param backend реализация матричных операций; VECTOR заменяется на SCALAR, если модуль Vector API недоступен.
+     * @param precision точность предсказания.
      * @return обученная нейронная сеть.
      */
     @Bean
     @Autowired
-    public NeuralNetwork trainNeuralNetwork(FigureDataGenerator figureDataGenerator) {
-        NeuralNetwork neuralNetwork = new NeuralNetwork();
+    public NeuralNetwork trainNeuralNetwork(NetworkTopology topology,
+                                            FigureDataGenerator figureDataGenerator,
+                                            NeuralNetworkMetrics metrics,
+                                            @Value("${neural-network.training.batch-size:1}") int batchSize,
+                                            @Value("${neural-network.training.workers:0}") int workers,
+                                            @Value("${neural-network.training.shuffle-buffer:0}") int shuffleBuffer,
+                                            @Value("${neural-network.training.data-store.path:}") String dataStorePath,
+                                            @Value("${neural-network.training.data-store.count:" + COUNT_FIGURE_IN_TRAIN + "}") int dataStoreCount,
+                                            @Value("${neural-network.training.data-store.seed:1}") long dataStoreSeed,
+                                            @Value("${neural-network.training.early-stopping.enabled:false}") boolean earlyStopping,
+                                            @Value("${neural-network.training.early-stopping.patience:5}") int patience,
+                                            @Value("${neural-network.training.early-stopping.min-delta:0.005}") double minDelta,
+                                            @Value("${neural-network.training.early-stopping.seed:7}") long earlyStoppingSeed,
+                                            @Value("${neural-network.seed:#{null}}") Long seed,
+                                            @Value("${neural-network.training.checkpoint.path:}") String checkpointPath,
+                                            @Value("${neural-network.training.checkpoint.every-epochs:10}") int checkpointEpochs,
+                                            @Value("${neural-network.training.checkpoint.interval-seconds:60}") long checkpointSeconds,
+                                            @Value("${neural-network.snapshot.path:}") String snapshotPath,
+                                            @Value("${neural-network.compute.backend:SCALAR}") ComputeBackend backend,
+                                            @Value("${neural-network.compute.precision:DOUBLE}") Precision precision) {
+        if (!backend.isAvailable()) {
+            log.info("Вычислитель {} недоступен (сборка без профиля vector или JVM запущена без --add-modules jdk.incubator.vector), используется {}",
+                    backend, ComputeBackend.SCALAR);
+            backend = ComputeBackend.SCALAR;
+        }
+
+        Path snapshot = snapshotPath.isBlank() ? null : Path.of(snapshotPath);
+        if (snapshot != null && Files.exists(snapshot)) {
+            try {
+                NeuralNetwork neuralNetwork = NeuralNetwork.load(snapshot);
+                if (neuralNetwork.topology().equals(topology)) {
+                    neuralNetwork.configureCompute(backend, precision);
+                    log.info("Нейронная сеть загружена из снимка {}", snapshot);
+                    return neuralNetwork;
+                }
+                log.warn("Топология снимка {} ({}) не совпадает с настроенной ({}), сеть будет обучена заново",
+                        snapshot, neuralNetwork.topology(), topology);
+            } catch (IOException e) {
+                log.warn("Не удалось загрузить снимок {}, сеть будет обучена заново", snapshot, e);
+            }
+        }
+
+        Path checkpoint = checkpointPath.isBlank() ? null : Path.of(checkpointPath);
+        EarlyStopping stopping = earlyStopping
+                ? new EarlyStopping(figureDataGenerator.getValidDataSet(earlyStoppingSeed), patience, minDelta)
+                : null;
+        int threads = workers > 0 ? workers : Runtime.getRuntime().availableProcessors();
+        TrainingParameters parameters = new TrainingParameters(batchSize, threads);
+        FigureDataStore dataStore = openDataStore(figureDataGenerator, dataStorePath, dataStoreCount, dataStoreSeed);
+        String dataSource = dataStore != null
+                ? "data-store " + dataStorePath + ", count " + dataStoreCount + ", seed " + dataStoreSeed
+                : "lazy, shuffle-buffer " + shuffleBuffer;
+        TrainingCheckpoint resumed = readCheckpoint(checkpoint, topology, parameters, stopping != null, dataSource);
+
+        NeuralNetwork neuralNetwork;
+        if (resumed != null) {
+            neuralNetwork = resumed.neuralNetwork();
+        } else {
+            neuralNetwork = seed != null ? new NeuralNetwork(topology, seed) : new NeuralNetwork(topology);
+        }
+        neuralNetwork.configureCompute(backend, precision);
+
+        // Обучение нейронной сети с использованием тренировочного набора данных, не больше EPOCHS эпох.
+        // Набор ленивый: изображения каждой эпохи создаются по мере обучения и не хранятся целиком.
+        // Состояние генератора набора сохраняется в контрольной точке, чтобы продолжение обучения получило
+        // те же изображения, что и непрерывное обучение.
+        // Если задан файл тренировочного набора, каждая эпоха проходит по одним и тем же изображениям из него.
+        // Отложенный валидационный набор создается один раз и проверяется после каждой эпохи.
+        long randomState = resumed != null ? resumed.randomState() : seed != null ? seed : new Random().nextLong();
+        FigureDataSet trainDataSet = figureDataGenerator.streamTrainDataSet().withShuffleBuffer(shuffleBuffer)
+                .withRandomState(randomState);
+        Iterable<FigureImage> trainData = dataStore != null ? dataStore : trainDataSet;
+        Checkpointing checkpointing = checkpoint != null
+                ? new Checkpointing(checkpoint, checkpointEpochs, Duration.ofSeconds(checkpointSeconds),
+                        dataStore != null ? null : trainDataSet::randomState, dataSource)
+                : null;
+        long start = System.nanoTime();
+        TrainingSummary summary = resumed != null
+                ? resumed.resume(trainData, EPOCHS, parameters, stopping, checkpointing)
+                : neuralNetwork.train(trainData, EPOCHS, parameters, stopping, checkpointing);
+        metrics.recordTraining("initial", Duration.ofNanos(System.nanoTime() - start), summary.finalLoss());
+        if (stopping != null) {
+            log.info("Обучение: эпох {} из {}{}, лучшая эпоха {}, ошибка {}, ошибка на отложенном наборе {}, точность {}, за {} мс",
+                    summary.epochs(), EPOCHS, summary.stoppedEarly() ? " (ранняя остановка)" : "", summary.bestEpoch(),
+                    summary.finalLoss(), summary.validationLoss()[summary.bestEpoch() - 1],
+                    summary.validationAccuracy()[summary.bestEpoch() - 1], summary.wallTime().toMillis());
+        } else {
+            log.info("Обучение: эпох {}, ошибка {}, за {} мс", summary.epochs(), summary.finalLoss(), summary.wallTime().toMillis());
+        }
 
-        // Обучение нейронной сети с использованием тренировочного набора данных и заданного количества эпох.
-        neuralNetwork.train(figureDataGenerator.getTrainDataSet(), EPOCHS);
+        if (snapshot != null) {
+            try {
+                neuralNetwork.save(snapshot);
+                log.info("Снимок нейронной сети сохранен в {}", snapshot);
+            } catch (IOException e) {
+                log.warn("Не удалось сохранить снимок {}", snapshot, e);
+            }
+        }
+        if (checkpoint != null) {
+            try {
+                Files.deleteIfExists(checkpoint); // Обучение завершено, продолжать нечего
+            } catch (IOException e) {
+                log.warn("Не удалось удалить контрольную точку {}", checkpoint, e);
+            }
+        }
 
         return neuralNetwork;
     }
+
+    /**
+     * Открывает файл тренировочного набора, создавая его при необходимости.
+     *
+     * @param figureDataGenerator генератор данных.
+     * @param path путь к файлу набора; пустое значение — файл не используется.
+     * @param countFigure количество изображений каждого типа.
+     * @param seed зерно генерации набора.
+     * @return набор из файла или null, если файл не задан или его не удалось открыть.
+     */
+    private static FigureDataStore openDataStore(FigureDataGenerator figureDataGenerator, String path,
+                                                 int countFigure, long seed) {
+        if (path.isBlank()) {
+            return null;
+        }
+        try {
+            long start = System.nanoTime();
+            FigureDataStore dataStore = figureDataGenerator.openDataStore(Path.of(path), countFigure, seed);
+            log.info("Тренировочный набор {}: {} изображений, открыт за {} мс", path, dataStore.size(),
+                    Duration.ofNanos(System.nanoTime() - start).toMillis());
+            return dataStore;
+        } catch (IOException e) {
+            log.warn("Не удалось открыть тренировочный набор {}, используется ленивый набор", path, e);
+            return null;
+        }
+    }
+
+    /**
+     * Читает контрольную точку прерванного обучения, если она существует и подходит к настройкам:
+     * топология, размер пакета, количество потоков, ранняя остановка и источник обучающих данных
+     * должны совпадать с теми, при которых точка записана.
+     *
+     * @param checkpoint путь к контрольной точке или null.
+     * @param topology настроенная топология нейронной сети.
+     * @param parameters размер пакета и количество потоков обучения.
+     * @param earlyStopping включена ли ранняя остановка.
+     * @param dataSource описание источника обучающих данных.
+     * @return контрольная точка или null, если обучение нужно начать с нуля.
+     */
+    private static TrainingCheckpoint readCheckpoint(Path checkpoint, NetworkTopology topology, TrainingParameters parameters,
+                                                     boolean earlyStopping, String dataSource) {
+        if (checkpoint == null || !Files.exists(checkpoint)) {
+            return null;
+        }
+        try {
+            TrainingCheckpoint resumed = TrainingCheckpoint.read(checkpoint);
+            String mismatch = resumed.neuralNetwork().topology().equals(topology)
+                    ? resumed.mismatch(parameters, earlyStopping, dataSource)
+                    : "топология " + resumed.neuralNetwork().topology();
+            if (mismatch != null) {
+                log.warn("Контрольная точка {} записана с другими настройками обучения ({}), сеть будет обучена заново",
+                        checkpoint, mismatch);
+                return null;
+            }
+            log.info("Обучение продолжается с контрольной точки {} после эпохи {}", checkpoint, resumed.completedEpochs());
+            return resumed;
+        } catch (IOException e) {
+            log.warn("Не удалось прочитать контрольную точку {}, сеть будет обучена заново", checkpoint, e);
+            return null;
+        }
+    }
 }
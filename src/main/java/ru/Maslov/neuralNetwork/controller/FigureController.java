@@ -1,19 +1,26 @@
 package ru.Maslov.neuralNetwork.controller;
 
-import lombok.Getter;
+import jakarta.servlet.http.HttpServletResponse;
 import org.springframework.ui.Model;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import ru.Maslov.neuralNetwork.model.FigureImage;
-import ru.Maslov.neuralNetwork.model.FigureType;
-import ru.Maslov.neuralNetwork.model.NeuralNetwork;
-import ru.Maslov.neuralNetwork.generator.FigureDataGenerator;
+import ru.Maslov.neuralNetwork.metrics.NeuralNetworkMetrics;
+import ru.Maslov.neuralNetwork.service.BulkScoringService;
+import ru.Maslov.neuralNetwork.service.NeuralNetworkService;
+import ru.Maslov.neuralNetwork.service.PredictionCoalescer;
+import ru.Maslov.neuralNetwork.service.ValidationService;
+import ru.Maslov.neuralNetwork.service.VersionedNeuralNetwork;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Контроллер FigureController предоставляет эндпоинты для обработки запросов, связанных с
@@ -21,94 +28,138 @@ import java.util.List;
  */
 @Controller
 public class FigureController {
-    private final NeuralNetwork neuralNetwork;
-    private final FigureDataGenerator figureDataGenerator;
+    public static final String NDJSON = "application/x-ndjson";
+    public static final String MODEL_VERSION_HEADER = "X-Model-Version";
+
+    private final NeuralNetworkService neuralNetworkService;
+    private final ValidationService validationService;
+    private final PredictionCoalescer predictionCoalescer;
+    private final BulkScoringService bulkScoringService;
+    private final NeuralNetworkMetrics metrics;
 
     /**
      * Конструктор контроллера FigureController.
      *
-     * @param neuralNetwork объект нейронной сети для предсказаний.
-     * @param figureDataGenerator генератор данных для фигур.
+     * @param neuralNetworkService сервис, предоставляющий текущую версию нейронной сети.
+     * @param validationService сервис отчетов о точности на валидационном наборе.
+     * @param predictionCoalescer сервис одиночных предсказаний, объединяющий одновременные запросы в пакеты.
+     * @param bulkScoringService сервис потоковых массовых предсказаний.
+     * @param metrics метрики сервиса.
      */
     @Autowired
-    public FigureController(NeuralNetwork neuralNetwork, FigureDataGenerator figureDataGenerator) {
-        this.neuralNetwork = neuralNetwork;
-        this.figureDataGenerator = figureDataGenerator;
+    public FigureController(NeuralNetworkService neuralNetworkService, ValidationService validationService,
+                            PredictionCoalescer predictionCoalescer, BulkScoringService bulkScoringService,
+                            NeuralNetworkMetrics metrics) {
+        this.neuralNetworkService = neuralNetworkService;
+        this.validationService = validationService;
+        this.predictionCoalescer = predictionCoalescer;
+        this.bulkScoringService = bulkScoringService;
+        this.metrics = metrics;
     }
 
     /**
-     * Обрабатывает GET-запрос по корневому пути "/" и возвращает представление "figure".
+     * Обрабатывает GET-запрос по корневому пути "/" и возвращает представление "figure"
+     * с сеткой размера входного изображения текущей нейронной сети.
      *
+     * @param model объект Model для передачи данных в представление.
      * @return имя представления "figure".
      */
     @GetMapping("/")
-    public String figure() {
+    public String figure(Model model) {
+        model.addAttribute("size", neuralNetworkService.current().neuralNetwork().topology().imageSize());
         return "figure";
     }
 
     /**
-     * Обрабатывает GET-запрос по пути "/valid" для получения набора изображений фигур
-     * и передачи данных в модель для отображения отчета.
+     * Обрабатывает GET-запрос по пути "/valid" и передает в модель отчет о точности текущей версии
+     * нейронной сети на валидационном наборе. Отчет пересчитывается только после смены версии модели.
      *
      * @param model объект Model для передачи данных в представление.
      * @return имя представления "report".
      */
     @GetMapping("/valid")
     public String getFigureImages(Model model) {
-        List<FigureImage> valid = figureDataGenerator.getValidDataSet();
-        model.addAttribute("report", new Report(valid));
+        metrics.recordBatchSize("valid", validationService.getValidDataSet().size());
+        model.addAttribute("report", validationService.report());
         return "report";
     }
 
     /**
      * Обрабатывает POST-запрос по корневому пути "/" для предсказания типа фигуры
-     * на основе переданного изображения фигуры.
+     * на основе переданного изображения фигуры. При включенном объединении запросов
+     * поток сервлета освобождается до вычисления пакета, в который попало изображение.
      *
      * @param figureImage объект FigureImage с данными изображения фигуры.
-     * @return объект ResponseEntity с результатом предсказания.
+     * @return будущий объект ResponseEntity с результатом предсказания.
      */
     @PostMapping("/")
-    public ResponseEntity<?> figurePost(@RequestBody FigureImage figureImage) {
-        String result = neuralNetwork.predict(figureImage).toString();
-        return ResponseEntity.ok().body(new PredictionResponse(result));
+    public CompletableFuture<ResponseEntity<?>> figurePost(@RequestBody FigureImage figureImage) {
+        return predictionCoalescer.predict(figureImage)
+                .thenApply(prediction -> ResponseEntity.ok()
+                        .body(new PredictionResponse(prediction.figureType().toString(), prediction.modelVersion())));
     }
 
     /**
-     * Класс Report используется для создания отчета по набору изображений фигур,
-     * включая общее количество изображений, количество правильных и неправильных предсказаний,
-     * а также процент правильных предсказаний.
+     * Обрабатывает POST-запрос по пути "/bulk" с изображениями фигур в формате NDJSON (по одному JSON-изображению
+     * на строку) и потоково возвращает предсказания в том же формате: номер строки, тип фигуры и выходы сети.
+     * Вход читается и оценивается частями по мере поступления, поэтому размер запроса не ограничен памятью.
+     * Все строки оцениваются одной версией модели, номер которой возвращается в заголовке {@value #MODEL_VERSION_HEADER}.
+     *
+     * @param body поток тела запроса.
+     * @param response ответ, в который потоково пишутся результаты.
+     * @throws IOException при ошибке чтения запроса или записи ответа.
      */
-    @Getter
-    private class Report {
-        private final Integer countAll;
-        private final Double procentTrue;
-        private Integer countTrue = 0;
-        private Integer countFalse = 0;
-
-        /**
-         * Конструктор класса Report.
-         *
-         * @param figureImages список изображений фигур для генерации отчета.
-         */
-        public Report(List<FigureImage> figureImages) {
-            countAll = figureImages.size();
-
-            for (FigureImage figureImage : figureImages) {
-                FigureType predict = neuralNetwork.predict(figureImage);
-
-                if (predict.equals(figureImage.figureType()))
-                    countTrue++;
-                else {
-                    countFalse++;
-                }
-            }
+    @PostMapping(value = "/bulk", consumes = NDJSON, produces = NDJSON)
+    public void bulkPost(InputStream body, HttpServletResponse response) throws IOException {
+        VersionedNeuralNetwork model = neuralNetworkService.current();
+        response.setContentType(NDJSON);
+        response.setCharacterEncoding("UTF-8");
+        response.setHeader(MODEL_VERSION_HEADER, Long.toString(model.version()));
+        bulkScoringService.score(model, body, response.getOutputStream());
+    }
 
-            procentTrue = countTrue / (double) countAll * 100;
+    /**
+     * Обрабатывает POST-запрос по пути "/feedback" с размеченными изображениями фигур.
+     * Изображения буферизуются и используются для фонового дообучения нейронной сети.
+     *
+     * @param figureImages список изображений с заполненным типом фигуры.
+     * @return объект ResponseEntity с количеством принятых изображений и текущей версией модели.
+     */
+    @PostMapping("/feedback")
+    public ResponseEntity<?> feedbackPost(@RequestBody List<FigureImage> figureImages) {
+        if (!figureImages.stream().allMatch(neuralNetworkService::isValidFeedback)) {
+            return ResponseEntity.badRequest().build();
         }
+        metrics.recordBatchSize("feedback", figureImages.size());
+        int accepted = neuralNetworkService.submitFeedback(figureImages);
+        return ResponseEntity.accepted().body(new FeedbackResponse(accepted, neuralNetworkService.current().version()));
+    }
+
+    /**
+     * Отвечает статусом 400 на некорректный запрос, например на изображение, не подходящее по размеру
+     * ко входному слою сети, вместо ошибки сервера. Исключения из будущего результата предсказания
+     * приходят сюда уже развернутыми из {@link java.util.concurrent.CompletionException}.
+     *
+     * @param e исключение с описанием ошибки запроса.
+     * @return объект ResponseEntity со статусом 400 и описанием ошибки.
+     */
+    @ExceptionHandler(IllegalArgumentException.class)
+    public ResponseEntity<?> badRequest(IllegalArgumentException e) {
+        return ResponseEntity.badRequest().body(new ErrorResponse(e.getMessage()));
     }
 
     /**
      * Класс PredictionResponse представляет ответ на предсказание типа фигуры.
      */
-    private record PredictionResponse(String result) {}
+    private record PredictionResponse(String result, long modelVersion) {}
+
+    /**
+     * Класс FeedbackResponse представляет ответ на отправку размеченных изображений.
+     */
+    private record FeedbackResponse(int accepted, long modelVersion) {}
+
+    /**
+     * Класс ErrorResponse представляет описание ошибки некорректного запроса.
+     */
+    private record ErrorResponse(String error) {}
 }
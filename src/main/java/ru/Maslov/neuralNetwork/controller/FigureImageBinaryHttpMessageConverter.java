@@ -0,0 +1,163 @@
+package ru.Maslov.neuralNetwork.controller;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.AbstractHttpMessageConverter;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+import org.springframework.stereotype.Component;
+import ru.Maslov.neuralNetwork.metrics.NeuralNetworkMetrics;
+import ru.Maslov.neuralNetwork.model.BitImage;
+import ru.Maslov.neuralNetwork.model.FigureImage;
+import ru.Maslov.neuralNetwork.model.FigureType;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Конвертер компактного двоичного формата изображения фигуры. Используется вместо JSON, если тело
+ * запроса передано с типом {@value #MEDIA_TYPE_VALUE} или {@code application/octet-stream}.
+ * <p>
+ * Формат (все числа — little-endian):
+ * <pre>
+ * байт 0     версия формата, {@value #FORMAT_VERSION}
+ * байт 1     тип фигуры: 0 — не задан, иначе порядковый номер {@link FigureType} + 1
+ * байты 2-3  длина стороны изображения size, беззнаковое 16-битное число
+ * далее      ceil(size * size / 8) байт пикселей по строкам; пиксель с индексом row * size + col
+ *            хранится в бите (index % 8) байта index / 8, младший бит первый
+ * </pre>
+ * Такой порядок битов совпадает с порядком слов {@link BitImage}, записанных в little-endian, поэтому
+ * тело читается сразу в упакованные слова изображения без промежуточной матрицы.
+ */
+@Component
+public class FigureImageBinaryHttpMessageConverter extends AbstractHttpMessageConverter<FigureImage> {
+    public static final String MEDIA_TYPE_VALUE = "application/x-figure-image";
+    public static final MediaType MEDIA_TYPE = MediaType.parseMediaType(MEDIA_TYPE_VALUE);
+    static final int FORMAT_VERSION = 1;
+    static final int HEADER_SIZE = 4;
+    static final int MAX_SIZE = 1024; // Ограничивает память, выделяемую по заголовку запроса
+
+    private static final String TYPE_NAME = "FigureImageBinary"; // Метка типа в метрике десериализации
+    private static final FigureType[] FIGURE_TYPES = FigureType.values();
+
+    private final NeuralNetworkMetrics metrics;
+
+    /**
+     * Конструктор класса FigureImageBinaryHttpMessageConverter.
+     *
+     * @param metrics метрики сервиса.
+     */
+    @Autowired
+    public FigureImageBinaryHttpMessageConverter(NeuralNetworkMetrics metrics) {
+        super(MEDIA_TYPE, MediaType.APPLICATION_OCTET_STREAM);
+        this.metrics = metrics;
+    }
+
+    @Override
+    protected boolean supports(Class<?> clazz) {
+        return FigureImage.class == clazz;
+    }
+
+    @Override
+    protected FigureImage readInternal(Class<? extends FigureImage> clazz, HttpInputMessage inputMessage)
+            throws IOException, HttpMessageNotReadableException {
+        long start = System.nanoTime();
+        FigureImage figureImage = decode(inputMessage.getBody(), inputMessage);
+        metrics.recordPhase(NeuralNetworkMetrics.PHASE_DESERIALIZATION, TYPE_NAME, System.nanoTime() - start);
+        return figureImage;
+    }
+
+    @Override
+    protected void writeInternal(FigureImage figureImage, HttpOutputMessage outputMessage) throws IOException {
+        outputMessage.getBody().write(encode(figureImage));
+    }
+
+    @Override
+    protected Long getContentLength(FigureImage figureImage, MediaType contentType) {
+        return (long) HEADER_SIZE + pixelBytes(figureImage.image().size());
+    }
+
+    /**
+     * Кодирует изображение фигуры в двоичный формат.
+     *
+     * @param figureImage изображение фигуры.
+     * @return тело сообщения.
+     */
+    public static byte[] encode(FigureImage figureImage) {
+        BitImage image = figureImage.image();
+        int size = image.size();
+        if (size > MAX_SIZE) {
+            throw new IllegalArgumentException("Размер изображения больше " + MAX_SIZE + ": " + size);
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + pixelBytes(size)).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.put((byte) FORMAT_VERSION);
+        buffer.put((byte) (figureImage.figureType() == null ? 0 : figureImage.figureType().ordinal() + 1));
+        buffer.putShort((short) size);
+        int words = image.wordCount();
+        for (int i = 0; i < words - 1; i++) {
+            buffer.putLong(image.word(i));
+        }
+        long last = image.word(words - 1);
+        while (buffer.hasRemaining()) {
+            buffer.put((byte) last);
+            last >>>= Byte.SIZE;
+        }
+        return buffer.array();
+    }
+
+    /**
+     * Читает изображение фигуры из двоичного формата.
+     *
+     * @param body         поток тела запроса.
+     * @param inputMessage сообщение, передаваемое в исключение.
+     * @return изображение фигуры.
+     * @throws HttpMessageNotReadableException если тело не соответствует формату.
+     */
+    static FigureImage decode(InputStream body, HttpInputMessage inputMessage) throws IOException {
+        byte[] header = body.readNBytes(HEADER_SIZE);
+        if (header.length < HEADER_SIZE) {
+            throw new HttpMessageNotReadableException("Тело короче заголовка: " + header.length + " байт", inputMessage);
+        }
+        if (header[0] != FORMAT_VERSION) {
+            throw new HttpMessageNotReadableException("Неизвестная версия формата: " + header[0], inputMessage);
+        }
+        int figureType = header[1] & 0xFF;
+        if (figureType > FIGURE_TYPES.length) {
+            throw new HttpMessageNotReadableException("Неизвестный тип фигуры: " + figureType, inputMessage);
+        }
+        int size = (header[2] & 0xFF) | (header[3] & 0xFF) << Byte.SIZE;
+        if (size == 0 || size > MAX_SIZE) {
+            throw new HttpMessageNotReadableException("Недопустимый размер изображения: " + size, inputMessage);
+        }
+
+        int length = pixelBytes(size);
+        byte[] pixels = body.readNBytes(length + 1); // Лишний байт означает, что тело длиннее изображения
+        if (pixels.length != length) {
+            throw new HttpMessageNotReadableException("Ожидалось байт пикселей: " + length + ", получено: "
+                    + (pixels.length > length ? "больше" : pixels.length), inputMessage);
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(pixels, 0, length).order(ByteOrder.LITTLE_ENDIAN);
+        long[] words = new long[BitImage.wordCount(size)];
+        int full = length >>> 3;
+        for (int i = 0; i < full; i++) {
+            words[i] = buffer.getLong();
+        }
+        for (int shift = 0; buffer.hasRemaining(); shift += Byte.SIZE) {
+            words[full] |= (buffer.get() & 0xFFL) << shift;
+        }
+        return new FigureImage(BitImage.of(size, words), figureType == 0 ? null : FIGURE_TYPES[figureType - 1]);
+    }
+
+    /**
+     * Возвращает количество байт пикселей изображения заданного размера.
+     *
+     * @param size длина стороны изображения.
+     * @return количество байт.
+     */
+    private static int pixelBytes(int size) {
+        return (size * size + Byte.SIZE - 1) >>> 3;
+    }
+}
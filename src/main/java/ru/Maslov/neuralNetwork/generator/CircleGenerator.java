@@ -1,50 +1,69 @@
 package ru.Maslov.neuralNetwork.generator;
 
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
+import ru.Maslov.neuralNetwork.model.BitImage;
 import ru.Maslov.neuralNetwork.model.FigureImage;
 import ru.Maslov.neuralNetwork.model.FigureType;
 
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Random;
+import java.util.random.RandomGenerator;
+
+import static ru.Maslov.neuralNetwork.Constants.SIZE;
 
 @Component
 public class CircleGenerator implements FigureGenerator {
-    private static final Random RANDOM = new Random();
+    private final int size;
+    private final long[] template; // Пиксели фигуры без шума, общие для всех изображений
+
+    /**
+     * Создает генератор изображений круга размера по умолчанию.
+     */
+    public CircleGenerator() {
+        this(SIZE);
+    }
+
+    /**
+     * Создает генератор изображений круга заданного размера.
+     *
+     * @param size длина стороны изображения в пикселях.
+     */
+    @Autowired
+    public CircleGenerator(@Value("${neural-network.image-size:7}") int size) {
+        this.size = size;
+        this.template = template(size);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
 
     @Override
-    public List<FigureImage> generate(Integer countFigure) {
-        double centerYCircle = (SIZE_IMAGE - 1) / 2.0;
-        double centerXCircle = (SIZE_IMAGE - 1) / 2.0;
-        int radiusCircle = (int) Math.ceil((SIZE_IMAGE - centerXCircle) / 2);
-
-        List<FigureImage> images = new ArrayList<>();
-
-        for (int i = 0; i < countFigure; i++) {
-            List<List<Boolean>> circle = new ArrayList<>();
-            for (int y = 0; y < SIZE_IMAGE; y++) {
-                List<Boolean> line = new ArrayList<>();
-                for (int x = 0; x < SIZE_IMAGE; x++) {
-                    double distance = Math.sqrt(Math.pow(x - centerXCircle, 2) + Math.pow(y - centerYCircle, 2));
-                    boolean isEdge = Math.round(distance) == radiusCircle;
-                    boolean hasNoise = RANDOM.nextDouble() < 0.05;
-
-                    if (isEdge && !hasNoise) {
-                        line.add(true);
-                    } else if (hasNoise) {
-                        if (!isEdge)
-                            line.add(true);
-                        else
-                            line.add(false);
-                    } else {
-                        line.add(false);
-                    }
+    public FigureImage generate(RandomGenerator random) {
+        return new FigureImage(NoiseMask.apply(size, template, random), FigureType.CIRCLE);
+    }
+
+    /**
+     * Строит шаблон круга: пиксели, расстояние от которых до центра после округления равно радиусу.
+     *
+     * @param size длина стороны изображения.
+     * @return упакованные пиксели круга без шума.
+     */
+    private static long[] template(int size) {
+        double centerYCircle = (size - 1) / 2.0;
+        double centerXCircle = (size - 1) / 2.0;
+        int radiusCircle = (int) Math.ceil((size - centerXCircle) / 2);
+
+        long[] circle = BitImage.newWords(size);
+        for (int y = 0; y < size; y++) {
+            for (int x = 0; x < size; x++) {
+                double distance = Math.sqrt(Math.pow(x - centerXCircle, 2) + Math.pow(y - centerYCircle, 2));
+                if (Math.round(distance) == radiusCircle) {
+                    BitImage.setBit(circle, y * size + x);
                 }
-                circle.add(line);
             }
-            images.add(new FigureImage(circle, FigureType.CIRCLE));
         }
-
-        return images;
+        return circle;
     }
 }
@@ -1,13 +1,18 @@
 package ru.Maslov.neuralNetwork.generator;
 
+import jakarta.annotation.PreDestroy;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 import ru.Maslov.neuralNetwork.model.FigureImage;
 
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.List;
-import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
 
 import static ru.Maslov.neuralNetwork.Constants.COUNT_FIGURE_IN_TEST;
 import static ru.Maslov.neuralNetwork.Constants.COUNT_FIGURE_IN_TRAIN;
@@ -15,20 +20,67 @@ import static ru.Maslov.neuralNetwork.Constants.COUNT_FIGURE_IN_TRAIN;
 /**
  * Класс FigureDataGenerator используется для генерации набора данных фигур
  * с использованием нескольких генераторов фигур. Он предоставляет методы для
- * создания наборов данных для обучения и тестирования нейронной сети.
+ * создания наборов данных для обучения и тестирования нейронной сети, как в виде списков,
+ * так и в виде ленивых наборов {@link FigureDataSet} и наборов, хранящихся в файле ({@link FigureDataStore}).
+ * <p>
+ * Части наборов генерируются параллельно в потоках исполнителя; содержимое воспроизводимых наборов
+ * от количества потоков не зависит.
  */
 @Component
 public class FigureDataGenerator {
     private final List<FigureGenerator> figureGenerators;
+    private final Executor executor; // null — генерация в вызывающем потоке
+    private final int parallelism;
+    private final ForkJoinPool pool; // Собственный пул потоков генерации; null, если исполнитель передан извне или не нужен
 
     /**
-     * Конструктор класса FigureDataGenerator. Получает список генераторов фигур.
+     * Конструктор класса FigureDataGenerator. Получает список генераторов фигур;
+     * наборы генерируются в вызывающем потоке.
      *
      * @param figureGenerators список генераторов фигур для создания данных.
      */
-    @Autowired
     public FigureDataGenerator(List<FigureGenerator> figureGenerators) {
+        this(figureGenerators, null, 1);
+    }
+
+    /**
+     * Конструктор класса FigureDataGenerator с собственным пулом потоков генерации.
+     * Пул создается, только если потоков больше одного, и останавливается методом {@link #shutdown()}.
+     *
+     * @param figureGenerators список генераторов фигур для создания данных.
+     * @param threads          количество потоков генерации; 0 — по количеству процессоров.
+     */
+    @Autowired
+    public FigureDataGenerator(List<FigureGenerator> figureGenerators,
+                               @Value("${neural-network.generation.threads:0}") int threads) {
+        this.figureGenerators = figureGenerators;
+        this.parallelism = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        this.pool = parallelism > 1 ? new ForkJoinPool(parallelism) : null;
+        this.executor = pool;
+    }
+
+    /**
+     * Конструктор класса FigureDataGenerator с заданным исполнителем генерации.
+     *
+     * @param figureGenerators список генераторов фигур для создания данных.
+     * @param executor         исполнитель, генерирующий части наборов; null — генерация в вызывающем потоке.
+     * @param parallelism      количество потоков исполнителя.
+     */
+    public FigureDataGenerator(List<FigureGenerator> figureGenerators, Executor executor, int parallelism) {
         this.figureGenerators = figureGenerators;
+        this.executor = executor;
+        this.parallelism = parallelism;
+        this.pool = null;
+    }
+
+    /**
+     * Останавливает собственный пул потоков генерации; исполнитель, переданный извне, не останавливается.
+     */
+    @PreDestroy
+    public void shutdown() {
+        if (pool != null) {
+            pool.shutdown();
+        }
     }
 
     /**
@@ -49,25 +101,88 @@ public class FigureDataGenerator {
         return generateDataSet(COUNT_FIGURE_IN_TEST);
     }
 
+    /**
+     * Создает и возвращает воспроизводимый набор данных для валидации:
+     * при одинаковом зерне набор всегда одинаков.
+     *
+     * @param seed зерно генератора случайных чисел.
+     * @return список объектов FigureImage, представляющих набор данных для валидации.
+     */
+    public List<FigureImage> getValidDataSet(long seed) {
+        return materialize(dataSet(COUNT_FIGURE_IN_TEST, seed));
+    }
+
+    /**
+     * Возвращает ленивый тренировочный набор данных: изображения создаются заново на каждом проходе
+     * и не хранятся в памяти.
+     *
+     * @return ленивый набор данных для тренировки.
+     */
+    public FigureDataSet streamTrainDataSet() {
+        return dataSet(COUNT_FIGURE_IN_TRAIN, null);
+    }
+
+    /**
+     * Открывает воспроизводимый набор данных, хранящийся в файле. Если файла нет, он поврежден или записан
+     * с другим зерном, количеством или размером изображений, набор генерируется с заданным зерном
+     * и записывается в файл; изображения при этом не накапливаются в памяти.
+     *
+     * @param path        путь к файлу набора.
+     * @param countFigure количество изображений каждого типа.
+     * @param seed        зерно генератора случайных чисел.
+     * @return набор данных, читаемый через отображение файла в память.
+     * @throws IOException если файл не удалось записать или прочитать.
+     */
+    public FigureDataStore openDataStore(Path path, int countFigure, long seed) throws IOException {
+        FigureDataSet dataSet = dataSet(countFigure, seed);
+        if (Files.exists(path)) {
+            try {
+                FigureDataStore store = FigureDataStore.open(path);
+                if (store.seed() == seed && store.size() == dataSet.size()
+                        && store.imageSize() == figureGenerators.get(0).size()) {
+                    return store;
+                }
+            } catch (IOException e) {
+                // Поврежденный файл создается заново
+            }
+        }
+        FigureDataStore.write(path, dataSet, seed);
+        return FigureDataStore.open(path);
+    }
+
     /**
      * Генерирует набор данных заданного размера с использованием всех доступных генераторов фигур.
-     * Использует асинхронную обработку для параллельного выполнения генерации.
+     * Изображения уже перемешаны при генерации и собираются сразу в итоговый список,
+     * без промежуточных списков по каждому генератору.
      *
-     * @param countFigure количество фигур для генерации.
+     * @param countFigure количество фигур каждого типа.
      * @return список объектов FigureImage, представляющих сгенерированные данные.
      */
     private List<FigureImage> generateDataSet(int countFigure) {
-        List<CompletableFuture<List<FigureImage>>> futures = figureGenerators.stream()
-                .map(generator -> CompletableFuture.supplyAsync(() -> generator.generate(countFigure)))
-                .toList();
-
-        List<FigureImage> allGeneratedFigures = new ArrayList<>(futures.stream()
-                .map(CompletableFuture::join)
-                .flatMap(List::stream)
-                .toList());
+        return materialize(dataSet(countFigure, null));
+    }
 
-        Collections.shuffle(allGeneratedFigures);
+    /**
+     * Создает ленивый набор данных, части которого генерируются исполнителем генератора.
+     *
+     * @param countFigure количество фигур каждого типа.
+     * @param seed        зерно генератора случайных чисел; null — каждый проход дает новые изображения.
+     * @return ленивый набор данных.
+     */
+    private FigureDataSet dataSet(int countFigure, Long seed) {
+        FigureDataSet dataSet = new FigureDataSet(figureGenerators, countFigure, 0, seed);
+        return executor != null ? dataSet.withExecutor(executor, parallelism) : dataSet;
+    }
 
-        return allGeneratedFigures;
+    /**
+     * Собирает один проход ленивого набора данных в список.
+     *
+     * @param dataSet ленивый набор данных.
+     * @return список изображений.
+     */
+    private List<FigureImage> materialize(FigureDataSet dataSet) {
+        List<FigureImage> figures = new ArrayList<>(dataSet.size());
+        dataSet.forEach(figures::add);
+        return figures;
     }
 }
@@ -0,0 +1,314 @@
+package ru.Maslov.neuralNetwork.generator;
+
+import ru.Maslov.neuralNetwork.model.FigureImage;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.SplittableRandom;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.random.RandomGenerator;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Класс FigureDataSet представляет ленивый набор данных фигур: изображения не хранятся,
+ * а создаются генераторами по мере чтения. Каждый вызов {@link #iterator()} начинает новый проход
+ * (эпоху) с новыми изображениями, поэтому объем памяти не зависит от размера набора.
+ * <p>
+ * Проход делится на части по {@value #SHARD_SIZE} изображений; в каждой части поровну (с точностью
+ * до одного) изображений каждого типа. Каждая часть получает собственный {@link SplittableRandom},
+ * отщепленный по порядку от генератора с зерном прохода, поэтому содержимое прохода определяется только
+ * зерном и не зависит от того, в каких потоках и в каком порядке генерируются части. Набор с исполнителем
+ * ({@link #withExecutor(Executor, int)}) генерирует несколько следующих частей параллельно и выдает их
+ * по порядку: результат побайтно совпадает с последовательной генерацией при любом количестве потоков.
+ * <p>
+ * Типы фигур перемешиваются при генерации: очередной генератор части выбирается с вероятностью,
+ * пропорциональной количеству оставшихся у него в части изображений. Дополнительно можно включить
+ * ограниченный буфер перемешивания, который выдает случайный элемент из последних накопленных.
+ * <p>
+ * Набор с состоянием генератора ({@link #withRandomState(long)}) тоже дает новые изображения на каждом
+ * проходе, но последовательность проходов воспроизводима: зерно прохода получается из состояния,
+ * которое сдвигается при каждом вызове {@link #iterator()}. Сохраненное состояние позволяет продолжить
+ * ту же последовательность проходов, например после перезапуска обучения с контрольной точки.
+ */
+public final class FigureDataSet implements Iterable<FigureImage> {
+    static final int SHARD_SIZE = 256;
+
+    private static final long STATE_INCREMENT = 0x9e3779b97f4a7c15L; // Шаг состояния SplitMix64
+
+    private final List<FigureGenerator> figureGenerators;
+    private final int countFigure;
+    private final int shuffleBufferSize;
+    private final Long seed;
+    private final AtomicLong randomState; // null — зерно каждого прохода случайно
+    private final Executor executor; // null — части генерируются в потоке чтения
+    private final int parallelism;
+
+    /**
+     * Конструктор класса FigureDataSet.
+     *
+     * @param figureGenerators  генераторы фигур.
+     * @param countFigure       количество изображений каждого типа за один проход.
+     * @param shuffleBufferSize размер буфера перемешивания; 0 или 1 — без буфера.
+     * @param seed              зерно генератора случайных чисел; null — каждый проход дает новые изображения.
+     */
+    public FigureDataSet(List<FigureGenerator> figureGenerators, int countFigure, int shuffleBufferSize, Long seed) {
+        this(figureGenerators, countFigure, shuffleBufferSize, seed, null, null, 1);
+    }
+
+    private FigureDataSet(List<FigureGenerator> figureGenerators, int countFigure, int shuffleBufferSize, Long seed,
+                          AtomicLong randomState, Executor executor, int parallelism) {
+        this.figureGenerators = List.copyOf(figureGenerators);
+        this.countFigure = countFigure;
+        this.shuffleBufferSize = shuffleBufferSize;
+        this.seed = seed;
+        this.randomState = randomState;
+        this.executor = executor;
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Возвращает набор с теми же генераторами и размером, но с заданным буфером перемешивания.
+     *
+     * @param shuffleBufferSize размер буфера перемешивания.
+     * @return новый набор данных.
+     */
+    public FigureDataSet withShuffleBuffer(int shuffleBufferSize) {
+        return new FigureDataSet(figureGenerators, countFigure, shuffleBufferSize, seed, copyRandomState(),
+                executor, parallelism);
+    }
+
+    /**
+     * Возвращает набор, проходы которого дают разные изображения, а последовательность проходов
+     * определяется начальным состоянием генератора.
+     *
+     * @param randomState состояние генератора перед первым проходом.
+     * @return новый набор данных.
+     */
+    public FigureDataSet withRandomState(long randomState) {
+        return new FigureDataSet(figureGenerators, countFigure, shuffleBufferSize, null, new AtomicLong(randomState),
+                executor, parallelism);
+    }
+
+    /**
+     * Возвращает набор, части каждого прохода которого генерируются параллельно: пока читается одна часть,
+     * следующие {@code parallelism * 2} частей генерируются исполнителем. Содержимое проходов не меняется.
+     *
+     * @param executor    исполнитель генерации частей.
+     * @param parallelism количество потоков исполнителя.
+     * @return новый набор данных.
+     */
+    public FigureDataSet withExecutor(Executor executor, int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Количество потоков должно быть положительным: " + parallelism);
+        }
+        return new FigureDataSet(figureGenerators, countFigure, shuffleBufferSize, seed, copyRandomState(),
+                executor, parallelism);
+    }
+
+    /**
+     * Возвращает состояние генератора перед следующим проходом.
+     *
+     * @return состояние генератора; 0, если набор создан без состояния.
+     */
+    public long randomState() {
+        return randomState != null ? randomState.get() : 0;
+    }
+
+    /**
+     * Возвращает количество изображений за один проход.
+     *
+     * @return размер набора данных.
+     */
+    public int size() {
+        return countFigure * figureGenerators.size();
+    }
+
+    /**
+     * Начинает новый проход по набору данных.
+     *
+     * @return итератор, создающий изображения по запросу.
+     */
+    @Override
+    public Iterator<FigureImage> iterator() {
+        long passSeed;
+        if (seed != null) {
+            passSeed = seed;
+        } else if (randomState != null) {
+            passSeed = mix(randomState.getAndAdd(STATE_INCREMENT));
+        } else {
+            passSeed = ThreadLocalRandom.current().nextLong();
+        }
+        SplittableRandom random = new SplittableRandom(passSeed);
+        SplittableRandom shuffleRandom = random.split(); // Отщепляется первым, чтобы не зависеть от числа частей
+        Iterator<FigureImage> shards = new ShardIterator(random);
+        return shuffleBufferSize > 1 ? new ShuffleBufferIterator(shards, shuffleBufferSize, shuffleRandom) : shards;
+    }
+
+    /**
+     * Возвращает поток изображений одного прохода.
+     *
+     * @return последовательный поток изображений.
+     */
+    public Stream<FigureImage> stream() {
+        return StreamSupport.stream(Spliterators.spliterator(iterator(), size(),
+                Spliterator.ORDERED | Spliterator.NONNULL), false);
+    }
+
+    /**
+     * Возвращает количество частей прохода.
+     *
+     * @return количество частей.
+     */
+    int shardCount() {
+        return (size() + SHARD_SIZE - 1) / SHARD_SIZE;
+    }
+
+    /**
+     * Генерирует одну часть прохода: количество изображений каждого типа в части определяется ее номером,
+     * порядок типов и шум — генератором части.
+     *
+     * @param shard  номер части.
+     * @param random генератор случайных чисел части.
+     * @return изображения части.
+     */
+    FigureImage[] generateShard(int shard, RandomGenerator random) {
+        int shards = shardCount();
+        int[] remaining = new int[figureGenerators.size()];
+        int total = 0;
+        for (int g = 0; g < remaining.length; g++) {
+            remaining[g] = (int) ((long) countFigure * (shard + 1) / shards - (long) countFigure * shard / shards);
+            total += remaining[g];
+        }
+
+        FigureImage[] figures = new FigureImage[total];
+        for (int i = 0; i < figures.length; i++) {
+            int pick = random.nextInt(total - i);
+            int generator = 0;
+            while (pick >= remaining[generator]) {
+                pick -= remaining[generator++];
+            }
+            remaining[generator]--;
+            figures[i] = figureGenerators.get(generator).generate(random);
+        }
+        return figures;
+    }
+
+    private AtomicLong copyRandomState() {
+        return randomState != null ? new AtomicLong(randomState.get()) : null;
+    }
+
+    /**
+     * Перемешивает биты состояния (финализатор SplitMix64), чтобы зерна соседних проходов были независимы.
+     *
+     * @param state состояние генератора.
+     * @return зерно прохода.
+     */
+    private static long mix(long state) {
+        state = (state ^ (state >>> 30)) * 0xbf58476d1ce4e5b9L;
+        state = (state ^ (state >>> 27)) * 0x94d049bb133111ebL;
+        return state ^ (state >>> 31);
+    }
+
+    /**
+     * Итератор по частям прохода. Генератор каждой части отщепляется от генератора прохода в порядке номеров
+     * частей; при заданном исполнителе следующие части генерируются заранее в его потоках.
+     */
+    private final class ShardIterator implements Iterator<FigureImage> {
+        private final SplittableRandom random;
+        private final ArrayDeque<CompletableFuture<FigureImage[]>> ahead = new ArrayDeque<>();
+        private final int shards = shardCount();
+        private int nextShard; // Номер следующей части, генерация которой еще не начата
+        private FigureImage[] current = new FigureImage[0];
+        private int position;
+
+        private ShardIterator(SplittableRandom random) {
+            this.random = random;
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (position == current.length) {
+                if (nextShard == shards && ahead.isEmpty()) {
+                    return false;
+                }
+                current = nextShard();
+                position = 0;
+            }
+            return true;
+        }
+
+        @Override
+        public FigureImage next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return current[position++];
+        }
+
+        private FigureImage[] nextShard() {
+            if (executor == null) {
+                return generateShard(nextShard++, random.split());
+            }
+            while (nextShard < shards && ahead.size() < parallelism * 2) {
+                int shard = nextShard++;
+                SplittableRandom shardRandom = random.split();
+                ahead.add(CompletableFuture.supplyAsync(() -> generateShard(shard, shardRandom), executor));
+            }
+            try {
+                return ahead.remove().join();
+            } catch (CompletionException e) {
+                throw e.getCause() instanceof RuntimeException cause ? cause : e;
+            }
+        }
+    }
+
+    /**
+     * Итератор с ограниченным буфером перемешивания: после заполнения буфера каждый следующий
+     * элемент источника заменяет случайно выбранный элемент буфера, который и возвращается.
+     */
+    private static final class ShuffleBufferIterator implements Iterator<FigureImage> {
+        private final Iterator<FigureImage> source;
+        private final FigureImage[] buffer;
+        private final RandomGenerator random;
+        private int size;
+
+        private ShuffleBufferIterator(Iterator<FigureImage> source, int capacity, RandomGenerator random) {
+            this.source = source;
+            this.buffer = new FigureImage[capacity];
+            this.random = random;
+            while (size < capacity && source.hasNext()) {
+                buffer[size++] = source.next();
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return size > 0;
+        }
+
+        @Override
+        public FigureImage next() {
+            if (size == 0) {
+                throw new NoSuchElementException();
+            }
+            int index = random.nextInt(size);
+            FigureImage result = buffer[index];
+            if (source.hasNext()) {
+                buffer[index] = source.next();
+            } else {
+                buffer[index] = buffer[--size];
+                buffer[size] = null;
+            }
+            return result;
+        }
+    }
+}
@@ -0,0 +1,272 @@
+package ru.Maslov.neuralNetwork.generator;
+
+import ru.Maslov.neuralNetwork.model.BitImage;
+import ru.Maslov.neuralNetwork.model.FigureImage;
+import ru.Maslov.neuralNetwork.model.FigureType;
+import ru.Maslov.neuralNetwork.model.LongBitImage;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractList;
+import java.util.Iterator;
+import java.util.Objects;
+import java.util.RandomAccess;
+
+/**
+ * Класс FigureDataStore представляет набор данных фигур, хранящийся в файле и читаемый через отображение
+ * файла в память. Изображения не хранятся в куче: каждое обращение к элементу читает его пиксели прямо
+ * из отображения, поэтому набор может быть больше кучи, а повторное использование не требует ни генерации,
+ * ни сборки мусора. Набор реализует {@link RandomAccess}, и обучение обходит его по индексам.
+ * <p>
+ * Формат файла (все числа — little-endian):
+ * <pre>
+ * int    сигнатура "NNDS"
+ * int    версия формата, {@value #FORMAT_VERSION}
+ * int    длина стороны изображений size
+ * int    размер записи в байтах: ceil(size * size / 8) + 1
+ * long   количество записей
+ * long   зерно генератора, которым создан набор
+ * далее  записи фиксированного размера: пиксели изображения по строкам, пиксель с индексом row * size + col
+ *        хранится в бите (index % 8) байта index / 8, младший бит первый; затем байт типа фигуры
+ *        (0 — не задан, иначе порядковый номер {@link FigureType} + 1)
+ * </pre>
+ * Пиксели хранятся в том же порядке, что и в двоичном формате запроса POST /, и в словах {@link BitImage}:
+ * изображение не больше 64 пикселей читается одним словом.
+ */
+public final class FigureDataStore extends AbstractList<FigureImage> implements RandomAccess {
+    static final int FORMAT_VERSION = 1;
+    static final int HEADER_SIZE = 4 * Integer.BYTES + 2 * Long.BYTES;
+
+    private static final int MAGIC = 0x53444E4E; // "NNDS" в порядке little-endian
+    private static final int MAX_SEGMENT_SIZE = 1 << 30; // Одно отображение ограничено 2 ГБ
+    private static final int WRITE_BUFFER_SIZE = 1 << 16;
+    private static final FigureType[] FIGURE_TYPES = FigureType.values();
+
+    private final ByteBuffer[] segments; // Отображения файла, каждое содержит recordsPerSegment записей
+    private final int recordsPerSegment;
+    private final int imageSize;
+    private final int pixelBytes;
+    private final int recordSize;
+    private final int count;
+    private final long seed;
+
+    private FigureDataStore(ByteBuffer[] segments, int recordsPerSegment, int imageSize, int count, long seed) {
+        this.segments = segments;
+        this.recordsPerSegment = recordsPerSegment;
+        this.imageSize = imageSize;
+        this.pixelBytes = pixelBytes(imageSize);
+        this.recordSize = pixelBytes + 1;
+        this.count = count;
+        this.seed = seed;
+    }
+
+    /**
+     * Записывает изображения в файл набора. Изображения читаются одним проходом и не накапливаются в памяти;
+     * файл записывается во временный рядом с целевым и атомарно переименовывается.
+     *
+     * @param path   путь к файлу набора.
+     * @param images изображения одинакового размера.
+     * @param seed   зерно генератора, которым созданы изображения; записывается в заголовок.
+     * @throws IOException если файл не удалось записать.
+     * @throws IllegalArgumentException если изображений нет или их размеры различаются.
+     */
+    public static void write(Path path, Iterable<FigureImage> images, long seed) throws IOException {
+        Iterator<FigureImage> iterator = images.iterator();
+        if (!iterator.hasNext()) {
+            throw new IllegalArgumentException("Набор данных пуст");
+        }
+        FigureImage first = iterator.next();
+        int imageSize = first.image().size();
+        int pixelBytes = pixelBytes(imageSize);
+
+        Path absolute = path.toAbsolutePath();
+        Path temp = absolute.resolveSibling(absolute.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.allocate(Math.max(WRITE_BUFFER_SIZE, HEADER_SIZE + pixelBytes + 1))
+                    .order(ByteOrder.LITTLE_ENDIAN);
+            buffer.position(HEADER_SIZE); // Заголовок записывается после подсчета записей
+            long count = 0;
+            for (FigureImage figure = first; figure != null; figure = iterator.hasNext() ? iterator.next() : null) {
+                BitImage image = figure.image();
+                if (image.size() != imageSize) {
+                    throw new IllegalArgumentException("Размер изображения " + image.size() + " отличается от "
+                            + imageSize);
+                }
+                if (buffer.remaining() < pixelBytes + 1) {
+                    flush(channel, buffer);
+                }
+                int words = image.wordCount();
+                for (int i = 0; i < words - 1; i++) {
+                    buffer.putLong(image.word(i));
+                }
+                long last = image.word(words - 1);
+                for (int i = (words - 1) * Long.BYTES; i < pixelBytes; i++) {
+                    buffer.put((byte) last);
+                    last >>>= Byte.SIZE;
+                }
+                buffer.put((byte) (figure.figureType() == null ? 0 : figure.figureType().ordinal() + 1));
+                count++;
+            }
+            flush(channel, buffer);
+
+            buffer.clear();
+            buffer.putInt(MAGIC)
+                    .putInt(FORMAT_VERSION)
+                    .putInt(imageSize)
+                    .putInt(pixelBytes + 1)
+                    .putLong(count)
+                    .putLong(seed)
+                    .flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer, buffer.position());
+            }
+            channel.force(true);
+        }
+        Files.move(temp, absolute, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Открывает файл набора и отображает его в память.
+     *
+     * @param path путь к файлу набора.
+     * @return набор данных.
+     * @throws IOException если файл не удалось прочитать или он не соответствует формату.
+     */
+    public static FigureDataStore open(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long fileSize = channel.size();
+            if (fileSize < HEADER_SIZE) {
+                throw new IOException("Файл набора данных короче заголовка: " + path);
+            }
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            while (header.hasRemaining() && channel.read(header, header.position()) >= 0) {
+                // Читается до заполнения заголовка
+            }
+            header.flip();
+            if (header.getInt() != MAGIC) {
+                throw new IOException("Файл не является набором данных фигур: " + path);
+            }
+            int version = header.getInt();
+            if (version != FORMAT_VERSION) {
+                throw new IOException("Неподдерживаемая версия набора данных: " + version);
+            }
+            int imageSize = header.getInt();
+            int recordSize = header.getInt();
+            long count = header.getLong();
+            long seed = header.getLong();
+            if (imageSize < 1 || imageSize > Short.MAX_VALUE || recordSize != pixelBytes(imageSize) + 1
+                    || recordSize > MAX_SEGMENT_SIZE) {
+                throw new IOException("Недопустимый размер изображений набора данных: " + imageSize);
+            }
+            if (count < 0 || count > Integer.MAX_VALUE || fileSize != HEADER_SIZE + count * recordSize) {
+                throw new IOException("Размер файла набора данных " + fileSize + " не соответствует " + count
+                        + " записям по " + recordSize + " байт");
+            }
+
+            int recordsPerSegment = MAX_SEGMENT_SIZE / recordSize;
+            ByteBuffer[] segments = new ByteBuffer[(int) ((count + recordsPerSegment - 1) / recordsPerSegment)];
+            for (int s = 0; s < segments.length; s++) {
+                long first = (long) s * recordsPerSegment;
+                long records = Math.min(recordsPerSegment, count - first);
+                segments[s] = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_SIZE + first * recordSize,
+                        records * recordSize).order(ByteOrder.LITTLE_ENDIAN);
+            }
+            return new FigureDataStore(segments, recordsPerSegment, imageSize, (int) count, seed);
+        }
+    }
+
+    /**
+     * Возвращает изображение, прочитанное из отображения файла.
+     *
+     * @param index номер изображения.
+     * @return изображение фигуры.
+     */
+    @Override
+    public FigureImage get(int index) {
+        Objects.checkIndex(index, count);
+        ByteBuffer segment = segments[index / recordsPerSegment];
+        int offset = (index % recordsPerSegment) * recordSize;
+        int pixels = imageSize * imageSize;
+
+        BitImage image;
+        if (pixels <= Long.SIZE) {
+            image = new LongBitImage(imageSize, readWord(segment, offset, pixelBytes));
+        } else {
+            long[] words = new long[BitImage.wordCount(imageSize)];
+            int full = pixelBytes >>> 3;
+            for (int i = 0; i < full; i++) {
+                words[i] = segment.getLong(offset + i * Long.BYTES);
+            }
+            if (full < words.length) {
+                words[full] = readWord(segment, offset + full * Long.BYTES, pixelBytes - full * Long.BYTES);
+            }
+            image = BitImage.of(imageSize, words); // Отбрасывает биты за последним пикселем
+        }
+        int type = segment.get(offset + pixelBytes) & 0xFF;
+        if (type > FIGURE_TYPES.length) {
+            throw new IllegalStateException("Запись " + index + " повреждена: неизвестный тип фигуры " + type);
+        }
+        return new FigureImage(image, type == 0 ? null : FIGURE_TYPES[type - 1]);
+    }
+
+    /**
+     * Возвращает количество изображений в наборе.
+     *
+     * @return размер набора.
+     */
+    @Override
+    public int size() {
+        return count;
+    }
+
+    /**
+     * Возвращает длину стороны изображений набора.
+     *
+     * @return размер изображений.
+     */
+    public int imageSize() {
+        return imageSize;
+    }
+
+    /**
+     * Возвращает зерно генератора, которым создан набор.
+     *
+     * @return зерно из заголовка файла.
+     */
+    public long seed() {
+        return seed;
+    }
+
+    /**
+     * Читает до 8 байт пикселей, начиная с заданного смещения, в одно слово.
+     */
+    private static long readWord(ByteBuffer segment, int offset, int bytes) {
+        if (bytes >= Long.BYTES || offset + Long.BYTES <= segment.limit()) {
+            return segment.getLong(offset); // Лишние байты следующей записи отбрасывает изображение
+        }
+        long word = 0;
+        for (int i = 0; i < bytes; i++) {
+            word |= (segment.get(offset + i) & 0xFFL) << (i * Byte.SIZE);
+        }
+        return word;
+    }
+
+    private static int pixelBytes(int size) {
+        return (size * size + Byte.SIZE - 1) >>> 3;
+    }
+
+    private static void flush(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+}
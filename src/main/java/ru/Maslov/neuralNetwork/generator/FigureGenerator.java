@@ -2,9 +2,10 @@ package ru.Maslov.neuralNetwork.generator;
 
 import ru.Maslov.neuralNetwork.model.FigureImage;
 
+import java.util.ArrayList;
 import java.util.List;
-
-import static ru.Maslov.neuralNetwork.Constants.SIZE;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.random.RandomGenerator;
 
 /**
  * Интерфейс FigureGenerator представляет собой генератор фигур для обучения и тестирования нейронной сети.
@@ -12,10 +13,19 @@ import static ru.Maslov.neuralNetwork.Constants.SIZE;
  */
 public interface FigureGenerator {
     /**
-     * Размер изображения (количество пикселей по одной стороне).
-     * Константа используется для определения размерности изображений.
+     * Возвращает размер генерируемых изображений (количество пикселей по одной стороне).
+     *
+     * @return длина стороны изображения.
+     */
+    int size();
+
+    /**
+     * Генерирует одно изображение фигуры.
+     *
+     * @param random источник случайных чисел для шума; при одинаковом состоянии источника изображение одинаково.
+     * @return объект FigureImage, содержащий изображение и тип фигуры.
      */
-    int SIZE_IMAGE = SIZE;
+    FigureImage generate(RandomGenerator random);
 
     /**
      * Генерирует список изображений фигур заданного количества.
@@ -24,5 +34,12 @@ public interface FigureGenerator {
      * @param countFigure количество генерируемых изображений фигур.
      * @return список объектов FigureImage, представляющих сгенерированные изображения фигур.
      */
-    List<FigureImage> generate(Integer countFigure);
+    default List<FigureImage> generate(Integer countFigure) {
+        RandomGenerator random = ThreadLocalRandom.current();
+        List<FigureImage> images = new ArrayList<>(countFigure);
+        for (int i = 0; i < countFigure; i++) {
+            images.add(generate(random));
+        }
+        return images;
+    }
 }
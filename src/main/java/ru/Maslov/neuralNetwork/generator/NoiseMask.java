@@ -0,0 +1,60 @@
+package ru.Maslov.neuralNetwork.generator;
+
+import ru.Maslov.neuralNetwork.model.BitImage;
+import ru.Maslov.neuralNetwork.model.LongBitImage;
+
+import java.util.random.RandomGenerator;
+
+/**
+ * Класс NoiseMask накладывает шум на шаблон фигуры: каждый пиксель шаблона независимо инвертируется
+ * с вероятностью {@value #PROBABILITY}.
+ * <p>
+ * Маска шума строится сразу для 64 пикселей из нескольких случайных слов. Вероятность записывается
+ * двоичной дробью {@code THRESHOLD / 2^PRECISION}; слова объединяются от младшего разряда дроби к старшему:
+ * единичный разряд — через ИЛИ (вероятность бита p становится (1 + p) / 2), нулевой — через И (p / 2).
+ * После {@value #PRECISION} слов каждый бит маски равен единице с вероятностью {@code THRESHOLD / 2^PRECISION}
+ * независимо от остальных, что отличается от {@value #PROBABILITY} меньше чем на 2^-16.
+ */
+final class NoiseMask {
+    static final double PROBABILITY = 0.05;
+
+    private static final int PRECISION = 16;
+    private static final int THRESHOLD = (int) Math.round(PROBABILITY * (1 << PRECISION));
+
+    private NoiseMask() {
+    }
+
+    /**
+     * Накладывает шум на шаблон фигуры.
+     *
+     * @param size     длина стороны изображения.
+     * @param template упакованные пиксели фигуры без шума; не изменяется.
+     * @param random   источник случайных чисел.
+     * @return изображение фигуры с шумом.
+     */
+    static BitImage apply(int size, long[] template, RandomGenerator random) {
+        if (template.length == 1) {
+            return new LongBitImage(size, template[0] ^ next(random)); // Биты за изображением отбрасывает LongBitImage
+        }
+        long[] words = new long[template.length];
+        for (int i = 0; i < words.length; i++) {
+            words[i] = template[i] ^ next(random);
+        }
+        return BitImage.of(size, words);
+    }
+
+    /**
+     * Возвращает слово маски шума: каждый бит равен единице с вероятностью {@code THRESHOLD / 2^PRECISION}.
+     *
+     * @param random источник случайных чисел.
+     * @return маска шума для 64 пикселей.
+     */
+    static long next(RandomGenerator random) {
+        int bit = Integer.numberOfTrailingZeros(THRESHOLD);
+        long mask = random.nextLong();
+        while (++bit < PRECISION) {
+            mask = (THRESHOLD >>> bit & 1) != 0 ? mask | random.nextLong() : mask & random.nextLong();
+        }
+        return mask;
+    }
+}
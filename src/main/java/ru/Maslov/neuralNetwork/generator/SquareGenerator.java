@@ -1,54 +1,74 @@
 package ru.Maslov.neuralNetwork.generator;
 
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
+import ru.Maslov.neuralNetwork.model.BitImage;
 import ru.Maslov.neuralNetwork.model.FigureImage;
 import ru.Maslov.neuralNetwork.model.FigureType;
 
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Random;
+import java.util.random.RandomGenerator;
+
+import static ru.Maslov.neuralNetwork.Constants.SIZE;
 
 @Component
 public class SquareGenerator implements FigureGenerator {
-    private static final Random RANDOM = new Random();
+    private final int size;
+    private final long[] template; // Пиксели фигуры без шума, общие для всех изображений
+
+    /**
+     * Создает генератор изображений квадрата размера по умолчанию.
+     */
+    public SquareGenerator() {
+        this(SIZE);
+    }
+
+    /**
+     * Создает генератор изображений квадрата заданного размера.
+     *
+     * @param size длина стороны изображения в пикселях.
+     */
+    @Autowired
+    public SquareGenerator(@Value("${neural-network.image-size:7}") int size) {
+        this.size = size;
+        this.template = template(size);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
 
     @Override
-    public List<FigureImage> generate(Integer countFigure) {
-        double center = (SIZE_IMAGE - 1) / 2.0;
-        int destOutBound = (int) Math.ceil(center - (int) Math.ceil((SIZE_IMAGE - center) / 2));
-
-        List<FigureImage> figures = new ArrayList<>();
-
-        for (int i = 0; i < countFigure; i++) {
-            List<List<Boolean>> image = new ArrayList<>();
-
-            for (int row = 0; row < SIZE_IMAGE; row++) {
-                List<Boolean> line = new ArrayList<>();
-                for (int col = 0; col < SIZE_IMAGE; col++) {
-                    boolean isEdge =
-                            (row == destOutBound && destOutBound <= col && col <= SIZE_IMAGE - destOutBound - 1) ||
-                            (col == destOutBound && destOutBound <= row && row <= SIZE_IMAGE - destOutBound - 1) ||
-                            (row == SIZE_IMAGE - destOutBound - 1 && destOutBound <= col && col <= SIZE_IMAGE - destOutBound - 1) ||
-                            (col == SIZE_IMAGE - destOutBound - 1 && destOutBound <= row && row <= SIZE_IMAGE - destOutBound - 1);
-                    boolean hasNoise = RANDOM.nextDouble() < 0.05;
-
-                    if (isEdge && !hasNoise) {
-                        line.add(true);
-                    } else if (hasNoise) {
-                        if (!isEdge)
-                            line.add(true);
-                        else
-                            line.add(false);
-                    } else {
-                        line.add(false);
-                    }
+    public FigureImage generate(RandomGenerator random) {
+        return new FigureImage(NoiseMask.apply(size, template, random), FigureType.SQUARE);
+    }
+
+    /**
+     * Строит шаблон квадрата: рамку с отступом от краев изображения.
+     *
+     * @param size длина стороны изображения.
+     * @return упакованные пиксели квадрата без шума.
+     */
+    private static long[] template(int size) {
+        double center = (size - 1) / 2.0;
+        int destOutBound = (int) Math.ceil(center - (int) Math.ceil((size - center) / 2));
+
+        long[] image = BitImage.newWords(size);
+
+        for (int row = 0; row < size; row++) {
+            for (int col = 0; col < size; col++) {
+                boolean isEdge =
+                        (row == destOutBound && destOutBound <= col && col <= size - destOutBound - 1) ||
+                        (col == destOutBound && destOutBound <= row && row <= size - destOutBound - 1) ||
+                        (row == size - destOutBound - 1 && destOutBound <= col && col <= size - destOutBound - 1) ||
+                        (col == size - destOutBound - 1 && destOutBound <= row && row <= size - destOutBound - 1);
+
+                if (isEdge) {
+                    BitImage.setBit(image, row * size + col);
                 }
-                image.add(line);
             }
-
-            figures.add(new FigureImage(image, FigureType.SQUARE));
         }
-
-        return figures;
+        return image;
     }
 }
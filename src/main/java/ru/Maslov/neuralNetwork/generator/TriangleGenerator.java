@@ -1,61 +1,74 @@
 package ru.Maslov.neuralNetwork.generator;
 
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
+import ru.Maslov.neuralNetwork.model.BitImage;
 import ru.Maslov.neuralNetwork.model.FigureImage;
 import ru.Maslov.neuralNetwork.model.FigureType;
 
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Random;
+import java.util.random.RandomGenerator;
+
+import static ru.Maslov.neuralNetwork.Constants.SIZE;
 
 @Component
 public class TriangleGenerator implements FigureGenerator {
-    private static final Random RANDOM = new Random();
+    private final int size;
+    private final long[] template; // Пиксели фигуры без шума, общие для всех изображений
+
+    /**
+     * Создает генератор изображений треугольника размера по умолчанию.
+     */
+    public TriangleGenerator() {
+        this(SIZE);
+    }
+
+    /**
+     * Создает генератор изображений треугольника заданного размера.
+     *
+     * @param size длина стороны изображения в пикселях.
+     */
+    @Autowired
+    public TriangleGenerator(@Value("${neural-network.image-size:7}") int size) {
+        this.size = size;
+        this.template = template(size);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
 
     @Override
-    public List<FigureImage> generate(Integer countFigure) {
-        List<FigureImage> images = new ArrayList<>();
-
-        for (int i = 0; i < countFigure; i++) {
-            int stepsBaseWidth = (SIZE_IMAGE + 1) / 2;
-            double center = (SIZE_IMAGE - 1) / 2.0;
-            int destOutBound = (int) Math.ceil(center - (int) Math.ceil((SIZE_IMAGE - center) / 2));
-
-            List<List<Boolean>> triangle = new ArrayList<>();
-
-            for (int row = 0; row < SIZE_IMAGE; row++) {
-                List<Boolean> line = new ArrayList<>();
-                for (int col = 0; col < SIZE_IMAGE; col++) {
-                    boolean hasNoise = RANDOM.nextDouble() < 0.05;
-                    if (row >= destOutBound && row <= SIZE_IMAGE - destOutBound - 1) {
-                        int triangleBaseWidth = ((row - destOutBound) * stepsBaseWidth) / SIZE_IMAGE * 2 + 1;
-                        int triangleStartCol = (SIZE_IMAGE - triangleBaseWidth) / 2;
-                        boolean isEdge = col == triangleStartCol || col == triangleStartCol + triangleBaseWidth - 1
-                                || (row == SIZE_IMAGE - destOutBound - 1 && col >= destOutBound && col < SIZE_IMAGE - destOutBound - 1);
-
-                        if (isEdge && !hasNoise) {
-                            line.add(true);
-                        } else if (hasNoise) {
-                            if (!isEdge)
-                                line.add(true);
-                            else
-                                line.add(false);
-                        } else {
-                            line.add(false);
-                        }
-                    } else {
-                        if (hasNoise)
-                            line.add(true);
-                        else
-                            line.add(false);
-                    }
+    public FigureImage generate(RandomGenerator random) {
+        return new FigureImage(NoiseMask.apply(size, template, random), FigureType.TRIANGLE);
+    }
+
+    /**
+     * Строит шаблон треугольника: боковые стороны, расходящиеся от вершины, и основание.
+     *
+     * @param size длина стороны изображения.
+     * @return упакованные пиксели треугольника без шума.
+     */
+    private static long[] template(int size) {
+        int stepsBaseWidth = (size + 1) / 2;
+        double center = (size - 1) / 2.0;
+        int destOutBound = (int) Math.ceil(center - (int) Math.ceil((size - center) / 2));
+
+        long[] triangle = BitImage.newWords(size);
+
+        for (int row = destOutBound; row <= size - destOutBound - 1; row++) {
+            int triangleBaseWidth = ((row - destOutBound) * stepsBaseWidth) / size * 2 + 1;
+            int triangleStartCol = (size - triangleBaseWidth) / 2;
+            for (int col = 0; col < size; col++) {
+                boolean isEdge = col == triangleStartCol || col == triangleStartCol + triangleBaseWidth - 1
+                        || (row == size - destOutBound - 1 && col >= destOutBound && col < size - destOutBound - 1);
+
+                if (isEdge) {
+                    BitImage.setBit(triangle, row * size + col);
                 }
-                triangle.add(line);
             }
-
-            images.add(new FigureImage(triangle, FigureType.TRIANGLE));
         }
-
-        return images;
+        return triangle;
     }
 }
@@ -0,0 +1,178 @@
+package ru.Maslov.neuralNetwork.metrics;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import ru.Maslov.neuralNetwork.model.FigureType;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Класс NeuralNetworkMetrics собирает в одном месте метрики сервиса, публикуемые через Micrometer:
+ * <ul>
+ *     <li>{@code neural.network.request.latency} — гистограмма задержки обработки запроса по фазам
+ *     (десериализация, прямой проход, сериализация);</li>
+ *     <li>{@code neural.network.predictions} — количество предсказаний каждого типа фигуры;</li>
+ *     <li>{@code neural.network.model.version} — номер используемой версии модели;</li>
+ *     <li>{@code neural.network.batch.size} — размеры пакетов изображений в запросах и в пакетах,
+ *     собранных из одиночных предсказаний;</li>
+ *     <li>{@code neural.network.batching.queue.wait} — время ожидания одиночного предсказания в очереди
+ *     до вычисления его пакета;</li>
+ *     <li>{@code neural.network.prediction.cache}, {@code neural.network.prediction.cache.evictions} и
+ *     {@code neural.network.prediction.cache.size} — попадания и промахи кэша предсказаний, вытеснения
+ *     и количество записей;</li>
+ *     <li>{@code neural.network.training} и {@code neural.network.training.error} — длительность обучения
+ *     и итоговая ошибка на обучающих данных.</li>
+ * </ul>
+ */
+@Component
+public class NeuralNetworkMetrics {
+    public static final String PHASE_DESERIALIZATION = "deserialization";
+    public static final String PHASE_FORWARD = "forward";
+    public static final String PHASE_SERIALIZATION = "serialization";
+
+    private final MeterRegistry registry;
+    private final Map<FigureType, Counter> predictions = new EnumMap<>(FigureType.class);
+    private final Map<String, AtomicLong> trainingErrors = new ConcurrentHashMap<>();
+
+    /**
+     * Конструктор класса NeuralNetworkMetrics.
+     *
+     * @param registry реестр метрик.
+     */
+    @Autowired
+    public NeuralNetworkMetrics(MeterRegistry registry) {
+        this.registry = registry;
+        for (FigureType figureType : FigureType.values()) {
+            predictions.put(figureType, Counter.builder("neural.network.predictions")
+                    .description("Количество предсказаний по типам фигур")
+                    .tag("figure_type", figureType.name())
+                    .register(registry));
+        }
+    }
+
+    /**
+     * Записывает длительность фазы обработки запроса.
+     *
+     * @param phase фаза: {@link #PHASE_DESERIALIZATION}, {@link #PHASE_FORWARD} или {@link #PHASE_SERIALIZATION}.
+     * @param type  тип тела запроса или ответа.
+     * @param nanos длительность в наносекундах.
+     */
+    public void recordPhase(String phase, String type, long nanos) {
+        Timer.builder("neural.network.request.latency")
+                .description("Задержка обработки запроса по фазам")
+                .tag("phase", phase)
+                .tag("type", type)
+                .publishPercentileHistogram()
+                .register(registry)
+                .record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Увеличивает счетчик предсказаний заданного типа фигуры.
+     *
+     * @param figureType предсказанный тип фигуры.
+     */
+    public void countPrediction(FigureType figureType) {
+        predictions.get(figureType).increment();
+    }
+
+    /**
+     * Записывает размер пакета изображений, обработанного за один запрос.
+     *
+     * @param endpoint эндпоинт, обработавший пакет.
+     * @param size     количество изображений.
+     */
+    public void recordBatchSize(String endpoint, int size) {
+        DistributionSummary.builder("neural.network.batch.size")
+                .description("Количество изображений в одном запросе")
+                .tag("endpoint", endpoint)
+                .register(registry)
+                .record(size);
+    }
+
+    /**
+     * Записывает время, которое одиночное предсказание ждало в очереди до вычисления своего пакета.
+     *
+     * @param nanos время ожидания в наносекундах.
+     */
+    public void recordQueueWait(long nanos) {
+        Timer.builder("neural.network.batching.queue.wait")
+                .description("Время ожидания предсказания в очереди объединения запросов")
+                .publishPercentileHistogram()
+                .register(registry)
+                .record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Регистрирует метрики кэша предсказаний.
+     *
+     * @param hits      поставщик количества попаданий.
+     * @param misses    поставщик количества промахов.
+     * @param evictions поставщик количества вытесненных записей.
+     * @param size      поставщик текущего количества записей.
+     */
+    public void registerPredictionCache(Supplier<Number> hits, Supplier<Number> misses,
+                                        Supplier<Number> evictions, Supplier<Number> size) {
+        FunctionCounter.builder("neural.network.prediction.cache", hits, value -> value.get().doubleValue())
+                .description("Обращения к кэшу предсказаний")
+                .tag("result", "hit")
+                .register(registry);
+        FunctionCounter.builder("neural.network.prediction.cache", misses, value -> value.get().doubleValue())
+                .description("Обращения к кэшу предсказаний")
+                .tag("result", "miss")
+                .register(registry);
+        FunctionCounter.builder("neural.network.prediction.cache.evictions", evictions, value -> value.get().doubleValue())
+                .description("Записи, вытесненные из кэша предсказаний")
+                .register(registry);
+        Gauge.builder("neural.network.prediction.cache.size", size)
+                .description("Количество записей в кэше предсказаний")
+                .register(registry);
+    }
+
+    /**
+     * Регистрирует метрику номера используемой версии модели.
+     *
+     * @param version поставщик текущего номера версии.
+     */
+    public void registerModelVersion(Supplier<Number> version) {
+        Gauge.builder("neural.network.model.version", version)
+                .description("Номер используемой версии модели")
+                .register(registry);
+    }
+
+    /**
+     * Записывает длительность обучения и итоговую ошибку.
+     *
+     * @param type     вид обучения, например initial или fine-tuning.
+     * @param duration длительность обучения.
+     * @param error    итоговая средняя ошибка на обучающих данных.
+     */
+    public void recordTraining(String type, Duration duration, double error) {
+        Timer.builder("neural.network.training")
+                .description("Длительность обучения нейронной сети")
+                .tag("type", type)
+                .register(registry)
+                .record(duration);
+
+        trainingErrors.computeIfAbsent(type, key -> {
+            AtomicLong holder = new AtomicLong();
+            Gauge.builder("neural.network.training.error", holder, bits -> Double.longBitsToDouble(bits.get()))
+                    .description("Итоговая средняя ошибка обучения")
+                    .tag("type", key)
+                    .register(registry);
+            return holder;
+        }).set(Double.doubleToLongBits(error));
+    }
+}
@@ -0,0 +1,56 @@
+package ru.Maslov.neuralNetwork.metrics;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+import org.springframework.http.converter.HttpMessageNotWritableException;
+import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.lang.reflect.Type;
+
+/**
+ * JSON-конвертер, который замеряет время десериализации тел запросов и сериализации тел ответов.
+ * Заменяет конвертер Jackson, создаваемый Spring Boot по умолчанию, и использует тот же ObjectMapper.
+ */
+@Component
+public class TimedJacksonHttpMessageConverter extends MappingJackson2HttpMessageConverter {
+    private final NeuralNetworkMetrics metrics;
+
+    /**
+     * Конструктор класса TimedJacksonHttpMessageConverter.
+     *
+     * @param objectMapper ObjectMapper приложения.
+     * @param metrics      метрики сервиса.
+     */
+    @Autowired
+    public TimedJacksonHttpMessageConverter(ObjectMapper objectMapper, NeuralNetworkMetrics metrics) {
+        super(objectMapper);
+        this.metrics = metrics;
+    }
+
+    @Override
+    public Object read(Type type, @Nullable Class<?> contextClass, HttpInputMessage inputMessage)
+            throws IOException, HttpMessageNotReadableException {
+        long start = System.nanoTime();
+        Object result = super.read(type, contextClass, inputMessage);
+        metrics.recordPhase(NeuralNetworkMetrics.PHASE_DESERIALIZATION, typeName(result), System.nanoTime() - start);
+        return result;
+    }
+
+    @Override
+    protected void writeInternal(Object object, @Nullable Type type, HttpOutputMessage outputMessage)
+            throws IOException, HttpMessageNotWritableException {
+        long start = System.nanoTime();
+        super.writeInternal(object, type, outputMessage);
+        metrics.recordPhase(NeuralNetworkMetrics.PHASE_SERIALIZATION, typeName(object), System.nanoTime() - start);
+    }
+
+    private static String typeName(Object object) {
+        return object == null ? "null" : object.getClass().getSimpleName();
+    }
+}
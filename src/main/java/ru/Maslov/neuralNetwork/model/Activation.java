@@ -0,0 +1,209 @@
+package ru.Maslov.neuralNetwork.model;
+
+/**
+ * Функция активации слоя нейронной сети.
+ * <p>
+ * Производная каждой функции вычисляется по уже вычисленному выходу нейрона, сохраненному при прямом
+ * проходе, поэтому обратный проход не вычисляет экспоненты повторно.
+ * <p>
+ * Порядковые номера констант записываются в снимки сети: новые функции добавляются только в конец.
+ */
+public enum Activation {
+    /**
+     * Логистическая сигмоида 1 / (1 + e^-x).
+     */
+    SIGMOID {
+        @Override
+        double value(double x) {
+            return 1.0 / (1.0 + Math.exp(-x));
+        }
+
+        @Override
+        public double derivative(double activation) {
+            return activation * (1.0 - activation);
+        }
+    },
+
+    /**
+     * Сигмоида, вычисляемая линейной интерполяцией по таблице вместо экспоненты.
+     * Отличается от {@link #SIGMOID} не больше чем на 1e-6.
+     */
+    FAST_SIGMOID {
+        @Override
+        double value(double x) {
+            return SigmoidTable.sigmoid(x);
+        }
+
+        @Override
+        public double derivative(double activation) {
+            return activation * (1.0 - activation);
+        }
+    },
+
+    /**
+     * Гиперболический тангенс.
+     */
+    TANH {
+        @Override
+        double value(double x) {
+            return Math.tanh(x);
+        }
+
+        @Override
+        public double derivative(double activation) {
+            return 1.0 - activation * activation;
+        }
+    },
+
+    /**
+     * Выпрямитель max(0, x).
+     */
+    RELU {
+        @Override
+        double value(double x) {
+            return x > 0 ? x : 0.0;
+        }
+
+        @Override
+        public double derivative(double activation) {
+            return activation > 0 ? 1.0 : 0.0;
+        }
+    },
+
+    /**
+     * Softmax выходного слоя с функцией потерь перекрестной энтропии. Выходы слоя неотрицательны и в сумме
+     * дают 1. Градиент перекрестной энтропии по входу softmax равен разности выхода и целевого значения,
+     * поэтому множитель производной равен 1.
+     */
+    SOFTMAX {
+        @Override
+        double value(double x) {
+            throw new UnsupportedOperationException("Softmax вычисляется только для всего слоя");
+        }
+
+        @Override
+        public void apply(double[] values, int from, int to) {
+            double max = Double.NEGATIVE_INFINITY;
+            for (int i = from; i < to; i++) {
+                max = Math.max(max, values[i]);
+            }
+            double sum = 0;
+            for (int i = from; i < to; i++) {
+                values[i] = Math.exp(values[i] - max);
+                sum += values[i];
+            }
+            for (int i = from; i < to; i++) {
+                values[i] /= sum;
+            }
+        }
+
+        @Override
+        public void apply(float[] values, int from, int to) {
+            float max = Float.NEGATIVE_INFINITY;
+            for (int i = from; i < to; i++) {
+                max = Math.max(max, values[i]);
+            }
+            double sum = 0;
+            for (int i = from; i < to; i++) {
+                values[i] = (float) Math.exp(values[i] - max);
+                sum += values[i];
+            }
+            for (int i = from; i < to; i++) {
+                values[i] = (float) (values[i] / sum);
+            }
+        }
+
+        @Override
+        public double derivative(double activation) {
+            return 1.0;
+        }
+    };
+
+    /**
+     * Вычисляет функцию активации одного нейрона.
+     * @param x Взвешенная сумма входов нейрона.
+     * @return Выход нейрона.
+     */
+    abstract double value(double x);
+
+    /**
+     * Вычисляет производную функции активации по входу нейрона через выход нейрона.
+     * Для {@link #SOFTMAX} возвращает множитель градиента перекрестной энтропии.
+     * @param activation Выход нейрона, вычисленный при прямом проходе.
+     * @return Значение производной.
+     */
+    public abstract double derivative(double activation);
+
+    /**
+     * Применяет функцию активации к участку массива взвешенных сумм одного слоя на месте.
+     * @param values Массив значений.
+     * @param from Начало участка (включительно).
+     * @param to Конец участка (не включительно).
+     */
+    public void apply(double[] values, int from, int to) {
+        for (int i = from; i < to; i++) {
+            values[i] = value(values[i]);
+        }
+    }
+
+    /**
+     * Применяет функцию активации к участку массива 32-битных чисел на месте.
+     * @param values Массив значений.
+     * @param from Начало участка (включительно).
+     * @param to Конец участка (не включительно).
+     */
+    public void apply(float[] values, int from, int to) {
+        for (int i = from; i < to; i++) {
+            values[i] = (float) value(values[i]);
+        }
+    }
+
+    /**
+     * Проверяет, вычисляет ли функция сигмоиду (точно или приближенно).
+     * @return true для {@link #SIGMOID} и {@link #FAST_SIGMOID}.
+     */
+    public boolean isSigmoid() {
+        return this == SIGMOID || this == FAST_SIGMOID;
+    }
+
+    /**
+     * Таблица сигмоиды для {@link #FAST_SIGMOID}. Вынесена во вложенный класс, потому что константы
+     * перечисления создаются раньше его статических полей.
+     */
+    private static final class SigmoidTable {
+        private static final int SIZE = 4096; // Количество интервалов таблицы
+        private static final double RANGE = 16.0; // Таблица покрывает входы от -RANGE до RANGE
+        private static final double STEP = SIZE / (2 * RANGE); // Количество интервалов на единицу входа
+        private static final double[] TABLE = table();
+
+        private SigmoidTable() {
+        }
+
+        /**
+         * Вычисляет сигмоиду линейной интерполяцией между соседними значениями таблицы.
+         * За пределами таблицы возвращает ее крайние значения.
+         * @param x Входное значение.
+         * @return Приближенное значение сигмоиды.
+         */
+        private static double sigmoid(double x) {
+            if (x <= -RANGE) {
+                return TABLE[0];
+            }
+            if (x >= RANGE) {
+                return TABLE[SIZE];
+            }
+            double position = (x + RANGE) * STEP;
+            int index = Math.min((int) position, SIZE - 1); // Входы чуть меньше RANGE могут округлиться до SIZE
+            double fraction = position - index;
+            return TABLE[index] + (TABLE[index + 1] - TABLE[index]) * fraction;
+        }
+
+        private static double[] table() {
+            double[] table = new double[SIZE + 1];
+            for (int i = 0; i <= SIZE; i++) {
+                table[i] = 1.0 / (1.0 + Math.exp(RANGE - i / STEP));
+            }
+            return table;
+        }
+    }
+}
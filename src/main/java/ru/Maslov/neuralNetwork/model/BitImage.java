@@ -0,0 +1,183 @@
+package ru.Maslov.neuralNetwork.model;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonValue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Интерфейс BitImage представляет квадратное черно-белое изображение фигуры в упакованном виде:
+ * каждый пиксель хранится одним битом. Пиксель (row, col) имеет индекс {@code row * size + col},
+ * бит с индексом i лежит в слове {@code i >>> 6} на позиции {@code i & 63}.
+ * <p>
+ * Изображения до 64 пикселей хранятся в одном {@code long} ({@link LongBitImage}),
+ * изображения большего размера — в массиве {@code long[]} ({@link LongArrayBitImage}).
+ * <p>
+ * В JSON изображение по-прежнему представляется массивом массивов логических значений.
+ */
+public sealed interface BitImage permits LongBitImage, LongArrayBitImage {
+
+    /**
+     * Возвращает длину стороны изображения в пикселях.
+     *
+     * @return размер изображения.
+     */
+    int size();
+
+    /**
+     * Возвращает количество слов, в которых хранятся пиксели изображения.
+     *
+     * @return количество слов.
+     */
+    int wordCount();
+
+    /**
+     * Возвращает слово с упакованными пикселями.
+     *
+     * @param index индекс слова.
+     * @return 64 пикселя, начиная с пикселя {@code index * 64}.
+     */
+    long word(int index);
+
+    /**
+     * Возвращает общее количество пикселей изображения.
+     *
+     * @return количество пикселей.
+     */
+    default int pixelCount() {
+        return size() * size();
+    }
+
+    /**
+     * Проверяет, заполнен ли пиксель с заданным линейным индексом.
+     *
+     * @param index индекс пикселя.
+     * @return true, если пиксель заполнен.
+     */
+    default boolean get(int index) {
+        return (word(index >>> 6) & (1L << index)) != 0;
+    }
+
+    /**
+     * Проверяет, заполнен ли пиксель в заданной строке и столбце.
+     *
+     * @param row строка.
+     * @param col столбец.
+     * @return true, если пиксель заполнен.
+     */
+    default boolean get(int row, int col) {
+        return get(row * size() + col);
+    }
+
+    /**
+     * Возвращает количество заполненных пикселей.
+     *
+     * @return количество заполненных пикселей.
+     */
+    default int cardinality() {
+        int count = 0;
+        for (int i = 0; i < wordCount(); i++) {
+            count += Long.bitCount(word(i));
+        }
+        return count;
+    }
+
+    /**
+     * Преобразует изображение в двумерный список логических значений (формат JSON-запросов).
+     *
+     * @return матрица пикселей.
+     */
+    @JsonValue
+    default List<List<Boolean>> toMatrix() {
+        int size = size();
+        List<List<Boolean>> matrix = new ArrayList<>(size);
+        for (int row = 0; row < size; row++) {
+            List<Boolean> line = new ArrayList<>(size);
+            for (int col = 0; col < size; col++) {
+                line.add(get(row, col));
+            }
+            matrix.add(line);
+        }
+        return matrix;
+    }
+
+    /**
+     * Создает изображение из двумерного списка логических значений.
+     *
+     * @param matrix квадратная матрица пикселей.
+     * @return упакованное изображение.
+     * @throws IllegalArgumentException если матрица пуста или не квадратная.
+     */
+    @JsonCreator
+    static BitImage fromMatrix(List<List<Boolean>> matrix) {
+        if (matrix == null || matrix.isEmpty()) {
+            throw new IllegalArgumentException("Изображение не должно быть пустым");
+        }
+        int size = matrix.size();
+        long[] words = newWords(size);
+        for (int row = 0; row < size; row++) {
+            List<Boolean> line = matrix.get(row);
+            if (line == null || line.size() != size) {
+                throw new IllegalArgumentException("Изображение должно быть квадратным: " + size + "x" + size);
+            }
+            for (int col = 0; col < size; col++) {
+                if (Boolean.TRUE.equals(line.get(col))) {
+                    setBit(words, row * size + col);
+                }
+            }
+        }
+        return of(size, words);
+    }
+
+    /**
+     * Создает изображение из упакованных слов. Массив не копируется для изображений большого размера.
+     *
+     * @param size  длина стороны изображения.
+     * @param words упакованные пиксели, длиной {@link #wordCount(int)}.
+     * @return упакованное изображение.
+     */
+    static BitImage of(int size, long[] words) {
+        if (words.length != wordCount(size)) {
+            throw new IllegalArgumentException("Ожидалось слов: " + wordCount(size) + ", получено: " + words.length);
+        }
+        int tail = (size * size) & (Long.SIZE - 1);
+        if (tail != 0) {
+            words[words.length - 1] &= (1L << tail) - 1;
+        }
+        if (words.length == 1) {
+            return new LongBitImage(size, words[0]);
+        }
+        return new LongArrayBitImage(size, words);
+    }
+
+    /**
+     * Возвращает количество слов, необходимое для хранения изображения заданного размера.
+     *
+     * @param size длина стороны изображения.
+     * @return количество слов.
+     */
+    static int wordCount(int size) {
+        return (size * size + Long.SIZE - 1) >>> 6;
+    }
+
+    /**
+     * Создает пустой массив слов для изображения заданного размера.
+     *
+     * @param size длина стороны изображения.
+     * @return массив слов.
+     */
+    static long[] newWords(int size) {
+        return new long[wordCount(size)];
+    }
+
+    /**
+     * Устанавливает бит с заданным индексом в массиве слов.
+     *
+     * @param words массив слов.
+     * @param index индекс пикселя.
+     */
+    static void setBit(long[] words, int index) {
+        words[index >>> 6] |= 1L << index;
+    }
+}
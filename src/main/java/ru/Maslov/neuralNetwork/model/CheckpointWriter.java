@@ -0,0 +1,117 @@
+package ru.Maslov.neuralNetwork.model;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Записывает контрольные точки одного обучения в отдельном потоке. Решение о записи принимается в конце
+ * каждой эпохи; состояние кодируется в потоке обучения, а запись и сброс на диск выполняются в фоне.
+ * Пока предыдущая точка записывается, новая не создается. Ошибка записи не прерывает обучение.
+ */
+@Slf4j
+final class CheckpointWriter implements AutoCloseable {
+    private final Checkpointing checkpointing;
+    private final int workers;
+    private final ExecutorService executor;
+    private Future<?> pending;
+    private int lastEpoch;
+    private long lastTime;
+
+    /**
+     * Конструктор класса CheckpointWriter.
+     * @param checkpointing Параметры контрольных точек.
+     * @param completedEpochs Количество эпох, завершенных до начала обучения (при продолжении с точки).
+     * @param workers Количество потоков, между которыми делится каждый пакет.
+     */
+    CheckpointWriter(Checkpointing checkpointing, int completedEpochs, int workers) {
+        this.checkpointing = checkpointing;
+        this.workers = workers;
+        this.lastEpoch = completedEpochs;
+        this.lastTime = System.nanoTime();
+        this.executor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "neural-network-checkpoint");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Проверяет, пора ли записать контрольную точку после завершенной эпохи.
+     * @param epochs Количество завершенных эпох.
+     * @return true, если точку следует записать.
+     */
+    boolean isDue(int epochs) {
+        if (pending != null && !pending.isDone()) {
+            return false;
+        }
+        int everyEpochs = checkpointing.everyEpochs();
+        return everyEpochs > 0 && epochs - lastEpoch >= everyEpochs
+                || !checkpointing.interval().isZero() && System.nanoTime() - lastTime >= checkpointing.interval().toNanos();
+    }
+
+    /**
+     * Возвращает состояние генератора обучающих данных перед следующей эпохой.
+     * @return Состояние генератора; 0, если данные от него не зависят.
+     */
+    long randomState() {
+        return checkpointing.randomState() != null ? checkpointing.randomState().getAsLong() : 0;
+    }
+
+    /**
+     * Возвращает количество потоков, между которыми делится каждый пакет.
+     * @return Количество потоков.
+     */
+    int workers() {
+        return workers;
+    }
+
+    /**
+     * Возвращает описание источника обучающих данных.
+     * @return Описание источника.
+     */
+    String dataSource() {
+        return checkpointing.dataSource();
+    }
+
+    /**
+     * Запускает фоновую запись закодированной контрольной точки.
+     * @param epochs Количество завершенных эпох.
+     * @param checkpoint Закодированная контрольная точка.
+     */
+    void write(int epochs, ByteBuffer checkpoint) {
+        lastEpoch = epochs;
+        lastTime = System.nanoTime();
+        pending = executor.submit(() -> {
+            try {
+                NeuralNetworkSnapshot.writeAtomically(checkpoint, checkpointing.path());
+                log.debug("Контрольная точка после эпохи {} записана в {}", epochs, checkpointing.path());
+            } catch (IOException e) {
+                log.warn("Не удалось записать контрольную точку {}", checkpointing.path(), e);
+            }
+        });
+    }
+
+    /**
+     * Дожидается записи последней контрольной точки и останавливает поток записи.
+     */
+    @Override
+    public void close() {
+        try {
+            if (pending != null) {
+                pending.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            log.warn("Не удалось записать контрольную точку {}", checkpointing.path(), e.getCause());
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
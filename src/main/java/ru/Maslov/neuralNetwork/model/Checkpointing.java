@@ -0,0 +1,39 @@
+package ru.Maslov.neuralNetwork.model;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.function.LongSupplier;
+
+/**
+ * Параметры периодических контрольных точек обучения.
+ * <p>
+ * Контрольная точка записывается в конце эпохи, если с предыдущей прошло {@code everyEpochs} эпох или
+ * {@code interval} времени. Состояние копируется в потоке обучения, а запись на диск выполняется в отдельном
+ * потоке; пока предыдущая точка записывается, новая не создается. Файл записывается атомарно, поэтому
+ * по пути {@code path} всегда находится последняя полностью записанная точка.
+ *
+ * @param path        путь к файлу контрольной точки
+ * @param everyEpochs количество эпох между точками; 0 — без ограничения по эпохам
+ * @param interval    время между точками; {@link Duration#ZERO} — без ограничения по времени
+ * @param randomState состояние генератора обучающих данных в конце эпохи (например,
+ *                    {@code FigureDataSet::randomState}); null — данные не зависят от генератора
+ * @param dataSource  описание источника обучающих данных, записываемое в точку; обучение продолжается с точки,
+ *                    только если источник описан так же
+ */
+public record Checkpointing(Path path, int everyEpochs, Duration interval, LongSupplier randomState, String dataSource) {
+
+    public Checkpointing {
+        if (path == null) {
+            throw new IllegalArgumentException("Не задан путь к контрольной точке");
+        }
+        if (dataSource == null) {
+            throw new IllegalArgumentException("Не задан источник обучающих данных");
+        }
+        if (everyEpochs < 0 || interval == null || interval.isNegative()) {
+            throw new IllegalArgumentException("Недопустимый период контрольных точек: " + everyEpochs + " эпох, " + interval);
+        }
+        if (everyEpochs == 0 && interval.isZero()) {
+            throw new IllegalArgumentException("Должен быть задан период контрольных точек в эпохах или во времени");
+        }
+    }
+}
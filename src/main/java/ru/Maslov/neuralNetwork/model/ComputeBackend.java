@@ -0,0 +1,31 @@
+package ru.Maslov.neuralNetwork.model;
+
+/**
+ * Реализация матричных операций нейронной сети.
+ */
+public enum ComputeBackend {
+    /**
+     * Скалярные циклы; доступны всегда.
+     */
+    SCALAR,
+    /**
+     * SIMD-операции на Java Vector API ({@code jdk.incubator.vector}). Компилируются только в сборке
+     * с профилем Maven {@code vector} и требуют запуска JVM с параметром {@code --add-modules jdk.incubator.vector}.
+     */
+    VECTOR;
+
+    static final String VECTOR_KERNELS = "ru.Maslov.neuralNetwork.model.VectorKernels";
+
+    private static final String VECTOR_MODULE = "jdk.incubator.vector";
+
+    /**
+     * Проверяет, может ли реализация использоваться в текущей JVM: для {@link #VECTOR} должны быть
+     * доступны модуль Vector API и скомпилированная реализация.
+     *
+     * @return true, если реализация доступна.
+     */
+    public boolean isAvailable() {
+        return this == SCALAR || ModuleLayer.boot().findModule(VECTOR_MODULE).isPresent()
+                && ComputeBackend.class.getClassLoader().getResource(VECTOR_KERNELS.replace('.', '/') + ".class") != null;
+    }
+}
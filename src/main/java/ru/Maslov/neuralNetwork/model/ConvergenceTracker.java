@@ -0,0 +1,138 @@
+package ru.Maslov.neuralNetwork.model;
+
+import java.time.Duration;
+import java.util.Arrays;
+
+/**
+ * Отслеживает сходимость обучения по эпохам: записывает ошибку каждой эпохи, при заданной ранней остановке
+ * оценивает сеть на валидационном наборе, запоминает лучшие веса и решает, продолжать ли обучение.
+ * При заданных контрольных точках периодически передает свое состояние вместе с сетью на запись.
+ * История эпох хранится в массивах, выделенных один раз на все обучение.
+ * Используется одним потоком, выполняющим эпохи.
+ */
+final class ConvergenceTracker {
+    private final NeuralNetwork neuralNetwork;
+    private final EarlyStopping earlyStopping; // null — обучение без ранней остановки
+    private final CheckpointWriter checkpointWriter; // null — без контрольных точек
+    private final long start;
+    private final double[] loss; // Ошибки эпох; заполнены первые epochs элементов
+    private final double[] validationLoss; // Пустой массив без ранней остановки
+    private final double[] validationAccuracy; // Пустой массив без ранней остановки
+    private int epochs; // Количество завершенных эпох
+    private double[][] bestWeights;
+    private double bestLoss = Double.POSITIVE_INFINITY;
+    private int bestEpoch;
+    private int epochsWithoutImprovement;
+    private boolean stoppedEarly;
+
+    /**
+     * Конструктор класса ConvergenceTracker.
+     * @param neuralNetwork Обучаемая сеть.
+     * @param maxEpochs Максимальное количество эпох, включая завершенные до контрольной точки.
+     * @param earlyStopping Параметры ранней остановки или null.
+     * @param checkpointWriter Запись контрольных точек или null.
+     * @param resumed Контрольная точка, с которой продолжается обучение, или null.
+     */
+    ConvergenceTracker(NeuralNetwork neuralNetwork, int maxEpochs, EarlyStopping earlyStopping,
+                       CheckpointWriter checkpointWriter, TrainingCheckpoint resumed) {
+        this.neuralNetwork = neuralNetwork;
+        this.earlyStopping = earlyStopping;
+        this.checkpointWriter = checkpointWriter;
+        int capacity = Math.max(maxEpochs, resumed != null ? resumed.completedEpochs() : 0);
+        this.loss = new double[capacity];
+        this.validationLoss = new double[earlyStopping != null ? capacity : 0];
+        this.validationAccuracy = new double[earlyStopping != null ? capacity : 0];
+        long elapsed = 0;
+        if (resumed != null) {
+            elapsed = resumed.restoreHistory(loss, validationLoss, validationAccuracy);
+            epochs = resumed.completedEpochs();
+            bestLoss = resumed.bestLoss();
+            bestEpoch = resumed.bestEpoch();
+            epochsWithoutImprovement = resumed.epochsWithoutImprovement();
+            bestWeights = resumed.bestWeights();
+        }
+        this.start = System.nanoTime() - elapsed;
+    }
+
+    /**
+     * Возвращает количество завершенных эпох, включая эпохи до контрольной точки.
+     * @return Количество эпох.
+     */
+    int epochs() {
+        return epochs;
+    }
+
+    /**
+     * Записывает итоги завершенной эпохи.
+     * @param epochLoss Средняя ошибка на обучающих примерах эпохи.
+     * @return true, если обучение следует продолжить.
+     */
+    boolean epochCompleted(double epochLoss) {
+        loss[epochs] = epochLoss;
+        if (earlyStopping == null) {
+            epochs++;
+            checkpoint();
+            return true;
+        }
+
+        double error = neuralNetwork.meanError(earlyStopping.validationData());
+        validationLoss[epochs] = error;
+        validationAccuracy[epochs] = neuralNetwork.accuracy(earlyStopping.validationData());
+        epochs++;
+        if (error < bestLoss - earlyStopping.minDelta()) {
+            bestLoss = error;
+            bestEpoch = epochs;
+            epochsWithoutImprovement = 0;
+            saveBestWeights();
+            checkpoint();
+            return true;
+        }
+        if (++epochsWithoutImprovement >= earlyStopping.patience()) {
+            stoppedEarly = true;
+            return false;
+        }
+        checkpoint();
+        return true;
+    }
+
+    /**
+     * Передает на запись контрольную точку, если ее пора записать.
+     */
+    private void checkpoint() {
+        if (checkpointWriter != null && checkpointWriter.isDue(epochs)) {
+            checkpointWriter.write(epochs, TrainingCheckpoint.encode(neuralNetwork, checkpointWriter.workers(),
+                    checkpointWriter.dataSource(), checkpointWriter.randomState(), System.nanoTime() - start, epochs, loss, earlyStopping != null ? validationLoss : null,
+                    validationAccuracy, bestLoss, bestEpoch, epochsWithoutImprovement, bestWeights));
+        }
+    }
+
+    /**
+     * Возвращает сети лучшие веса, если последняя эпоха не была лучшей, и составляет итоги обучения.
+     * @return Итоги обучения.
+     */
+    TrainingSummary finish() {
+        if (bestWeights != null && bestEpoch != epochs) {
+            double[][] weights = neuralNetwork.weights();
+            for (int l = 0; l < weights.length; l++) {
+                System.arraycopy(bestWeights[l], 0, weights[l], 0, weights[l].length);
+            }
+        }
+        int validated = earlyStopping != null ? epochs : 0;
+        return new TrainingSummary(epochs, Arrays.copyOf(loss, epochs), Arrays.copyOf(validationLoss, validated),
+                Arrays.copyOf(validationAccuracy, validated), earlyStopping != null ? bestEpoch : epochs, stoppedEarly,
+                Duration.ofNanos(System.nanoTime() - start));
+    }
+
+    private void saveBestWeights() {
+        double[][] weights = neuralNetwork.weights();
+        if (bestWeights == null) {
+            bestWeights = new double[weights.length][];
+            for (int l = 0; l < weights.length; l++) {
+                bestWeights[l] = new double[weights[l].length];
+            }
+        }
+        for (int l = 0; l < weights.length; l++) {
+            System.arraycopy(weights[l], 0, bestWeights[l], 0, weights[l].length);
+        }
+    }
+}
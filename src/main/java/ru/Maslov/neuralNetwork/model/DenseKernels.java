@@ -0,0 +1,125 @@
+package ru.Maslov.neuralNetwork.model;
+
+/**
+ * Плотные матричные операции нейронной сети. Все матрицы хранятся в плоских массивах построчно:
+ * элемент [i][j] матрицы rows x cols лежит по индексу i * cols + j.
+ * <p>
+ * Операции разбиты на блоки так, чтобы рабочий участок помещался в кэш процессора и при больших
+ * слоях (изображения 64x64 и 128x128, скрытые слои из сотен нейронов): участок строки результата
+ * остается в L1, блок правой матрицы в произведении матриц — в L2. Порядок сложения для каждого
+ * элемента результата произведений {@code gemv} и {@code gemm} не зависит от блоков и реализации,
+ * поэтому пакетный и одиночный прямые проходы дают одинаковые значения.
+ */
+interface DenseKernels {
+    int COL_BLOCK = 256; // Ширина блока столбцов: 2 КБ строки результата помещаются в L1
+    int INNER_BLOCK = 128; // Высота блока правой матрицы: блок 128 x 256 (256 КБ) помещается в L2
+
+    /**
+     * Возвращает реализацию операций для заданного вычислителя.
+     * @param backend Вычислитель; должен быть доступен в текущей JVM.
+     * @return Реализация операций.
+     * @throws IllegalArgumentException если вычислитель недоступен.
+     */
+    static DenseKernels of(ComputeBackend backend) {
+        if (!backend.isAvailable()) {
+            throw new IllegalArgumentException("Вычислитель " + backend + " недоступен в текущей JVM");
+        }
+        return backend == ComputeBackend.VECTOR ? vectorKernels() : ScalarKernels.INSTANCE;
+    }
+
+    /**
+     * Загружает реализацию на Java Vector API. Класс компилируется только с профилем Maven {@code vector},
+     * поэтому основная сборка не ссылается на него напрямую.
+     * @return Реализация операций на Java Vector API.
+     */
+    private static DenseKernels vectorKernels() {
+        try {
+            return (DenseKernels) Class.forName(ComputeBackend.VECTOR_KERNELS).getDeclaredField("INSTANCE").get(null);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalArgumentException("Вычислитель " + ComputeBackend.VECTOR + " недоступен в текущей JVM", e);
+        }
+    }
+
+    /**
+     * Вычисляет произведение вектора и матрицы: result = vector x matrix.
+     * Нулевые элементы вектора пропускаются, что ускоряет проход по разреженным бинарным входам.
+     * @param vector Вектор длины rows.
+     * @param matrix Матрица rows x cols.
+     * @param rows Количество строк матрицы.
+     * @param cols Количество столбцов матрицы.
+     * @param result Вектор длины cols, перезаписывается.
+     */
+    void gemv(double[] vector, double[] matrix, int rows, int cols, double[] result);
+
+    /**
+     * Вычисляет произведение вектора и матрицы в 32-битных числах (см. {@link #gemv(double[], double[], int, int, double[])}).
+     */
+    void gemv(float[] vector, float[] matrix, int rows, int cols, float[] result);
+
+    /**
+     * Складывает выбранные строки матрицы: result = сумма matrix[rows[n]] по n от 0 до count.
+     * Это произведение бинарного вектора, в котором единицы стоят в позициях rows, и матрицы;
+     * результат совпадает с {@link #gemv(double[], double[], int, int, double[])} для такого вектора побитово.
+     * @param rows Индексы строк в порядке возрастания.
+     * @param count Количество строк.
+     * @param matrix Матрица с cols столбцами.
+     * @param cols Количество столбцов матрицы.
+     * @param result Вектор длины cols, перезаписывается.
+     */
+    void sumRows(int[] rows, int count, double[] matrix, int cols, double[] result);
+
+    /**
+     * Складывает выбранные строки матрицы в 32-битных числах (см. {@link #sumRows(int[], int, double[], int, double[])}).
+     */
+    void sumRows(int[] rows, int count, float[] matrix, int cols, float[] result);
+
+    /**
+     * Вычисляет произведение матрицы и вектора: result = matrix x vector
+     * (то есть произведение вектора и транспонированной матрицы).
+     * @param vector Вектор длины cols.
+     * @param matrix Матрица rows x cols.
+     * @param rows Количество строк матрицы.
+     * @param cols Количество столбцов матрицы.
+     * @param result Вектор длины rows, перезаписывается.
+     */
+    void gemvTransposed(double[] vector, double[] matrix, int rows, int cols, double[] result);
+
+    /**
+     * Вычисляет произведение матриц: result = a x b.
+     * @param a Левая матрица (не меньше rows x inner).
+     * @param rows Количество строк левой матрицы, участвующих в умножении.
+     * @param inner Количество столбцов левой матрицы и строк правой.
+     * @param b Правая матрица inner x cols.
+     * @param cols Количество столбцов правой матрицы.
+     * @param result Матрица результата rows x cols, перезаписывается.
+     */
+    void gemm(double[] a, int rows, int inner, double[] b, int cols, double[] result);
+
+    /**
+     * Вычисляет произведение матриц в 32-битных числах (см. {@link #gemm(double[], int, int, double[], int, double[])}).
+     */
+    void gemm(float[] a, int rows, int inner, float[] b, int cols, float[] result);
+
+    /**
+     * Вычитает из матрицы внешнее произведение векторов: matrix -= left x right.
+     * Строки, для которых элемент left равен нулю, не изменяются и не читаются.
+     * @param matrix Матрица rows x cols, изменяется на месте.
+     * @param left Вектор длины rows.
+     * @param rows Количество строк матрицы.
+     * @param right Вектор длины cols.
+     * @param cols Количество столбцов матрицы.
+     */
+    void subtractOuter(double[] matrix, double[] left, int rows, double[] right, int cols);
+
+    /**
+     * Вычитает вектор из выбранных строк матрицы: matrix[rows[n]] -= right.
+     * Это {@link #subtractOuter(double[], double[], int, double[], int)} для бинарного вектора left,
+     * в котором единицы стоят в позициях rows; остальные строки не читаются.
+     * @param matrix Матрица с cols столбцами, изменяется на месте.
+     * @param rows Индексы строк.
+     * @param count Количество строк.
+     * @param right Вектор длины cols.
+     * @param cols Количество столбцов матрицы.
+     */
+    void subtractRows(double[] matrix, int[] rows, int count, double[] right, int cols);
+}
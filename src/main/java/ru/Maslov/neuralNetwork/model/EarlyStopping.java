@@ -0,0 +1,34 @@
+package ru.Maslov.neuralNetwork.model;
+
+import java.util.List;
+
+/**
+ * Параметры ранней остановки обучения по отложенному валидационному набору.
+ * <p>
+ * После каждой эпохи вычисляется средняя ошибка сети на валидационном наборе. Эпоха считается улучшением,
+ * если ошибка меньше лучшей из предыдущих больше чем на {@code minDelta}; веса такой эпохи запоминаются.
+ * Если улучшений нет {@code patience} эпох подряд, обучение останавливается, и сети возвращаются
+ * запомненные лучшие веса.
+ *
+ * @param validationData размеченные изображения, не участвующие в обучении
+ * @param patience       количество эпох подряд без улучшения, после которого обучение останавливается
+ * @param minDelta       минимальное уменьшение ошибки, считающееся улучшением
+ */
+public record EarlyStopping(List<FigureImage> validationData, int patience, double minDelta) {
+
+    public EarlyStopping {
+        if (validationData == null || validationData.isEmpty()) {
+            throw new IllegalArgumentException("Валидационный набор не должен быть пустым");
+        }
+        if (validationData.stream().anyMatch(figure -> figure.figureType() == null)) {
+            throw new IllegalArgumentException("Изображения валидационного набора должны быть размечены");
+        }
+        if (patience < 1) {
+            throw new IllegalArgumentException("Количество эпох без улучшения должно быть положительным: " + patience);
+        }
+        if (minDelta < 0) {
+            throw new IllegalArgumentException("Минимальное улучшение не должно быть отрицательным: " + minDelta);
+        }
+        validationData = List.copyOf(validationData);
+    }
+}
@@ -0,0 +1,74 @@
+package ru.Maslov.neuralNetwork.model;
+
+import java.util.List;
+
+/**
+ * Интерфейс FigureClassifier представляет модель, предсказывающую тип фигуры по изображению:
+ * обучаемую нейронную сеть {@link NeuralNetwork} или ее квантованную копию {@link QuantizedNeuralNetwork}.
+ * Реализации потокобезопасны для предсказаний.
+ */
+public interface FigureClassifier {
+
+    /**
+     * Возвращает топологию модели.
+     *
+     * @return топология сети.
+     */
+    NetworkTopology topology();
+
+    /**
+     * Проверяет, подходит ли изображение по размеру для входного слоя модели.
+     *
+     * @param image изображение в битовом представлении.
+     * @return true, если количество пикселей совпадает с размером входного слоя.
+     */
+    boolean supports(BitImage image);
+
+    /**
+     * Предсказывает тип фигуры на изображении.
+     *
+     * @param figure изображение фигуры.
+     * @return предсказанный тип фигуры.
+     */
+    FigureType predict(FigureImage figure);
+
+    /**
+     * Создает предсказатель с собственными буферами промежуточных результатов. В отличие от {@link #predict(FigureImage)},
+     * буферы которого принадлежат потоку, предсказатель можно переиспользовать в разных потоках по очереди,
+     * поэтому потокам, создаваемым на каждый запрос, не нужно выделять буферы заново.
+     *
+     * @return новый предсказатель этой модели.
+     */
+    Predictor newPredictor();
+
+    /**
+     * Предсказывает типы фигур для набора изображений.
+     *
+     * @param figures список изображений.
+     * @return список предсказанных типов фигур в порядке входных изображений.
+     */
+    List<FigureType> predictBatch(List<FigureImage> figures);
+
+    /**
+     * Возвращает объем памяти, занимаемый весами модели.
+     *
+     * @return размер весов в байтах.
+     */
+    long weightBytes();
+
+    /**
+     * Предсказатель типа фигуры, владеющий буферами одного прямого прохода.
+     * Не потокобезопасен: одновременно им может пользоваться только один поток.
+     */
+    @FunctionalInterface
+    interface Predictor {
+
+        /**
+         * Предсказывает тип фигуры на изображении.
+         *
+         * @param figure изображение фигуры.
+         * @return предсказанный тип фигуры.
+         */
+        FigureType predict(FigureImage figure);
+    }
+}
@@ -0,0 +1,52 @@
+package ru.Maslov.neuralNetwork.model;
+
+import java.util.Arrays;
+
+/**
+ * Изображение размером больше 64 пикселей, упакованное в массив слов {@code long[]}.
+ */
+public final class LongArrayBitImage implements BitImage {
+    private final int size;
+    private final long[] words;
+
+    /**
+     * Конструктор изображения. Массив слов не копируется.
+     *
+     * @param size  длина стороны изображения.
+     * @param words упакованные пиксели.
+     */
+    LongArrayBitImage(int size, long[] words) {
+        this.size = size;
+        this.words = words;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public int wordCount() {
+        return words.length;
+    }
+
+    @Override
+    public long word(int index) {
+        return words[index];
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof LongArrayBitImage other && size == other.size && Arrays.equals(words, other.words);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * size + Arrays.hashCode(words);
+    }
+
+    @Override
+    public String toString() {
+        return "LongArrayBitImage[size=" + size + ", cardinality=" + cardinality() + "]";
+    }
+}
@@ -0,0 +1,42 @@
+package ru.Maslov.neuralNetwork.model;
+
+/**
+ * Изображение размером до 64 пикселей, упакованное в одно слово {@code long}.
+ * Биты за последним пикселем отбрасываются при создании, поэтому индексы заполненных битов
+ * всегда меньше {@link #pixelCount()}.
+ *
+ * @param size длина стороны изображения, от 1 до 8
+ * @param bits упакованные пиксели
+ */
+public record LongBitImage(int size, long bits) implements BitImage {
+
+    public LongBitImage {
+        if (size < 1 || size * size > Long.SIZE) {
+            throw new IllegalArgumentException("Размер изображения в одном слове должен быть от 1 до 8: " + size);
+        }
+        bits &= -1L >>> (Long.SIZE - size * size);
+    }
+
+    @Override
+    public int wordCount() {
+        return 1;
+    }
+
+    @Override
+    public long word(int index) {
+        if (index != 0) {
+            throw new IndexOutOfBoundsException(index);
+        }
+        return bits;
+    }
+
+    @Override
+    public boolean get(int index) {
+        return (bits & (1L << index)) != 0;
+    }
+
+    @Override
+    public int cardinality() {
+        return Long.bitCount(bits);
+    }
+}
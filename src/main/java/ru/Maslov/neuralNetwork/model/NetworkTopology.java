@@ -0,0 +1,141 @@
+package ru.Maslov.neuralNetwork.model;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static ru.Maslov.neuralNetwork.Constants.SIZE;
+
+/**
+ * Топология нейронной сети: размер входного изображения, ширина скрытых слоев и функции активации.
+ * Входной слой содержит по нейрону на пиксель изображения, выходной — по нейрону на тип фигуры.
+ * Выходной слой использует сигмоиду (с квадратичной ошибкой) или softmax (с перекрестной энтропией).
+ *
+ * @param imageSize        длина стороны входного изображения в пикселях
+ * @param hiddenLayers     ширины скрытых слоев в порядке от входа к выходу
+ * @param hiddenActivation функция активации скрытых слоев
+ * @param outputActivation функция активации выходного слоя
+ */
+public record NetworkTopology(int imageSize, List<Integer> hiddenLayers,
+                              Activation hiddenActivation, Activation outputActivation) {
+
+    /**
+     * Топология по умолчанию: изображение 7x7, один скрытый слой из 20 нейронов и сигмоида во всех слоях.
+     */
+    public static final NetworkTopology DEFAULT = of(SIZE, 20);
+
+    public NetworkTopology {
+        if (imageSize < 1) {
+            throw new IllegalArgumentException("Размер изображения должен быть положительным: " + imageSize);
+        }
+        hiddenLayers = List.copyOf(hiddenLayers);
+        for (int width : hiddenLayers) {
+            if (width < 1) {
+                throw new IllegalArgumentException("Ширина скрытого слоя должна быть положительной: " + hiddenLayers);
+            }
+        }
+        if (hiddenActivation == null || hiddenActivation == Activation.SOFTMAX) {
+            throw new IllegalArgumentException("Недопустимая функция активации скрытых слоев: " + hiddenActivation);
+        }
+        if (outputActivation == null || !(outputActivation.isSigmoid() || outputActivation == Activation.SOFTMAX)) {
+            throw new IllegalArgumentException("Выходной слой должен использовать сигмоиду или softmax: " + outputActivation);
+        }
+    }
+
+    /**
+     * Создает топологию из размера изображения и ширин скрытых слоев с сигмоидой во всех слоях.
+     *
+     * @param imageSize    длина стороны входного изображения.
+     * @param hiddenLayers ширины скрытых слоев.
+     * @return топология сети.
+     */
+    public static NetworkTopology of(int imageSize, int... hiddenLayers) {
+        return new NetworkTopology(imageSize, Arrays.stream(hiddenLayers).boxed().toList(),
+                Activation.SIGMOID, Activation.SIGMOID);
+    }
+
+    /**
+     * Возвращает топологию с теми же слоями и заданными функциями активации.
+     *
+     * @param hiddenActivation функция активации скрытых слоев.
+     * @param outputActivation функция активации выходного слоя.
+     * @return топология сети.
+     */
+    public NetworkTopology withActivations(Activation hiddenActivation, Activation outputActivation) {
+        return new NetworkTopology(imageSize, hiddenLayers, hiddenActivation, outputActivation);
+    }
+
+    /**
+     * Проверяет, можно ли квантовать сеть этой топологии: квантованная сеть вычисляет скрытые слои
+     * по таблице сигмоиды.
+     *
+     * @return true, если скрытые слои используют сигмоиду.
+     */
+    public boolean supportsQuantization() {
+        return hiddenActivation.isSigmoid();
+    }
+
+    /**
+     * Возвращает функцию активации слоя.
+     *
+     * @param layer индекс слоя от 1 (первый скрытый) до количества скрытых слоев + 1 (выходной).
+     * @return функция активации слоя.
+     */
+    public Activation activation(int layer) {
+        return layer == hiddenLayers.size() + 1 ? outputActivation : hiddenActivation;
+    }
+
+    /**
+     * Восстанавливает топологию по размерам всех слоев (например, из снимка сети) с сигмоидой во всех слоях.
+     *
+     * @param layerSizes размеры слоев от входного до выходного.
+     * @return топология сети.
+     * @throws IllegalArgumentException если входной слой не квадратный или выходной не совпадает с количеством типов фигур.
+     */
+    public static NetworkTopology fromLayerSizes(int[] layerSizes) {
+        if (layerSizes.length < 2) {
+            throw new IllegalArgumentException("Сеть должна содержать входной и выходной слои: " + Arrays.toString(layerSizes));
+        }
+        int imageSize = (int) Math.round(Math.sqrt(layerSizes[0]));
+        if (imageSize * imageSize != layerSizes[0]) {
+            throw new IllegalArgumentException("Входной слой не соответствует квадратному изображению: " + layerSizes[0]);
+        }
+        if (layerSizes[layerSizes.length - 1] != FigureType.values().length) {
+            throw new IllegalArgumentException("Выходной слой должен содержать " + FigureType.values().length
+                    + " нейрона, получено: " + layerSizes[layerSizes.length - 1]);
+        }
+        return of(imageSize, Arrays.copyOfRange(layerSizes, 1, layerSizes.length - 1));
+    }
+
+    /**
+     * Возвращает размер входного слоя.
+     *
+     * @return количество пикселей изображения.
+     */
+    public int inputSize() {
+        return imageSize * imageSize;
+    }
+
+    /**
+     * Возвращает размер выходного слоя.
+     *
+     * @return количество типов фигур.
+     */
+    public int outputSize() {
+        return FigureType.values().length;
+    }
+
+    /**
+     * Возвращает размеры всех слоев сети от входного до выходного.
+     *
+     * @return новый массив размеров слоев.
+     */
+    public int[] layerSizes() {
+        int[] sizes = new int[hiddenLayers.size() + 2];
+        sizes[0] = inputSize();
+        for (int i = 0; i < hiddenLayers.size(); i++) {
+            sizes[i + 1] = hiddenLayers.get(i);
+        }
+        sizes[sizes.length - 1] = outputSize();
+        return sizes;
+    }
+}
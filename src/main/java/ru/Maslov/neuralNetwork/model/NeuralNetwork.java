@@ -1,285 +1,1143 @@
 package ru.Maslov.neuralNetwork.model;
 
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Random;
+import java.util.RandomAccess;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
 
 /**
- * Класс NeuralNetwork представляет собой простую нейронную сеть с одним скрытым слоем.
+ * Класс NeuralNetwork представляет собой полносвязную нейронную сеть прямого распространения.
  * Предназначен для распознавания и классификации входных данных (например, изображений фигур).
+ * Размер входного изображения, количество и ширина скрытых слоев и функции активации задаются {@link NetworkTopology}.
+ * <p>
+ * Прямой и обратный проходы выполняются в заранее выделенных рабочих областях {@link Workspace},
+ * поэтому в установившемся режиме обучение и предсказание не выделяют память.
+ * <p>
+ * Матричные операции выполняет выбранный {@link ComputeBackend}; предсказание может выполняться
+ * в 32-битных числах ({@link Precision#FLOAT}) по копии весов, обучение всегда идет в 64-битных.
+ * <p>
+ * Входы сети бинарные, поэтому для изображений с небольшой долей закрашенных пикселей первый слой
+ * вычисляется как сумма строк весов закрашенных пикселей, а при обучении изменяются только эти строки.
+ * Результат совпадает с плотным проходом побитово; путь выбирается для каждого изображения по его плотности.
  */
-public class NeuralNetwork {
-    private static final int INPUT_SIZE = 49; // Размерность входного слоя
-    private static final int HIDDEN_LAYER_SIZE = 20; // Размерность скрытого слоя
-    private static final int OUTPUT_SIZE = 3; // Размерность выходного слоя
+public class NeuralNetwork implements FigureClassifier {
+    static final double MIN_ALPHA = 0.01; // Минимальное значение коэффициента обучения
+    static final double MAX_ALPHA = 0.3; // Максимальное значение коэффициента обучения
+    static final double MAX_ERR = 0.1; // Допустимая ошибка
 
-    private static final double MIN_ALPHA = 0.01; // Минимальное значение коэффициента обучения
-    private static final double MAX_ALPHA = 0.3; // Максимальное значение коэффициента обучения
-    private static final double MAX_ERR = 0.1; // Допустимая ошибка
+    private static final int BATCH_BLOCK_SIZE = 64; // Количество изображений, одновременно проходящих через слои в predictBatch
+    private static final int BATCH_BUFFER_SIZE = 1 << 16; // Предел элементов в буфере одного слоя для predictBatch
+    private static final double INIT_FAN_IN = 64; // Входов нейрона, до которых веса инициализируются в диапазоне [-0.5, 0.5)
+    private static final double SPARSE_INPUT_DENSITY = 0.75; // Доля закрашенных пикселей, до которой вход обрабатывается в разреженном виде
 
-    private final double[][] weightsInputHidden; // Весовые коэффициенты между входным и скрытым слоями
-    private final double[][] weightsHiddenOutput; // Весовые коэффициенты между скрытым и выходным слоями
+    private static final FigureType[] FIGURE_TYPES = FigureType.values();
 
-    private final Random random = new Random();
+    // Рабочая область текущего потока для вызовов без явно переданной рабочей области.
+    // Пересоздается, только если поток обращается к сети другой топологии.
+    private static final ThreadLocal<Workspace> WORKSPACE = new ThreadLocal<>();
+
+    private final NetworkTopology topology;
+    private final int[] layers; // Размеры слоев от входного до выходного
+
+    // Матрицы весов хранятся в плоских массивах построчно: элемент [i][j] матрицы rows x cols лежит по индексу i * cols + j.
+    // Внутренние циклы всех операций идут по j, то есть по непрерывному участку памяти.
+    private final double[][] weights; // weights[l] — весовые коэффициенты между слоями l и l + 1 (layers[l] x layers[l + 1])
+
+    private final Random random;
+
+    private ComputeBackend computeBackend = ComputeBackend.SCALAR;
+    private DenseKernels kernels = ScalarKernels.INSTANCE;
+    private Precision precision = Precision.DOUBLE;
+    private float[][] floatWeights; // Копия весов для предсказания в режиме Precision.FLOAT
+
+    private int trainedEpochs; // Количество эпох, выполненных при обучении сети
+    private int batchSize = 1; // Размер мини-пакета последнего обучения
 
     /**
-     * Конструктор создает экземпляр нейронной сети с инициализированными случайными весовыми коэффициентами.
+     * Конструктор создает экземпляр нейронной сети топологии по умолчанию
+     * с инициализированными случайными весовыми коэффициентами.
      */
     public NeuralNetwork() {
-        weightsInputHidden = randomMatrix(INPUT_SIZE, HIDDEN_LAYER_SIZE);
-        weightsHiddenOutput = randomMatrix(HIDDEN_LAYER_SIZE, OUTPUT_SIZE);
+        this(NetworkTopology.DEFAULT, new Random());
+    }
+
+    /**
+     * Конструктор создает экземпляр нейронной сети топологии по умолчанию, веса которой
+     * инициализируются генератором с заданным зерном.
+     * При одинаковом зерне, обучающих данных и параметрах обучения результат обучения воспроизводим.
+     * @param seed Зерно генератора случайных чисел.
+     */
+    public NeuralNetwork(long seed) {
+        this(NetworkTopology.DEFAULT, new Random(seed));
+    }
+
+    /**
+     * Конструктор создает экземпляр нейронной сети заданной топологии со случайными весовыми коэффициентами.
+     * @param topology Топология сети.
+     */
+    public NeuralNetwork(NetworkTopology topology) {
+        this(topology, new Random());
+    }
+
+    /**
+     * Конструктор создает экземпляр нейронной сети заданной топологии, веса которой инициализируются
+     * генератором с заданным зерном.
+     * @param topology Топология сети.
+     * @param seed Зерно генератора случайных чисел.
+     */
+    public NeuralNetwork(NetworkTopology topology, long seed) {
+        this(topology, new Random(seed));
+    }
+
+    private NeuralNetwork(NetworkTopology topology, Random random) {
+        this.topology = topology;
+        this.layers = topology.layerSizes();
+        this.random = random;
+        this.weights = new double[layers.length - 1][];
+        for (int l = 0; l < weights.length; l++) {
+            weights[l] = randomMatrix(layers[l], layers[l + 1]);
+        }
+    }
+
+    /**
+     * Конструктор восстанавливает нейронную сеть из сохраненных весов и параметров обучения.
+     * @param topology Топология сети.
+     * @param weights Веса между соседними слоями, от входного к выходному.
+     * @param trainedEpochs Количество выполненных эпох обучения.
+     * @param batchSize Размер мини-пакета последнего обучения.
+     */
+    NeuralNetwork(NetworkTopology topology, double[][] weights, int trainedEpochs, int batchSize) {
+        this.topology = topology;
+        this.layers = topology.layerSizes();
+        if (weights.length != layers.length - 1) {
+            throw new IllegalArgumentException("Количество матриц весов не соответствует слоям сети");
+        }
+        for (int l = 0; l < weights.length; l++) {
+            if (weights[l].length != layers[l] * layers[l + 1]) {
+                throw new IllegalArgumentException("Размеры весов не соответствуют слоям сети");
+            }
+        }
+        this.random = new Random();
+        this.weights = weights;
+        this.trainedEpochs = trainedEpochs;
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Создает независимую копию сети: веса копируются, поэтому обучение копии не влияет на исходную сеть.
+     * @return Копия нейронной сети.
+     */
+    public NeuralNetwork copy() {
+        double[][] copy = new double[weights.length][];
+        for (int l = 0; l < weights.length; l++) {
+            copy[l] = weights[l].clone();
+        }
+        NeuralNetwork neuralNetwork = new NeuralNetwork(topology, copy, trainedEpochs, batchSize);
+        neuralNetwork.configureCompute(computeBackend, precision);
+        return neuralNetwork;
+    }
+
+    /**
+     * Квантует обученную сеть в 8-битную модель только для предсказания.
+     * Квантованная модель не зависит от дальнейшего обучения этой сети.
+     * @return Квантованная копия сети.
+     * @throws IllegalStateException если скрытые слои используют функцию активации, отличную от сигмоиды
+     * ({@link NetworkTopology#supportsQuantization()}).
+     */
+    public QuantizedNeuralNetwork quantize() {
+        if (!topology.supportsQuantization()) {
+            throw new IllegalStateException("Квантование поддерживается только для сети с сигмоидой в скрытых слоях, получено: "
+                    + topology.hiddenActivation());
+        }
+        return new QuantizedNeuralNetwork(topology, weights);
+    }
+
+    /**
+     * Возвращает объем памяти весов сети, включая копию в 32-битных числах в режиме {@link Precision#FLOAT}.
+     * @return Размер весов в байтах.
+     */
+    public long weightBytes() {
+        long bytes = 0;
+        for (double[] layerWeights : weights) {
+            bytes += (long) layerWeights.length * Double.BYTES;
+        }
+        if (floatWeights != null) {
+            bytes += bytes / 2;
+        }
+        return bytes;
+    }
+
+    /**
+     * Выбирает реализацию матричных операций и точность предсказания.
+     * Должен вызываться до того, как сеть станет доступна другим потокам.
+     * @param backend Реализация матричных операций; должна быть доступна в текущей JVM.
+     * @param precision Точность весов и выходов слоев при предсказании.
+     * @throws IllegalArgumentException если реализация недоступна.
+     */
+    public void configureCompute(ComputeBackend backend, Precision precision) {
+        this.kernels = DenseKernels.of(backend);
+        this.computeBackend = backend;
+        this.precision = precision;
+        refreshFloatWeights();
+    }
+
+    /**
+     * Возвращает реализацию матричных операций сети.
+     * @return Реализация матричных операций.
+     */
+    public ComputeBackend computeBackend() {
+        return computeBackend;
+    }
+
+    /**
+     * Возвращает точность предсказания сети.
+     * @return Точность предсказания.
+     */
+    public Precision precision() {
+        return precision;
+    }
+
+    /**
+     * Возвращает топологию сети.
+     * @return Топология сети.
+     */
+    public NetworkTopology topology() {
+        return topology;
+    }
+
+    /**
+     * Проверяет, подходит ли изображение по размеру для входного слоя сети.
+     * @param image Изображение в битовом представлении.
+     * @return true, если количество пикселей совпадает с размером входного слоя.
+     */
+    public boolean supports(BitImage image) {
+        return image != null && image.pixelCount() == layers[0];
+    }
+
+    /**
+     * Загружает нейронную сеть из двоичного снимка, отображая файл в память.
+     * @param path Путь к файлу снимка.
+     * @return Восстановленная нейронная сеть.
+     * @throws IOException если файл не удалось прочитать или он поврежден.
+     */
+    public static NeuralNetwork load(Path path) throws IOException {
+        return NeuralNetworkSnapshot.read(path);
+    }
+
+    /**
+     * Сохраняет веса и параметры обучения сети в двоичный снимок.
+     * Файл записывается атомарно: сначала во временный файл, затем переименовывается.
+     * @param path Путь к файлу снимка.
+     * @throws IOException если файл не удалось записать.
+     */
+    public void save(Path path) throws IOException {
+        NeuralNetworkSnapshot.write(this, path);
     }
 
     /**
      * Обучает нейронную сеть на предоставленных данных.
-     * @param trainingData Список обучающих данных типа FigureImage.
+     * @param trainingData Обучающие данные типа FigureImage; каждая эпоха — новый проход по ним.
      * @param epochs Количество эпох для обучения.
      */
-    public void train(List<FigureImage> trainingData, int epochs) {
-        for (int epoch = 0; epoch < epochs; epoch++) {
-            trainingData.forEach(figure -> {
-                double[] input = flattenImage(figure.image());
-                double[] target = oneHotEncoding(figure.figureType().ordinal(), OUTPUT_SIZE);
+    public void train(Iterable<FigureImage> trainingData, int epochs) {
+        train(trainingData, epochs, TrainingParameters.SEQUENTIAL);
+    }
 
-                double[] hiddenLayerOutputs = sigmoidVector(dot(input, weightsInputHidden));
-                double[] outputLayerOutputs = sigmoidVector(dot(hiddenLayerOutputs, weightsHiddenOutput));
+    /**
+     * Обучает нейронную сеть на предоставленных данных мини-пакетами.
+     * Каждый пакет делится на непрерывные части по числу потоков; каждый поток накапливает градиенты
+     * своей части в собственных массивах, после чего накопленные градиенты складываются в фиксированном
+     * порядке и применяются к весам одним обновлением. Поэтому результат не зависит от планирования потоков
+     * и воспроизводим при одинаковых данных, зерне и количестве потоков.
+     * <p>
+     * Данные могут быть как списком, так и ленивым набором (например,
+     * {@link ru.Maslov.neuralNetwork.generator.FigureDataSet}): каждая эпоха начинается с нового вызова
+     * {@code iterator()}, а в памяти одновременно находится не больше одного пакета.
+     * <p>
+     * Итоги обучения не составляются, поэтому в установившемся режиме последовательное обучение не выделяет
+     * память, а обучение мини-пакетами выделяет ее только на вызов. Итоги по эпохам возвращает
+     * {@link #train(Iterable, int, TrainingParameters, EarlyStopping)}.
+     * @param trainingData Обучающие данные типа FigureImage.
+     * @param epochs Количество эпох для обучения.
+     * @param parameters Размер пакета и количество потоков.
+     */
+    public void train(Iterable<FigureImage> trainingData, int epochs, TrainingParameters parameters) {
+        batchSize = parameters.batchSize();
+        trainEpochs(trainingData, epochs, parameters, null);
+        trainedEpochs += epochs;
+        refreshFloatWeights();
+    }
 
-                double[] outputError = subtract(outputLayerOutputs, target);
-                double[] hiddenLayerError = multiply(dotTrans(outputError, weightsHiddenOutput), sigmoidDerivative(hiddenLayerOutputs));
+    /**
+     * Обучает нейронную сеть мини-пакетами (см. {@link #train(Iterable, int, TrainingParameters)}) не больше
+     * заданного количества эпох. Если задана ранняя остановка, после каждой эпохи сеть оценивается
+     * на валидационном наборе; обучение прекращается, когда ошибка на нем перестает уменьшаться,
+     * и в сети остаются веса лучшей эпохи.
+     * @param trainingData Обучающие данные типа FigureImage.
+     * @param epochs Максимальное количество эпох.
+     * @param parameters Размер пакета и количество потоков.
+     * @param earlyStopping Параметры ранней остановки; null — выполняются все эпохи.
+     * @return Итоги обучения: количество эпох, ошибки по эпохам, лучшая эпоха и длительность.
+     */
+    public TrainingSummary train(Iterable<FigureImage> trainingData, int epochs, TrainingParameters parameters,
+                                 EarlyStopping earlyStopping) {
+        return train(trainingData, epochs, parameters, earlyStopping, null, null);
+    }
 
-                double error = error(target, outputError);
+    /**
+     * Обучает нейронную сеть (см. {@link #train(Iterable, int, TrainingParameters, EarlyStopping)}),
+     * периодически записывая контрольные точки, с которых обучение можно продолжить после сбоя
+     * ({@link TrainingCheckpoint#resume}).
+     * @param trainingData Обучающие данные типа FigureImage.
+     * @param epochs Максимальное количество эпох.
+     * @param parameters Размер пакета и количество потоков.
+     * @param earlyStopping Параметры ранней остановки; null — выполняются все эпохи.
+     * @param checkpointing Параметры контрольных точек; null — без контрольных точек.
+     * @return Итоги обучения.
+     */
+    public TrainingSummary train(Iterable<FigureImage> trainingData, int epochs, TrainingParameters parameters,
+                                 EarlyStopping earlyStopping, Checkpointing checkpointing) {
+        return train(trainingData, epochs, parameters, earlyStopping, checkpointing, null);
+    }
 
-                if (error > MAX_ERR) {
-                    double learningRate = recalLearningRate(error);
-                    updateWeights(input, hiddenLayerOutputs, hiddenLayerError, outputLayerOutputs, outputError, learningRate);
+    /**
+     * Обучает нейронную сеть, при необходимости продолжая обучение с контрольной точки.
+     * @param trainingData Обучающие данные типа FigureImage.
+     * @param epochs Максимальное количество эпох, включая завершенные до контрольной точки.
+     * @param parameters Размер пакета и количество потоков.
+     * @param earlyStopping Параметры ранней остановки или null.
+     * @param checkpointing Параметры контрольных точек или null.
+     * @param resumed Контрольная точка этой сети или null.
+     * @return Итоги обучения.
+     */
+    TrainingSummary train(Iterable<FigureImage> trainingData, int epochs, TrainingParameters parameters,
+                          EarlyStopping earlyStopping, Checkpointing checkpointing, TrainingCheckpoint resumed) {
+        int completedEpochs = resumed != null ? resumed.completedEpochs() : 0;
+        batchSize = parameters.batchSize();
+        TrainingSummary summary;
+        try (CheckpointWriter writer = checkpointing != null ? new CheckpointWriter(checkpointing, completedEpochs, parameters.effectiveWorkers()) : null) {
+            ConvergenceTracker tracker = new ConvergenceTracker(this, epochs, earlyStopping, writer, resumed);
+            trainEpochs(trainingData, epochs - completedEpochs, parameters, tracker);
+            summary = tracker.finish();
+        }
+        trainedEpochs += summary.epochs();
+        refreshFloatWeights();
+        return summary;
+    }
+
+    /**
+     * Выполняет эпохи обучения последовательно или мини-пакетами в зависимости от параметров,
+     * пока не закончатся эпохи или отслеживание сходимости не остановит обучение.
+     * @param trainingData Обучающие данные типа FigureImage.
+     * @param epochs Максимальное количество эпох.
+     * @param parameters Размер пакета и количество потоков.
+     * @param tracker Отслеживание сходимости, получающее ошибку каждой эпохи; null — выполняются все эпохи.
+     */
+    private void trainEpochs(Iterable<FigureImage> trainingData, int epochs, TrainingParameters parameters,
+                             ConvergenceTracker tracker) {
+        if (parameters.batchSize() == 1) {
+            Workspace workspace = workspace();
+            for (int epoch = 0; epoch < epochs; epoch++) {
+                double loss = 0;
+                int count = 0;
+                if (trainingData instanceof List<FigureImage> list && trainingData instanceof RandomAccess) {
+                    for (int i = 0; i < list.size(); i++) {
+                        loss += trainSample(list.get(i), workspace, weights);
+                    }
+                    count = list.size();
+                } else {
+                    for (FigureImage figure : trainingData) {
+                        loss += trainSample(figure, workspace, weights);
+                        count++;
+                    }
+                }
+                if (tracker != null && !tracker.epochCompleted(count == 0 ? 0 : loss / count)) {
+                    return;
                 }
-            });
+            }
+            return;
+        }
+
+        int workers = parameters.effectiveWorkers();
+        Gradient[] gradients = new Gradient[workers];
+        for (int w = 0; w < workers; w++) {
+            gradients[w] = new Gradient();
+        }
+
+        if (workers == 1) {
+            trainMiniBatches(trainingData, epochs, parameters.batchSize(), gradients, tracker);
+            return;
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(workers);
+        try {
+            pool.invoke(ForkJoinTask.adapt(() -> trainMiniBatches(trainingData, epochs, parameters.batchSize(), gradients, tracker)));
+        } finally {
+            pool.shutdown();
         }
     }
 
     /**
-     * Предсказывает класс фигуры на основе предоставленного изображения.
+     * Предсказывает класс фигуры на основе предоставленного изображения,
+     * используя рабочую область текущего потока.
      * @param figure Изображение типа FigureImage.
      * @return Тип фигуры типа FigureType.
      */
     public FigureType predict(FigureImage figure) {
-        double[] input = flattenImage(figure.image());
+        return predict(figure, workspace());
+    }
 
-        double[] hiddenLayerOutputs = sigmoidVector(dot(input, weightsInputHidden));
-        double[] outputLayerOutputs = sigmoidVector(dot(hiddenLayerOutputs, weightsHiddenOutput));
+    /**
+     * Предсказывает класс фигуры на основе предоставленного изображения в заданной рабочей области.
+     * Рабочая область не должна одновременно использоваться другими потоками.
+     * @param figure Изображение типа FigureImage.
+     * @param workspace Рабочая область для промежуточных результатов, созданная сетью той же топологии.
+     * @return Тип фигуры типа FigureType.
+     */
+    public FigureType predict(FigureImage figure, Workspace workspace) {
+        if (!workspace.fits(layers)) {
+            throw new IllegalArgumentException("Рабочая область создана для сети другой топологии");
+        }
+        double[] output = forwardOutput(figure.image(), workspace);
+        return FIGURE_TYPES[argMax(output, 0, output.length)];
+    }
 
-        int predictedIndex = argMax(outputLayerOutputs);
-        return FigureType.values()[predictedIndex];
+    /**
+     * Создает предсказатель с собственной рабочей областью.
+     * @return Новый предсказатель этой сети.
+     */
+    @Override
+    public Predictor newPredictor() {
+        Workspace workspace = newWorkspace();
+        return figure -> predict(figure, workspace);
     }
 
     /**
-     * Пересчитывает коэффициент обучения на основе текущей ошибки.
-     * @param error Текущая ошибка.
-     * @return Новое значение коэффициента обучения.
+     * Вычисляет выходы сети для изображения: значения выходного слоя в порядке {@link FigureType#ordinal()}.
+     * @param figure Изображение типа FigureImage.
+     * @return Новый массив выходов сети.
      */
-    private double recalLearningRate(double error) {
-        double rel_e = 2 * error / OUTPUT_SIZE;
-        return rel_e * (MAX_ALPHA - MIN_ALPHA) + MIN_ALPHA;
+    public double[] scores(FigureImage figure) {
+        return forwardOutput(figure.image(), workspace()).clone();
     }
 
     /**
-     * Вычисляет среднюю ошибку между целевыми значениями и выходной ошибкой.
-     * @param target Целевые значения.
-     * @param outputError Ошибка выходного слоя.
-     * @return Средняя ошибка.
+     * Вычисляет среднюю ошибку сети на наборе размеченных изображений
+     * (та же мера ошибки, по которой при обучении пропускаются хорошо распознанные примеры).
+     * Ошибка всегда вычисляется в 64-битных числах.
+     * @param figures Размеченные изображения (список или ленивый набор).
+     * @return Средняя ошибка на один пример; 0, если изображений нет.
      */
-    private double error(double[] target, double[] outputError) {
-        double e = 0;
-        for (int i = 0; i < OUTPUT_SIZE; i++) {
-            e += Math.abs(target[i] - outputError[i]);
+    public double meanError(Iterable<FigureImage> figures) {
+        Workspace workspace = workspace();
+        double sum = 0;
+        int count = 0;
+        for (FigureImage figure : figures) {
+            count++;
+            forward(figure.image(), workspace);
+            int target = figure.figureType().ordinal();
+            sum += error(target, outputError(workspace, target));
         }
-        return e / 2;
+        return count == 0 ? 0 : sum / count;
     }
 
     /**
-     * Обновляет веса сети на основе ошибки и коэффициента обучения.
-     * @param input Входные данные.
-     * @param hiddenOutputs Выходные значения скрытого слоя.
-     * @param hiddenError Ошибка скрытого слоя.
-     * @param outputOutputs Выходные значения выходного слоя.
-     * @param outputError Ошибка выходного слоя.
-     * @param learningRate Коэффициент обучения.
+     * Вычисляет долю верных предсказаний на наборе размеченных изображений в 64-битных числах
+     * (во время обучения 32-битные веса еще не обновлены).
+     * @param figures Размеченные изображения.
+     * @return Доля верных предсказаний; 0, если изображений нет.
      */
-    private void updateWeights(double[] input, double[] hiddenOutputs, double[] hiddenError, double[] outputOutputs, double[] outputError, double learningRate) {
-        double[] primeSigmoidOutputOutput = sigmoidDerivative(outputOutputs);
-        for (int i = 0; i < OUTPUT_SIZE; i++) {
-            for (int j = 0; j < HIDDEN_LAYER_SIZE; j++) {
-                weightsHiddenOutput[j][i] -= learningRate * outputError[i] * primeSigmoidOutputOutput[i] * hiddenOutputs[j];
+    double accuracy(Iterable<FigureImage> figures) {
+        Workspace workspace = workspace();
+        int correct = 0;
+        int count = 0;
+        for (FigureImage figure : figures) {
+            count++;
+            forward(figure.image(), workspace);
+            if (argMax(workspace.output(), 0, workspace.output().length) == figure.figureType().ordinal()) {
+                correct++;
             }
         }
+        return count == 0 ? 0 : (double) correct / count;
+    }
+
+    /**
+     * Создает рабочую область, размеры которой соответствуют слоям сети.
+     * @return Новая рабочая область.
+     */
+    public Workspace newWorkspace() {
+        return new Workspace(layers);
+    }
+
+    /**
+     * Предсказывает классы для набора изображений (см. {@link #scoresBatch(List, double[])}).
+     * @param figures Список изображений типа FigureImage.
+     * @return Список предсказанных типов фигур в порядке входных изображений.
+     */
+    public List<FigureType> predictBatch(List<FigureImage> figures) {
+        int outputs = layers[layers.length - 1];
+        double[] scores = new double[figures.size() * outputs];
+        scoresBatch(figures, scores);
+        List<FigureType> predictions = new ArrayList<>(figures.size());
+        for (int n = 0; n < figures.size(); n++) {
+            predictions.add(FIGURE_TYPES[argMax(scores, n * outputs, outputs)]);
+        }
+        return predictions;
+    }
+
+    /**
+     * Вычисляет выходы сети для набора изображений.
+     * Изображения обрабатываются блоками: для каждого блока прямой проход через каждый слой выполняется
+     * как произведение матриц (блок x слой) и (слой x следующий слой),
+     * поэтому каждая строка весов читается один раз на весь блок, а не на каждое изображение.
+     * Размер блока уменьшается для широких слоев, чтобы буфер одного слоя не превышал {@code BATCH_BUFFER_SIZE} элементов.
+     * @param figures Список изображений типа FigureImage.
+     * @param scores Массив для выходов сети длиной не меньше количества изображений, умноженного на размер
+     *               выходного слоя: выходы изображения n занимают строку n в порядке {@link FigureType#ordinal()}.
+     */
+    public void scoresBatch(List<FigureImage> figures, double[] scores) {
+        int last = layers.length - 1;
+        if (scores.length < figures.size() * layers[last]) {
+            throw new IllegalArgumentException("Массив выходов меньше " + figures.size() + " x " + layers[last]);
+        }
+        if (precision == Precision.FLOAT) {
+            scoresBatchFloat(figures, scores);
+            return;
+        }
+
+        int block = batchBlock(figures.size());
+        double[][] activations = new double[layers.length][];
+        for (int l = 0; l < layers.length; l++) {
+            activations[l] = new double[block * layers[l]];
+        }
+        int[] inputs = new int[layers[0]];
+
+        for (int start = 0; start < figures.size(); start += block) {
+            int count = Math.min(block, figures.size() - start);
+            for (int n = 0; n < count; n++) {
+                int active = activeInputs(figures.get(start + n).image(), inputs);
+                copyInputs(inputs, active, activations[0], n * layers[0]);
+            }
 
-        double[] primeSigmoidHiddenOutput = sigmoidDerivative(hiddenOutputs);
-        for (int i = 0; i < HIDDEN_LAYER_SIZE; i++) {
-            for (int j = 0; j < INPUT_SIZE; j++) {
-                weightsInputHidden[j][i] -= learningRate * hiddenError[i] * primeSigmoidHiddenOutput[i] * input[j];
+            for (int l = 0; l < last; l++) {
+                double[] values = activations[l + 1];
+                Activation activation = topology.activation(l + 1);
+                kernels.gemm(activations[l], count, layers[l], weights[l], layers[l + 1], values);
+                forEachRow(count, layers[l + 1], (from, to) -> activation.apply(values, from, to));
             }
+
+            System.arraycopy(activations[last], 0, scores, start * layers[last], count * layers[last]);
         }
     }
 
     /**
-     * Преобразует двумерный список изображений в одномерный массив.
-     * @param image Изображение в виде двумерного списка логических значений.
-     * @return Одномерный массив входных данных.
+     * Вычисляет выходы сети для набора изображений в 32-битных числах (см. {@link #scoresBatch(List, double[])}).
+     * @param figures Список изображений типа FigureImage.
+     * @param scores Массив для выходов сети.
      */
-    private double[] flattenImage(List<List<Boolean>> image) {
-        double[] flatImage = new double[INPUT_SIZE];
-        int index = 0;
-        for (List<Boolean> row : image) {
-            for (Boolean cell : row) {
-                flatImage[index++] = cell ? 1.0 : 0.0;
+    private void scoresBatchFloat(List<FigureImage> figures, double[] scores) {
+        float[][] weights = floatWeights;
+
+        int block = batchBlock(figures.size());
+        float[][] activations = new float[layers.length][];
+        for (int l = 0; l < layers.length; l++) {
+            activations[l] = new float[block * layers[l]];
+        }
+        int[] inputs = new int[layers[0]];
+
+        int last = layers.length - 1;
+        for (int start = 0; start < figures.size(); start += block) {
+            int count = Math.min(block, figures.size() - start);
+            for (int n = 0; n < count; n++) {
+                int active = activeInputs(figures.get(start + n).image(), inputs);
+                copyInputs(inputs, active, activations[0], n * layers[0]);
+            }
+
+            for (int l = 0; l < last; l++) {
+                float[] values = activations[l + 1];
+                Activation activation = topology.activation(l + 1);
+                kernels.gemm(activations[l], count, layers[l], weights[l], layers[l + 1], values);
+                forEachRow(count, layers[l + 1], (from, to) -> activation.apply(values, from, to));
+            }
+
+            int offset = start * layers[last];
+            for (int i = 0; i < count * layers[last]; i++) {
+                scores[offset + i] = activations[last][i];
             }
         }
-        return flatImage;
     }
 
     /**
-     * Вычисляет сигмоидное значение.
-     * @param x Входное значение.
-     * @return Результат функции сигмоиды.
+     * Вычисляет размер блока изображений для пакетного предсказания: не больше {@code BATCH_BLOCK_SIZE}
+     * и такой, чтобы буфер самого широкого слоя не превышал {@code BATCH_BUFFER_SIZE} элементов.
+     * @param figures Количество изображений.
+     * @return Размер блока.
      */
-    private double sigmoid(double x) {
-        return 1.0 / (1.0 + Math.exp(-x));
+    private int batchBlock(int figures) {
+        int widest = Arrays.stream(layers).max().orElse(1);
+        return Math.min(Math.max(1, Math.min(BATCH_BLOCK_SIZE, BATCH_BUFFER_SIZE / widest)), figures);
+    }
+
+    double[][] weights() {
+        return weights;
+    }
+
+    int trainedEpochs() {
+        return trainedEpochs;
+    }
+
+    int batchSize() {
+        return batchSize;
     }
 
     /**
-     * Вычисляет производную сигмоиды.
-     * @param x Входное значение.
-     * @return Производная сигмоиды.
+     * Возвращает рабочую область текущего потока, соответствующую слоям этой сети.
+     * @return Рабочая область.
      */
-    private double sigmoidPrime(double x) {
-        return sigmoid(x) * (1 - sigmoid(x));
+    private Workspace workspace() {
+        Workspace workspace = WORKSPACE.get();
+        if (workspace == null || !workspace.fits(layers)) {
+            workspace = new Workspace(layers);
+            WORKSPACE.set(workspace);
+        }
+        return workspace;
     }
 
     /**
-     * Применяет сигмоидную функцию ко всем элементам массива.
-     * @param x Входной массив.
-     * @return Массив с примененной функцией сигмоиды.
+     * Выполняет прямой проход: заполняет выходы всех слоев рабочей области.
+     * @param image Изображение в битовом представлении.
+     * @param workspace Рабочая область.
      */
-    private double[] sigmoidVector(double[] x) {
-        double[] result = new double[x.length];
-        for (int i = 0; i < x.length; i++) {
-            result[i] = sigmoid(x[i]);
+    private void forward(BitImage image, Workspace workspace) {
+        double[][] activations = workspace.activations;
+        if (collectActiveInputs(image, workspace)) {
+            kernels.sumRows(workspace.activeInputs, workspace.activeCount, weights[0], layers[1], activations[1]);
+        } else {
+            copyInputs(workspace.activeInputs, workspace.activeCount, activations[0], 0);
+            kernels.gemv(activations[0], weights[0], layers[0], layers[1], activations[1]);
+        }
+        topology.activation(1).apply(activations[1], 0, layers[1]);
+
+        for (int l = 1; l < weights.length; l++) {
+            kernels.gemv(activations[l], weights[l], layers[l], layers[l + 1], activations[l + 1]);
+            topology.activation(l + 1).apply(activations[l + 1], 0, layers[l + 1]);
         }
-        return result;
     }
 
     /**
-     * Применяет производную сигмоиды ко всем элементам массива.
-     * @param x Входной массив.
-     * @return Массив с примененной производной сигмоиды.
+     * Выполняет прямой проход в 32-битных числах по копии весов.
+     * @param image Изображение в битовом представлении.
+     * @param workspace Рабочая область.
      */
-    private double[] sigmoidDerivative(double[] x) {
-        double[] result = new double[x.length];
-        for (int i = 0; i < x.length; i++) {
-            result[i] = sigmoidPrime(x[i]);
+    private void forwardFloat(BitImage image, Workspace workspace) {
+        float[][] weights = floatWeights;
+        float[][] activations = workspace.floatActivations;
+        if (collectActiveInputs(image, workspace)) {
+            kernels.sumRows(workspace.activeInputs, workspace.activeCount, weights[0], layers[1], activations[1]);
+        } else {
+            copyInputs(workspace.activeInputs, workspace.activeCount, activations[0], 0);
+            kernels.gemv(activations[0], weights[0], layers[0], layers[1], activations[1]);
         }
-        return result;
+        topology.activation(1).apply(activations[1], 0, layers[1]);
+
+        for (int l = 1; l < weights.length; l++) {
+            kernels.gemv(activations[l], weights[l], layers[l], layers[l + 1], activations[l + 1]);
+            topology.activation(l + 1).apply(activations[l + 1], 0, layers[l + 1]);
+        }
+    }
+
+    /**
+     * Записывает в рабочую область индексы закрашенных пикселей изображения и выбирает представление входа
+     * для прямого прохода по их доле. Плотное изображение вызывающий код копирует во входной слой
+     * по тем же индексам ({@link #copyInputs}).
+     * @param image Изображение в битовом представлении.
+     * @param workspace Рабочая область.
+     * @return true, если вход обрабатывается в разреженном виде.
+     */
+    private boolean collectActiveInputs(BitImage image, Workspace workspace) {
+        workspace.activeCount = activeInputs(image, workspace.activeInputs);
+        workspace.sparseInput = workspace.activeCount <= layers[0] * SPARSE_INPUT_DENSITY;
+        return workspace.sparseInput;
     }
 
     /**
-     * Вычисляет произведение вектора и матрицы.
-     * @param vector Входной вектор.
-     * @param matrix Входная матрица.
-     * @return Результирующий вектор.
+     * Записывает индексы закрашенных пикселей изображения в порядке возрастания. Единственный обход битов
+     * изображения: входы в 64- и 32-битных числах строятся по этим индексам.
+     * @param image Изображение в битовом представлении.
+     * @param indices Массив длиной не меньше размера входного слоя.
+     * @return Количество закрашенных пикселей.
      */
-    private double[] dot(double[] vector, double[][] matrix) {
-        double[] result = new double[matrix[0].length];
-        for (int i = 0; i < matrix[0].length; i++) {
-            for (int j = 0; j < vector.length; j++) {
-                result[i] += vector[j] * matrix[j][i];
+    private int activeInputs(BitImage image, int[] indices) {
+        int pixels = layers[0];
+        if (image.pixelCount() != pixels) {
+            throw new IllegalArgumentException("Ожидалось изображение из " + pixels + " пикселей, получено: " + image.pixelCount());
+        }
+        int count = 0;
+        for (int w = 0, base = 0; w < image.wordCount(); w++, base += Long.SIZE) {
+            for (long bits = image.word(w); bits != 0; bits &= bits - 1) {
+                indices[count++] = base + Long.numberOfTrailingZeros(bits);
             }
         }
-        return result;
+        return count;
     }
 
     /**
-     * Вычисляет произведение вектора и транспонированной матрицы.
-     * @param vector Входной вектор.
-     * @param matrix Входная матрица.
-     * @return Результирующий вектор.
+     * Выполняет прямой проход с точностью сети и возвращает выходы в 64-битных числах.
+     * В режиме {@link Precision#FLOAT} выходы расширяются в выходной буфер 64-битного прохода.
+     * @param image Изображение в битовом представлении.
+     * @param workspace Рабочая область.
+     * @return Выходной слой рабочей области.
      */
-    private double[] dotTrans(double[] vector, double[][] matrix) {
-        double[] result = new double[matrix.length];
-        for (int i = 0; i < matrix.length; i++) {
-            for (int j = 0; j < vector.length; j++) {
-                result[i] += vector[j] * matrix[i][j];
+    private double[] forwardOutput(BitImage image, Workspace workspace) {
+        double[] output = workspace.output();
+        if (precision == Precision.FLOAT) {
+            forwardFloat(image, workspace);
+            float[] floatOutput = workspace.floatOutput();
+            for (int i = 0; i < output.length; i++) {
+                output[i] = floatOutput[i];
             }
+            return output;
         }
-        return result;
+        forward(image, workspace);
+        return output;
     }
 
     /**
-     * Перемножает два массива поэлементно.
-     * @param a Первый массив.
-     * @param b Второй массив.
-     * @return Результирующий массив.
+     * Обновляет копию весов в 32-битных числах, если сеть предсказывает в режиме {@link Precision#FLOAT}.
      */
-    private double[] multiply(double[] a, double[] b) {
-        double[] result = new double[a.length];
-        for (int i = 0; i < a.length; i++) {
-            result[i] = a[i] * b[i];
+    private void refreshFloatWeights() {
+        if (precision != Precision.FLOAT) {
+            floatWeights = null;
+            return;
+        }
+        float[][] converted = new float[weights.length][];
+        for (int l = 0; l < weights.length; l++) {
+            converted[l] = new float[weights[l].length];
+            for (int i = 0; i < weights[l].length; i++) {
+                converted[l][i] = (float) weights[l][i];
+            }
         }
-        return result;
+        floatWeights = converted;
     }
 
     /**
-     * Вычитает один массив из другого поэлементно.
-     * @param a Первый массив.
-     * @param b Второй массив.
-     * @return Результирующий массив.
+     * Записывает в рабочую область ошибку выходного слоя относительно одноразовой кодировки целевого класса.
+     * @param workspace Рабочая область после прямого прохода.
+     * @param target Индекс целевого класса.
+     * @return Ошибка выходного слоя.
      */
-    private double[] subtract(double[] a, double[] b) {
-        double[] result = new double[a.length];
-        for (int i = 0; i < a.length; i++) {
-            result[i] = a[i] - b[i];
+    private double[] outputError(Workspace workspace, int target) {
+        int last = layers.length - 1;
+        double[] output = workspace.activations[last];
+        double[] outputError = workspace.errors[last];
+        for (int i = 0; i < layers[last]; i++) {
+            outputError[i] = output[i] - (i == target ? 1.0 : 0.0);
         }
-        return result;
+        return outputError;
     }
 
     /**
-     * Генерирует случайную матрицу с весовыми коэффициентами.
-     * @param rows Количество строк.
-     * @param cols Количество столбцов.
-     * @return Случайная матрица.
+     * Выполняет прямой и обратный проход для одного примера и вычитает градиент,
+     * умноженный на коэффициент обучения, из переданных массивов.
+     * Пример пропускается, если ошибка не превышает допустимую.
+     * @param figure Обучающий пример.
+     * @param workspace Рабочая область.
+     * @param delta Массивы, из которых вычитается градиент весов между соседними слоями.
+     * @return Ошибка примера до обновления весов.
      */
-    private double[][] randomMatrix(int rows, int cols) {
-        double[][] matrix = new double[rows][cols];
-        for (int i = 0; i < rows; i++) {
-            for (int j = 0; j < cols; j++) {
-                matrix[i][j] = random.nextDouble() - 0.5; // Диапазон значений от -0.5 до 0.5
+    private double trainSample(FigureImage figure, Workspace workspace, double[][] delta) {
+        forward(figure.image(), workspace);
+
+        int target = figure.figureType().ordinal();
+        double error = error(target, outputError(workspace, target));
+
+        if (error > MAX_ERR) {
+            // Градиенты по входам нейронов вычисляются от выхода к входу до изменения весов:
+            // ошибка слоя умножается на производную его функции активации ровно один раз.
+            int last = layers.length - 1;
+            activationGradient(workspace, last);
+            for (int l = last - 1; l > 0; l--) {
+                kernels.gemvTransposed(workspace.deltas[l + 1], weights[l], layers[l], layers[l + 1], workspace.errors[l]);
+                activationGradient(workspace, l);
+            }
+
+            double learningRate = recalLearningRate(error);
+            updateWeights(workspace, learningRate, delta);
+        }
+        return error;
+    }
+
+    /**
+     * Умножает ошибку слоя на производную его функции активации, вычисленную по выходам слоя.
+     * @param workspace Рабочая область с выходами и ошибкой слоя; результат записывается в deltas.
+     * @param l Индекс слоя.
+     */
+    private void activationGradient(Workspace workspace, int l) {
+        Activation activation = topology.activation(l);
+        double[] layerDelta = workspace.deltas[l];
+        double[] layerError = workspace.errors[l];
+        double[] layerOutput = workspace.activations[l];
+        for (int i = 0; i < layers[l]; i++) {
+            layerDelta[i] = layerError[i] * activation.derivative(layerOutput[i]);
+        }
+    }
+
+    /**
+     * Обучает сеть мини-пакетами, распределяя части каждого пакета между накопителями градиентов.
+     * Списки с произвольным доступом обрабатываются по индексам; остальные данные читаются итератором
+     * в переиспользуемый буфер размером в один пакет.
+     * При нескольких накопителях должен вызываться из потока пула ForkJoinPool: части со второй
+     * по последнюю выполняются в других потоках пула, первая — в текущем потоке.
+     * @param trainingData Обучающие данные.
+     * @param epochs Максимальное количество эпох.
+     * @param batchSize Размер пакета.
+     * @param gradients Накопители градиентов, по одному на поток.
+     * @param tracker Отслеживание сходимости, получающее ошибку каждой эпохи; null — выполняются все эпохи.
+     */
+    private void trainMiniBatches(Iterable<FigureImage> trainingData, int epochs, int batchSize, Gradient[] gradients,
+                                  ConvergenceTracker tracker) {
+        if (trainingData instanceof List<FigureImage> list && trainingData instanceof RandomAccess) {
+            for (int epoch = 0; epoch < epochs; epoch++) {
+                double loss = 0;
+                for (int start = 0; start < list.size(); start += batchSize) {
+                    loss += trainBatch(list, start, Math.min(batchSize, list.size() - start), gradients);
+                }
+                if (tracker != null && !tracker.epochCompleted(list.isEmpty() ? 0 : loss / list.size())) {
+                    return;
+                }
+            }
+            return;
+        }
+
+        List<FigureImage> batch = new ArrayList<>(batchSize);
+        for (int epoch = 0; epoch < epochs; epoch++) {
+            double loss = 0;
+            int count = 0;
+            for (FigureImage figure : trainingData) {
+                batch.add(figure);
+                if (batch.size() == batchSize) {
+                    loss += trainBatch(batch, 0, batchSize, gradients);
+                    count += batchSize;
+                    batch.clear();
+                }
+            }
+            if (!batch.isEmpty()) {
+                loss += trainBatch(batch, 0, batch.size(), gradients);
+                count += batch.size();
+                batch.clear();
+            }
+            if (tracker != null && !tracker.epochCompleted(count == 0 ? 0 : loss / count)) {
+                return;
             }
         }
-        return matrix;
     }
 
     /**
-     * Преобразует целочисленный индекс в вектор с одноразовой кодировкой.
-     * @param index Индекс целевого значения.
-     * @param size Размерность вектора.
-     * @return Вектор с одноразовой кодировкой.
+     * Вычисляет градиенты одного пакета и применяет их к весам.
+     * @param samples Примеры, содержащие пакет.
+     * @param start Индекс первого примера пакета.
+     * @param count Количество примеров в пакете.
+     * @param gradients Накопители градиентов, по одному на поток.
+     * @return Сумма ошибок примеров пакета до обновления весов.
      */
-    private double[] oneHotEncoding(int index, int size) {
-        double[] vector = new double[size];
-        vector[index] = 1.0;
-        return vector;
+    private double trainBatch(List<FigureImage> samples, int start, int count, Gradient[] gradients) {
+        int parts = Math.min(gradients.length, count);
+        computeGradients(samples, start, count, gradients, parts);
+        applyGradients(gradients, parts, count);
+        double loss = 0;
+        for (int p = 0; p < parts; p++) {
+            loss += gradients[p].loss;
+        }
+        return loss;
     }
 
     /**
-     * Находит индекс максимального элемента в массиве.
+     * Вычисляет градиенты пакета, разделяя его на непрерывные части.
+     * @param samples Примеры, содержащие пакет.
+     * @param start Индекс первого примера пакета.
+     * @param count Количество примеров в пакете.
+     * @param gradients Накопители градиентов, по одному на часть.
+     * @param parts Количество частей.
+     */
+    private void computeGradients(List<FigureImage> samples, int start, int count, Gradient[] gradients, int parts) {
+        for (int p = 0; p < parts; p++) {
+            gradients[p].samples = samples;
+            gradients[p].from = start + (int) ((long) count * p / parts);
+            gradients[p].to = start + (int) ((long) count * (p + 1) / parts);
+        }
+
+        for (int p = 1; p < parts; p++) {
+            gradients[p].reinitialize();
+            gradients[p].fork();
+        }
+        gradients[0].accumulate();
+        for (int p = 1; p < parts; p++) {
+            gradients[p].join();
+        }
+    }
+
+    /**
+     * Складывает градиенты частей пакета в порядке частей и применяет среднее значение к весам.
+     * Из весов входного слоя обновляются только строки пикселей, закрашенных хотя бы в одном примере части.
+     * @param gradients Накопители градиентов.
+     * @param parts Количество заполненных накопителей.
+     * @param count Количество примеров в пакете.
+     */
+    private void applyGradients(Gradient[] gradients, int parts, int count) {
+        double scale = 1.0 / count;
+        int cols = layers[1];
+        for (int p = 0; p < parts; p++) {
+            double[] inputWeights = weights[0];
+            double[] inputDelta = gradients[p].delta[0];
+            long[] touchedInputs = gradients[p].touchedInputs;
+            for (int w = 0; w < touchedInputs.length; w++) {
+                for (long bits = touchedInputs[w]; bits != 0; bits &= bits - 1) {
+                    int row = ((w << 6) + Long.numberOfTrailingZeros(bits)) * cols;
+                    for (int j = row; j < row + cols; j++) {
+                        inputWeights[j] += inputDelta[j] * scale;
+                    }
+                }
+            }
+            for (int l = 1; l < weights.length; l++) {
+                double[] layerWeights = weights[l];
+                double[] layerDelta = gradients[p].delta[l];
+                for (int i = 0; i < layerWeights.length; i++) {
+                    layerWeights[i] += layerDelta[i] * scale;
+                }
+            }
+        }
+    }
+
+    /**
+     * Пересчитывает коэффициент обучения на основе текущей ошибки.
+     * @param error Текущая ошибка.
+     * @return Новое значение коэффициента обучения.
+     */
+    private double recalLearningRate(double error) {
+        double rel_e = 2 * error / layers[layers.length - 1];
+        return rel_e * (MAX_ALPHA - MIN_ALPHA) + MIN_ALPHA;
+    }
+
+    /**
+     * Вычисляет среднюю ошибку между целевыми значениями и выходной ошибкой.
+     * @param target Индекс целевого класса (целевые значения — его одноразовая кодировка).
+     * @param outputError Ошибка выходного слоя.
+     * @return Средняя ошибка.
+     */
+    private double error(int target, double[] outputError) {
+        double e = 0;
+        for (int i = 0; i < outputError.length; i++) {
+            e += Math.abs((i == target ? 1.0 : 0.0) - outputError[i]);
+        }
+        return e / 2;
+    }
+
+    /**
+     * Обновляет веса сети (или накопитель градиентов) на основе градиентов и коэффициента обучения.
+     * Использует выходы слоев и градиенты по входам нейронов, сохраненные в рабочей области; веса входного слоя
+     * изменяются только в строках закрашенных пикселей.
+     * @param workspace Рабочая область с результатами прямого и обратного прохода.
+     * @param learningRate Коэффициент обучения.
+     * @param weights Обновляемые веса между соседними слоями.
+     */
+    private void updateWeights(Workspace workspace, double learningRate, double[][] weights) {
+        for (int l = layers.length - 1; l > 0; l--) {
+            double[] layerDelta = workspace.deltas[l];
+            for (int i = 0; i < layers[l]; i++) {
+                layerDelta[i] *= learningRate;
+            }
+            if (l == 1 && workspace.sparseInput) {
+                kernels.subtractRows(weights[0], workspace.activeInputs, workspace.activeCount, layerDelta, layers[1]);
+            } else {
+                kernels.subtractOuter(weights[l - 1], workspace.activations[l - 1], layers[l - 1], layerDelta, layers[l]);
+            }
+        }
+    }
+
+    /**
+     * Записывает вход в строку матрицы входных данных: единицы по индексам закрашенных пикселей, остальное — нули.
+     * @param indices Индексы закрашенных пикселей ({@link #activeInputs}).
+     * @param count Количество индексов.
+     * @param destination Матрица входных данных.
+     * @param offset Смещение строки в матрице.
+     */
+    private void copyInputs(int[] indices, int count, double[] destination, int offset) {
+        Arrays.fill(destination, offset, offset + layers[0], 0);
+        for (int k = 0; k < count; k++) {
+            destination[offset + indices[k]] = 1;
+        }
+    }
+
+    /**
+     * Записывает вход в строку матрицы входных данных в 32-битных числах (см. {@link #copyInputs(int[], int, double[], int)}).
+     * @param indices Индексы закрашенных пикселей.
+     * @param count Количество индексов.
+     * @param destination Матрица входных данных.
+     * @param offset Смещение строки в матрице.
+     */
+    private void copyInputs(int[] indices, int count, float[] destination, int offset) {
+        Arrays.fill(destination, offset, offset + layers[0], 0);
+        for (int k = 0; k < count; k++) {
+            destination[offset + indices[k]] = 1;
+        }
+    }
+
+    /**
+     * Обходит строки матрицы выходов слоя; используется, чтобы применить функцию активации к каждому изображению
+     * пакета отдельно (softmax нормирует каждую строку).
+     * @param rows Количество строк (изображений).
+     * @param cols Размер слоя.
+     * @param row Действие над участком строки [from, to).
+     */
+    private static void forEachRow(int rows, int cols, RowAction row) {
+        for (int n = 0; n < rows; n++) {
+            row.apply(n * cols, (n + 1) * cols);
+        }
+    }
+
+    /**
+     * Генерирует случайную матрицу с весовыми коэффициентами.
+     * Для нейронов с числом входов до {@code INIT_FAN_IN} веса лежат в диапазоне от -0.5 до 0.5;
+     * для большего числа входов диапазон сужается пропорционально корню из числа входов,
+     * чтобы сумма на входе нейрона широкого слоя не загоняла сигмоиду в насыщение.
+     * @param rows Количество строк (входов нейрона).
+     * @param cols Количество столбцов.
+     * @return Случайная матрица, хранящаяся построчно.
+     */
+    private double[] randomMatrix(int rows, int cols) {
+        double scale = Math.min(1.0, Math.sqrt(INIT_FAN_IN / rows));
+        double[] matrix = new double[rows * cols];
+        for (int i = 0; i < matrix.length; i++) {
+            matrix[i] = (random.nextDouble() - 0.5) * scale;
+        }
+        return matrix;
+    }
+
+    /**
+     * Находит индекс максимального элемента в участке массива.
      * @param array Входной массив.
-     * @return Индекс максимального элемента.
+     * @param offset Начало участка.
+     * @param length Длина участка.
+     * @return Индекс максимального элемента относительно начала участка.
      */
-    private int argMax(double[] array) {
+    private int argMax(double[] array, int offset, int length) {
         int maxIndex = 0;
-        for (int i = 1; i < array.length; i++) {
-            if (array[i] > array[maxIndex]) {
+        for (int i = 1; i < length; i++) {
+            if (array[offset + i] > array[offset + maxIndex]) {
                 maxIndex = i;
             }
         }
         return maxIndex;
     }
+
+    /**
+     * Действие над участком строки матрицы выходов слоя.
+     */
+    @FunctionalInterface
+    private interface RowAction {
+        void apply(int from, int to);
+    }
+
+    /**
+     * Рабочая область прямого и обратного прохода: промежуточные векторы одного примера для каждого слоя.
+     * Рабочая область не потокобезопасна; для параллельных вызовов predict каждому потоку
+     * нужна собственная область ({@link #newWorkspace()}).
+     */
+    public static final class Workspace {
+        private final int[] layers;
+        private final double[][] activations; // Выходы слоев; activations[0] — входное изображение
+        private final double[][] errors; // Ошибки выходов слоев, начиная с первого скрытого
+        private final double[][] deltas; // Градиенты по входам нейронов слоя, начиная с первого скрытого
+        private final float[][] floatActivations; // Выходы слоев при предсказании в 32-битных числах
+        private final int[] activeInputs; // Индексы закрашенных пикселей разреженного входа
+        private int activeCount; // Количество индексов в activeInputs
+        private boolean sparseInput; // Вход последнего прямого прохода записан в activeInputs, а не в activations[0]
+
+        private Workspace(int[] layers) {
+            this.layers = layers.clone();
+            activations = new double[layers.length][];
+            errors = new double[layers.length][];
+            deltas = new double[layers.length][];
+            floatActivations = new float[layers.length][];
+            activations[0] = new double[layers[0]];
+            floatActivations[0] = new float[layers[0]];
+            activeInputs = new int[layers[0]];
+            for (int l = 1; l < layers.length; l++) {
+                floatActivations[l] = new float[layers[l]];
+                activations[l] = new double[layers[l]];
+                errors[l] = new double[layers[l]];
+                deltas[l] = new double[layers[l]];
+            }
+        }
+
+        private boolean fits(int[] layers) {
+            return Arrays.equals(this.layers, layers);
+        }
+
+        private double[] output() {
+            return activations[activations.length - 1];
+        }
+
+        private float[] floatOutput() {
+            return floatActivations[floatActivations.length - 1];
+        }
+    }
+
+    /**
+     * Накопитель градиентов одной части мини-пакета. Принадлежит одному потоку на время вычисления пакета
+     * и переиспользуется между пакетами, поэтому обучение мини-пакетами не выделяет память на каждый пакет.
+     */
+    private class Gradient extends RecursiveAction {
+        private final Workspace workspace = new Workspace(layers);
+        private final double[][] delta = new double[weights.length][];
+        private final long[] touchedInputs = new long[(layers[0] + Long.SIZE - 1) >>> 6]; // Пиксели, закрашенные хотя бы в одном примере части
+        private List<FigureImage> samples; // Примеры текущего пакета
+        private int from; // Индекс первого примера части (включительно)
+        private int to; // Индекс последнего примера части (не включительно)
+        private double loss; // Сумма ошибок примеров части
+
+        private Gradient() {
+            for (int l = 0; l < weights.length; l++) {
+                delta[l] = new double[weights[l].length];
+            }
+        }
+
+        @Override
+        protected void compute() {
+            accumulate();
+        }
+
+        /**
+         * Обнуляет накопитель и суммирует в нем градиенты примеров своей части.
+         * Градиенты входного слоя отличны от нуля только в строках закрашенных пикселей,
+         * поэтому обнуляются только строки, затронутые предыдущим пакетом.
+         */
+        private void accumulate() {
+            int cols = layers[1];
+            for (int w = 0; w < touchedInputs.length; w++) {
+                for (long bits = touchedInputs[w]; bits != 0; bits &= bits - 1) {
+                    int row = ((w << 6) + Long.numberOfTrailingZeros(bits)) * cols;
+                    Arrays.fill(delta[0], row, row + cols, 0.0);
+                }
+                touchedInputs[w] = 0;
+            }
+            for (int l = 1; l < delta.length; l++) {
+                Arrays.fill(delta[l], 0.0);
+            }
+            loss = 0;
+            for (int i = from; i < to; i++) {
+                BitImage image = samples.get(i).image();
+                loss += trainSample(samples.get(i), workspace, delta);
+                for (int w = 0; w < touchedInputs.length; w++) {
+                    touchedInputs[w] |= image.word(w);
+                }
+            }
+        }
+    }
 }
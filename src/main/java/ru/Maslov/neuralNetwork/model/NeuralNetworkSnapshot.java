@@ -0,0 +1,211 @@
+package ru.Maslov.neuralNetwork.model;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+/**
+ * Двоичный снимок нейронной сети. Формат (порядок байт big-endian):
+ * <pre>
+ * int    сигнатура "NNSN"
+ * int    версия формата
+ * int    количество слоев n, int[n] размеры слоев от входного до выходного
+ * int    функция активации скрытых слоев, int функция активации выходного слоя (порядковые номера {@link Activation})
+ * double минимальный коэффициент обучения, double максимальный коэффициент обучения, double допустимая ошибка
+ * int    количество выполненных эпох, int размер мини-пакета
+ * double[слой l x слой l + 1] веса между слоями l и l + 1, построчно, для l от 0 до n - 2
+ * long   контрольная сумма CRC32 всех предыдущих байт
+ * </pre>
+ * Снимки других версий не читаются: веса сетей, сохраненных версиями 1 и 2, обучены до исправления
+ * обратного распространения ошибки, и такая сеть обучается заново.
+ */
+final class NeuralNetworkSnapshot {
+    private static final int MAGIC = 0x4E4E534E; // "NNSN"
+    private static final int VERSION = 3;
+    private static final int PARAMETERS_SIZE = 3 * Double.BYTES + 2 * Integer.BYTES;
+
+    private NeuralNetworkSnapshot() {
+    }
+
+    /**
+     * Записывает снимок сети во временный файл рядом с целевым и атомарно переименовывает его.
+     * @param neuralNetwork Сохраняемая сеть.
+     * @param path Путь к файлу снимка.
+     * @throws IOException если файл не удалось записать.
+     */
+    static void write(NeuralNetwork neuralNetwork, Path path) throws IOException {
+        writeAtomically(encode(neuralNetwork), path);
+    }
+
+    /**
+     * Кодирует снимок сети вместе с контрольной суммой.
+     * @param neuralNetwork Сохраняемая сеть.
+     * @return Буфер со снимком, подготовленный для чтения.
+     */
+    static ByteBuffer encode(NeuralNetwork neuralNetwork) {
+        NetworkTopology topology = neuralNetwork.topology();
+        int[] layers = topology.layerSizes();
+        double[][] weights = neuralNetwork.weights();
+
+        ByteBuffer buffer = ByteBuffer.allocate(Math.toIntExact(headerSize(layers.length) + weightsSize(layers) + Long.BYTES));
+        buffer.putInt(MAGIC)
+                .putInt(VERSION)
+                .putInt(layers.length);
+        for (int layer : layers) {
+            buffer.putInt(layer);
+        }
+        buffer.putInt(topology.hiddenActivation().ordinal())
+                .putInt(topology.outputActivation().ordinal())
+                .putDouble(NeuralNetwork.MIN_ALPHA)
+                .putDouble(NeuralNetwork.MAX_ALPHA)
+                .putDouble(NeuralNetwork.MAX_ERR)
+                .putInt(neuralNetwork.trainedEpochs())
+                .putInt(neuralNetwork.batchSize());
+        for (double[] layerWeights : weights) {
+            buffer.asDoubleBuffer().put(layerWeights);
+            buffer.position(buffer.position() + layerWeights.length * Double.BYTES);
+        }
+
+        CRC32 crc = new CRC32();
+        crc.update(buffer.array(), 0, buffer.position());
+        buffer.putLong(crc.getValue());
+        return buffer.flip();
+    }
+
+    /**
+     * Записывает буфер во временный файл рядом с целевым, сбрасывает его на диск и атомарно переименовывает,
+     * поэтому по целевому пути всегда находится либо прежний, либо полностью записанный файл.
+     * @param buffer Содержимое файла.
+     * @param path Путь к файлу.
+     * @throws IOException если файл не удалось записать.
+     */
+    static void writeAtomically(ByteBuffer buffer, Path path) throws IOException {
+        Path absolute = path.toAbsolutePath();
+        Path temp = absolute.resolveSibling(absolute.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(true);
+        }
+        Files.move(temp, absolute, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Читает снимок сети через отображение файла в память и проверяет его контрольную сумму.
+     * @param path Путь к файлу снимка.
+     * @return Восстановленная сеть.
+     * @throws IOException если файл не удалось прочитать, он поврежден или содержит недопустимые слои.
+     */
+    static NeuralNetwork read(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return decode(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()), path.toString());
+        }
+    }
+
+    /**
+     * Восстанавливает сеть из снимка, занимающего буфер от начала до конца, и проверяет его контрольную сумму.
+     * @param buffer Буфер со снимком; позиция буфера изменяется.
+     * @param source Описание источника снимка для сообщений об ошибках.
+     * @return Восстановленная сеть.
+     * @throws IOException если снимок поврежден или содержит недопустимые слои.
+     */
+    static NeuralNetwork decode(ByteBuffer buffer, String source) throws IOException {
+        int size = buffer.limit();
+        if (size < headerSize(0) + Long.BYTES) {
+            throw new IOException("Снимок слишком короткий: " + source);
+        }
+
+        if (buffer.getInt() != MAGIC) {
+            throw new IOException("Файл не является снимком нейронной сети: " + source);
+        }
+        int version = buffer.getInt();
+        if (version != VERSION) {
+            throw new IOException("Неподдерживаемая версия снимка: " + version + ", ожидалась " + VERSION);
+        }
+
+        int layerCount = buffer.getInt();
+        // Количество слоев ограничивается размером файла до выделения памяти и проверки контрольной суммы
+        if (layerCount < 2 || headerSize(layerCount) + Long.BYTES > size) {
+            throw new IOException("Неверное количество слоев снимка: " + layerCount);
+        }
+        int[] layers = new int[layerCount];
+        for (int l = 0; l < layerCount; l++) {
+            layers[l] = buffer.getInt();
+        }
+        NetworkTopology topology;
+        try {
+            topology = NetworkTopology.fromLayerSizes(layers)
+                    .withActivations(activation(buffer.getInt()), activation(buffer.getInt()));
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Недопустимые слои снимка: " + e.getMessage(), e);
+        }
+
+        long expectedSize = headerSize(layerCount) + weightsSize(layers) + Long.BYTES;
+        if (size != expectedSize) {
+            throw new IOException("Неверный размер снимка: " + size + ", ожидалось " + expectedSize);
+        }
+
+        CRC32 crc = new CRC32();
+        crc.update(buffer.slice(0, size - Long.BYTES));
+        if (crc.getValue() != buffer.getLong(size - Long.BYTES)) {
+            throw new IOException("Контрольная сумма снимка не совпадает: " + source);
+        }
+
+        buffer.position(buffer.position() + 3 * Double.BYTES); // Параметры обучения сети задаются константами
+        int trainedEpochs = buffer.getInt();
+        int batchSize = buffer.getInt();
+
+        double[][] weights = new double[layerCount - 1][];
+        for (int l = 0; l < weights.length; l++) {
+            weights[l] = new double[layers[l] * layers[l + 1]];
+            buffer.asDoubleBuffer().get(weights[l]);
+            buffer.position(buffer.position() + weights[l].length * Double.BYTES);
+        }
+
+        return new NeuralNetwork(topology, weights, trainedEpochs, batchSize);
+    }
+
+    /**
+     * Возвращает размер заголовка снимка до весов: сигнатура, версия, количество и размеры слоев,
+     * функции активации и параметры обучения.
+     * @param layerCount Количество слоев.
+     * @return Размер заголовка в байтах.
+     */
+    private static long headerSize(int layerCount) {
+        return 3 * Integer.BYTES + (long) layerCount * Integer.BYTES + 2 * Integer.BYTES + PARAMETERS_SIZE;
+    }
+
+    /**
+     * Возвращает функцию активации по порядковому номеру из снимка.
+     * @param ordinal Порядковый номер.
+     * @return Функция активации.
+     * @throws IllegalArgumentException если номер недопустим.
+     */
+    private static Activation activation(int ordinal) {
+        Activation[] activations = Activation.values();
+        if (ordinal < 0 || ordinal >= activations.length) {
+            throw new IllegalArgumentException("Неизвестная функция активации: " + ordinal);
+        }
+        return activations[ordinal];
+    }
+
+    /**
+     * Возвращает суммарный размер матриц весов.
+     * @param layers Размеры слоев.
+     * @return Размер весов в байтах.
+     */
+    private static long weightsSize(int[] layers) {
+        long count = 0;
+        for (int l = 0; l + 1 < layers.length; l++) {
+            count += (long) layers[l] * layers[l + 1];
+        }
+        return count * Double.BYTES;
+    }
+}
@@ -0,0 +1,17 @@
+package ru.Maslov.neuralNetwork.model;
+
+/**
+ * Точность весов и выходов слоев при предсказании.
+ * Обучение всегда выполняется в {@link #DOUBLE}; в режиме {@link #FLOAT} предсказание использует
+ * копию весов в 32-битных числах, которая обновляется после каждого обучения.
+ */
+public enum Precision {
+    /**
+     * 64-битные числа с плавающей точкой.
+     */
+    DOUBLE,
+    /**
+     * 32-битные числа с плавающей точкой: вдвое больше элементов в одном SIMD-регистре и вдвое меньше памяти весов.
+     */
+    FLOAT
+}
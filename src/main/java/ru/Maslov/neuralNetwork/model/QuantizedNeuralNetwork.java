@@ -0,0 +1,240 @@
+package ru.Maslov.neuralNetwork.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Класс QuantizedNeuralNetwork представляет нейронную сеть, квантованную после обучения в 8-битные целые числа.
+ * Модель предназначена только для предсказания и не хранит исходные веса, поэтому занимает в 8 раз меньше
+ * памяти, чем {@link NeuralNetwork} с весами {@code double}. Квантуются только сети с сигмоидой
+ * в скрытых слоях ({@link NetworkTopology#supportsQuantization()}).
+ * <p>
+ * Квантование:
+ * <ul>
+ *     <li>веса каждого слоя делятся на общий для слоя масштаб {@code max|w| / 127} и округляются до {@code byte};</li>
+ *     <li>входной слой бинарный, поэтому сумма на входе первого скрытого слоя — это целочисленная сумма весов
+ *     заполненных пикселей, которые перебираются прямо по битам изображения;</li>
+ *     <li>выходы скрытых слоев хранятся как целые от 0 до 255 (сигмоида, умноженная на 255), суммы следующих
+ *     слоев также накапливаются в {@code int};</li>
+ *     <li>сигмоида вычисляется по таблице, индекс в которой получается из целочисленной суммы одним умножением;</li>
+ *     <li>сигмоида монотонна, а softmax сохраняет порядок сумм, поэтому для выходного слоя класс выбирается
+ *     по максимальной сумме без активации.</li>
+ * </ul>
+ */
+public final class QuantizedNeuralNetwork implements FigureClassifier {
+    private static final int WEIGHT_LEVELS = 127; // Наибольшее по модулю значение квантованного веса
+    private static final int ACTIVATION_LEVELS = 255; // Значение квантованного выхода скрытого слоя, соответствующее 1.0
+    private static final int TABLE_SIZE = 4096; // Количество значений в таблице сигмоиды
+    private static final double TABLE_RANGE = 8.0; // Таблица покрывает входы сигмоиды от -TABLE_RANGE до TABLE_RANGE
+    private static final double TABLE_STEP = TABLE_SIZE / (2 * TABLE_RANGE); // Количество значений таблицы на единицу входа
+
+    private static final FigureType[] FIGURE_TYPES = FigureType.values();
+
+    // Таблица сигмоиды: квантованный выход (0..255, хранится без знака) для входа (i - TABLE_SIZE / 2) / TABLE_STEP.
+    private static final byte[] SIGMOID_TABLE = sigmoidTable();
+
+    // Буферы текущего потока; пересоздаются, только если поток обращается к модели другой топологии.
+    private static final ThreadLocal<Buffers> BUFFERS = new ThreadLocal<>();
+
+    private final NetworkTopology topology;
+    private final int[] layers; // Размеры слоев от входного до выходного
+    private final byte[][] weights; // weights[l] — квантованные веса между слоями l и l + 1, построчно
+    private final double[] tableScales; // Множитель, переводящий целочисленную сумму слоя l + 1 в шаги таблицы сигмоиды
+
+    /**
+     * Квантует веса обученной сети.
+     * @param topology Топология сети.
+     * @param weights Веса между соседними слоями, построчно.
+     */
+    QuantizedNeuralNetwork(NetworkTopology topology, double[][] weights) {
+        this.topology = topology;
+        this.layers = topology.layerSizes();
+        this.weights = new byte[weights.length][];
+        this.tableScales = new double[weights.length];
+
+        for (int l = 0; l < weights.length; l++) {
+            double maxAbs = 0;
+            for (double weight : weights[l]) {
+                maxAbs = Math.max(maxAbs, Math.abs(weight));
+            }
+            double scale = maxAbs == 0 ? 1.0 : maxAbs / WEIGHT_LEVELS;
+
+            byte[] quantized = new byte[weights[l].length];
+            for (int i = 0; i < quantized.length; i++) {
+                quantized[i] = (byte) Math.round(weights[l][i] / scale);
+            }
+            this.weights[l] = quantized;
+
+            // Входы первого слоя равны 0 или 1, входы следующих — квантованные выходы от 0 до ACTIVATION_LEVELS.
+            double inputScale = l == 0 ? 1.0 : 1.0 / ACTIVATION_LEVELS;
+            tableScales[l] = scale * inputScale * TABLE_STEP;
+        }
+    }
+
+    @Override
+    public NetworkTopology topology() {
+        return topology;
+    }
+
+    @Override
+    public boolean supports(BitImage image) {
+        return image != null && image.pixelCount() == layers[0];
+    }
+
+    @Override
+    public FigureType predict(FigureImage figure) {
+        return predict(figure, buffers());
+    }
+
+    @Override
+    public Predictor newPredictor() {
+        Buffers buffers = new Buffers(layers);
+        return figure -> predict(figure, buffers);
+    }
+
+    /**
+     * Предсказывает тип фигуры в заданных буферах.
+     * @param figure Изображение фигуры.
+     * @param buffers Буферы промежуточных результатов, созданные для слоев этой модели.
+     * @return Предсказанный тип фигуры.
+     */
+    private FigureType predict(FigureImage figure, Buffers buffers) {
+        BitImage image = figure.image();
+        if (image.pixelCount() != layers[0]) {
+            throw new IllegalArgumentException("Ожидалось изображение из " + layers[0] + " пикселей, получено: " + image.pixelCount());
+        }
+        int last = layers.length - 1;
+
+        accumulateInput(image, buffers.sums[1]);
+        for (int l = 1; l < last; l++) {
+            activate(buffers.sums[l], layers[l], tableScales[l - 1], buffers.activations[l]);
+            accumulate(buffers.activations[l], l, buffers.sums[l + 1]);
+        }
+        return FIGURE_TYPES[argMax(buffers.sums[last])];
+    }
+
+    @Override
+    public List<FigureType> predictBatch(List<FigureImage> figures) {
+        List<FigureType> predictions = new ArrayList<>(figures.size());
+        for (int i = 0; i < figures.size(); i++) {
+            predictions.add(predict(figures.get(i)));
+        }
+        return predictions;
+    }
+
+    @Override
+    public long weightBytes() {
+        long bytes = (long) tableScales.length * Double.BYTES;
+        for (byte[] layerWeights : weights) {
+            bytes += layerWeights.length;
+        }
+        return bytes;
+    }
+
+    /**
+     * Суммирует квантованные веса первого слоя для заполненных пикселей изображения.
+     * Пиксели перебираются по установленным битам слов изображения.
+     * @param image Изображение в битовом представлении.
+     * @param sums Целочисленные суммы первого скрытого слоя, перезаписываются.
+     */
+    private void accumulateInput(BitImage image, int[] sums) {
+        byte[] layerWeights = weights[0];
+        int cols = layers[1];
+        Arrays.fill(sums, 0);
+        for (int w = 0; w < image.wordCount(); w++) {
+            long bits = image.word(w);
+            while (bits != 0) {
+                int row = ((w << 6) + Long.numberOfTrailingZeros(bits)) * cols;
+                for (int j = 0; j < cols; j++) {
+                    sums[j] += layerWeights[row + j];
+                }
+                bits &= bits - 1;
+            }
+        }
+    }
+
+    /**
+     * Суммирует квантованные веса слоя, умноженные на квантованные выходы предыдущего слоя.
+     * @param inputs Квантованные выходы слоя l (без знака).
+     * @param l Индекс слоя.
+     * @param sums Целочисленные суммы слоя l + 1, перезаписываются.
+     */
+    private void accumulate(byte[] inputs, int l, int[] sums) {
+        byte[] layerWeights = weights[l];
+        int rows = layers[l];
+        int cols = layers[l + 1];
+        Arrays.fill(sums, 0);
+        for (int k = 0; k < rows; k++) {
+            int input = inputs[k] & 0xFF;
+            if (input == 0) {
+                continue;
+            }
+            int row = k * cols;
+            for (int j = 0; j < cols; j++) {
+                sums[j] += input * layerWeights[row + j];
+            }
+        }
+    }
+
+    /**
+     * Вычисляет квантованные выходы слоя по таблице сигмоиды.
+     * @param sums Целочисленные суммы слоя.
+     * @param length Размер слоя.
+     * @param tableScale Множитель, переводящий сумму в шаги таблицы.
+     * @param activations Квантованные выходы слоя, перезаписываются.
+     */
+    private static void activate(int[] sums, int length, double tableScale, byte[] activations) {
+        for (int j = 0; j < length; j++) {
+            long index = Math.round(sums[j] * tableScale) + TABLE_SIZE / 2;
+            activations[j] = SIGMOID_TABLE[(int) Math.max(0, Math.min(TABLE_SIZE - 1, index))];
+        }
+    }
+
+    private static int argMax(int[] sums) {
+        int maxIndex = 0;
+        for (int i = 1; i < sums.length; i++) {
+            if (sums[i] > sums[maxIndex]) {
+                maxIndex = i;
+            }
+        }
+        return maxIndex;
+    }
+
+    private static byte[] sigmoidTable() {
+        byte[] table = new byte[TABLE_SIZE];
+        for (int i = 0; i < TABLE_SIZE; i++) {
+            double x = (i - TABLE_SIZE / 2) / TABLE_STEP;
+            table[i] = (byte) Math.round(ACTIVATION_LEVELS / (1.0 + Math.exp(-x)));
+        }
+        return table;
+    }
+
+    private Buffers buffers() {
+        Buffers buffers = BUFFERS.get();
+        if (buffers == null || !Arrays.equals(buffers.layers, layers)) {
+            buffers = new Buffers(layers);
+            BUFFERS.set(buffers);
+        }
+        return buffers;
+    }
+
+    /**
+     * Промежуточные суммы и квантованные выходы слоев одного прямого прохода.
+     */
+    private static final class Buffers {
+        private final int[] layers;
+        private final int[][] sums; // Целочисленные суммы слоев, начиная с первого скрытого
+        private final byte[][] activations; // Квантованные выходы скрытых слоев
+
+        private Buffers(int[] layers) {
+            this.layers = layers;
+            sums = new int[layers.length][];
+            activations = new byte[layers.length][];
+            for (int l = 1; l < layers.length; l++) {
+                sums[l] = new int[layers[l]];
+                activations[l] = new byte[layers[l]];
+            }
+        }
+    }
+}
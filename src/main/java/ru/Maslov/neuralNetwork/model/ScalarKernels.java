@@ -0,0 +1,180 @@
+package ru.Maslov.neuralNetwork.model;
+
+import java.util.Arrays;
+
+/**
+ * Скалярная реализация матричных операций: обычные циклы, которые JIT-компилятор
+ * может векторизовать сам. Доступна в любой JVM.
+ */
+final class ScalarKernels implements DenseKernels {
+    static final ScalarKernels INSTANCE = new ScalarKernels();
+
+    private ScalarKernels() {
+    }
+
+    @Override
+    public void gemv(double[] vector, double[] matrix, int rows, int cols, double[] result) {
+        Arrays.fill(result, 0, cols, 0.0);
+        for (int jj = 0; jj < cols; jj += COL_BLOCK) {
+            int jEnd = Math.min(cols, jj + COL_BLOCK);
+            for (int k = 0; k < rows; k++) {
+                double v = vector[k];
+                if (v == 0.0) {
+                    continue;
+                }
+                int row = k * cols;
+                for (int j = jj; j < jEnd; j++) {
+                    result[j] += v * matrix[row + j];
+                }
+            }
+        }
+    }
+
+    @Override
+    public void gemv(float[] vector, float[] matrix, int rows, int cols, float[] result) {
+        Arrays.fill(result, 0, cols, 0.0f);
+        for (int jj = 0; jj < cols; jj += COL_BLOCK) {
+            int jEnd = Math.min(cols, jj + COL_BLOCK);
+            for (int k = 0; k < rows; k++) {
+                float v = vector[k];
+                if (v == 0.0f) {
+                    continue;
+                }
+                int row = k * cols;
+                for (int j = jj; j < jEnd; j++) {
+                    result[j] += v * matrix[row + j];
+                }
+            }
+        }
+    }
+
+    @Override
+    public void sumRows(int[] rows, int count, double[] matrix, int cols, double[] result) {
+        Arrays.fill(result, 0, cols, 0.0);
+        for (int jj = 0; jj < cols; jj += COL_BLOCK) {
+            int jEnd = Math.min(cols, jj + COL_BLOCK);
+            for (int n = 0; n < count; n++) {
+                int row = rows[n] * cols;
+                for (int j = jj; j < jEnd; j++) {
+                    result[j] += matrix[row + j];
+                }
+            }
+        }
+    }
+
+    @Override
+    public void sumRows(int[] rows, int count, float[] matrix, int cols, float[] result) {
+        Arrays.fill(result, 0, cols, 0.0f);
+        for (int jj = 0; jj < cols; jj += COL_BLOCK) {
+            int jEnd = Math.min(cols, jj + COL_BLOCK);
+            for (int n = 0; n < count; n++) {
+                int row = rows[n] * cols;
+                for (int j = jj; j < jEnd; j++) {
+                    result[j] += matrix[row + j];
+                }
+            }
+        }
+    }
+
+    /**
+     * Каждая строка матрицы читается последовательно; сумма ведется в четырех независимых
+     * аккумуляторах, чтобы сложения не ждали друг друга.
+     */
+    @Override
+    public void gemvTransposed(double[] vector, double[] matrix, int rows, int cols, double[] result) {
+        int unrolled = cols & ~3;
+        for (int i = 0; i < rows; i++) {
+            int row = i * cols;
+            double s0 = 0, s1 = 0, s2 = 0, s3 = 0;
+            int j = 0;
+            for (; j < unrolled; j += 4) {
+                s0 += vector[j] * matrix[row + j];
+                s1 += vector[j + 1] * matrix[row + j + 1];
+                s2 += vector[j + 2] * matrix[row + j + 2];
+                s3 += vector[j + 3] * matrix[row + j + 3];
+            }
+            for (; j < cols; j++) {
+                s0 += vector[j] * matrix[row + j];
+            }
+            result[i] = (s0 + s1) + (s2 + s3);
+        }
+    }
+
+    /**
+     * Цикл идет по блокам внутренней размерности и столбцов, внутри блока — в порядке i-k-j,
+     * поэтому блок b переиспользуется всеми строками a, пока находится в кэше.
+     */
+    @Override
+    public void gemm(double[] a, int rows, int inner, double[] b, int cols, double[] result) {
+        Arrays.fill(result, 0, rows * cols, 0.0);
+        for (int kk = 0; kk < inner; kk += INNER_BLOCK) {
+            int kEnd = Math.min(inner, kk + INNER_BLOCK);
+            for (int jj = 0; jj < cols; jj += COL_BLOCK) {
+                int jEnd = Math.min(cols, jj + COL_BLOCK);
+                for (int i = 0; i < rows; i++) {
+                    int aRow = i * inner;
+                    int resultRow = i * cols;
+                    for (int k = kk; k < kEnd; k++) {
+                        double v = a[aRow + k];
+                        if (v == 0.0) {
+                            continue;
+                        }
+                        int bRow = k * cols;
+                        for (int j = jj; j < jEnd; j++) {
+                            result[resultRow + j] += v * b[bRow + j];
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    @Override
+    public void gemm(float[] a, int rows, int inner, float[] b, int cols, float[] result) {
+        Arrays.fill(result, 0, rows * cols, 0.0f);
+        for (int kk = 0; kk < inner; kk += INNER_BLOCK) {
+            int kEnd = Math.min(inner, kk + INNER_BLOCK);
+            for (int jj = 0; jj < cols; jj += COL_BLOCK) {
+                int jEnd = Math.min(cols, jj + COL_BLOCK);
+                for (int i = 0; i < rows; i++) {
+                    int aRow = i * inner;
+                    int resultRow = i * cols;
+                    for (int k = kk; k < kEnd; k++) {
+                        float v = a[aRow + k];
+                        if (v == 0.0f) {
+                            continue;
+                        }
+                        int bRow = k * cols;
+                        for (int j = jj; j < jEnd; j++) {
+                            result[resultRow + j] += v * b[bRow + j];
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    @Override
+    public void subtractOuter(double[] matrix, double[] left, int rows, double[] right, int cols) {
+        for (int k = 0; k < rows; k++) {
+            double v = left[k];
+            if (v == 0.0) {
+                continue;
+            }
+            int row = k * cols;
+            for (int j = 0; j < cols; j++) {
+                matrix[row + j] -= right[j] * v;
+            }
+        }
+    }
+
+    @Override
+    public void subtractRows(double[] matrix, int[] rows, int count, double[] right, int cols) {
+        for (int n = 0; n < count; n++) {
+            int row = rows[n] * cols;
+            for (int j = 0; j < cols; j++) {
+                matrix[row + j] -= right[j];
+            }
+        }
+    }
+}
@@ -0,0 +1,389 @@
+package ru.Maslov.neuralNetwork.model;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+/**
+ * Контрольная точка обучения: сеть после последней завершенной эпохи вместе с состоянием, нужным, чтобы
+ * продолжить обучение так, как если бы оно не прерывалось. Формат (порядок байт big-endian):
+ * <pre>
+ * int    сигнатура "NNCP"
+ * int    версия формата
+ * int    длина снимка сети m, byte[m] снимок сети (формат {@link NeuralNetworkSnapshot}, с весами,
+ *        размером мини-пакета и собственной контрольной суммой)
+ * int    количество потоков, между которыми делился каждый пакет
+ * int    длина описания источника обучающих данных k, byte[k] описание в UTF-8
+ * int    количество завершенных эпох n
+ * long   состояние генератора обучающих данных перед следующей эпохой
+ * long   время обучения до точки в наносекундах
+ * double[n] средние ошибки эпох
+ * int    1, если отслеживалась ранняя остановка, иначе 0; при ранней остановке далее:
+ *        double[n] ошибки на валидационном наборе, double[n] доли верных предсказаний,
+ *        double лучшая ошибка, int лучшая эпоха, int эпох без улучшения,
+ *        int 1, если записаны веса лучшей эпохи, и сами веса в порядке снимка
+ * long   контрольная сумма CRC32 всех предыдущих байт
+ * </pre>
+ * Коэффициент обучения пересчитывается по ошибке каждого примера и отдельного состояния не имеет.
+ * <p>
+ * От размера пакета, количества потоков и источника данных зависят веса следующих эпох, поэтому точка
+ * подходит только для продолжения с теми же настройками ({@link #mismatch}).
+ */
+public final class TrainingCheckpoint {
+    private static final int MAGIC = 0x4E4E4350; // "NNCP"
+    private static final int VERSION = 2;
+    private static final int MAX_DATA_SOURCE_LENGTH = 4096; // Предел длины описания источника данных в байтах
+
+    private final NeuralNetwork neuralNetwork;
+    private final int workers;
+    private final String dataSource;
+    private final long randomState;
+    private final long elapsedNanos;
+    private final double[] loss;
+    private final boolean earlyStopping;
+    private final double[] validationLoss;
+    private final double[] validationAccuracy;
+    private final double bestLoss;
+    private final int bestEpoch;
+    private final int epochsWithoutImprovement;
+    private final double[][] bestWeights; // null, если лучших весов нет
+
+    private TrainingCheckpoint(NeuralNetwork neuralNetwork, int workers, String dataSource, long randomState,
+                               long elapsedNanos, double[] loss, boolean earlyStopping, double[] validationLoss,
+                               double[] validationAccuracy, double bestLoss, int bestEpoch,
+                               int epochsWithoutImprovement, double[][] bestWeights) {
+        this.neuralNetwork = neuralNetwork;
+        this.workers = workers;
+        this.dataSource = dataSource;
+        this.randomState = randomState;
+        this.elapsedNanos = elapsedNanos;
+        this.loss = loss;
+        this.earlyStopping = earlyStopping;
+        this.validationLoss = validationLoss;
+        this.validationAccuracy = validationAccuracy;
+        this.bestLoss = bestLoss;
+        this.bestEpoch = bestEpoch;
+        this.epochsWithoutImprovement = epochsWithoutImprovement;
+        this.bestWeights = bestWeights;
+    }
+
+    /**
+     * Читает контрольную точку и проверяет ее контрольные суммы.
+     * @param path Путь к файлу контрольной точки.
+     * @return Контрольная точка.
+     * @throws IOException если файл не удалось прочитать или он поврежден.
+     */
+    public static TrainingCheckpoint read(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < 3 * Integer.BYTES + Long.BYTES || size > Integer.MAX_VALUE) {
+                throw new IOException("Неверный размер контрольной точки: " + size);
+            }
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            CRC32 crc = new CRC32();
+            crc.update(buffer.slice(0, (int) size - Long.BYTES));
+            if (crc.getValue() != buffer.getLong((int) size - Long.BYTES)) {
+                throw new IOException("Контрольная сумма контрольной точки не совпадает: " + path);
+            }
+            buffer.limit((int) size - Long.BYTES);
+            try {
+                return decode(buffer, path.toString());
+            } catch (RuntimeException e) {
+                throw new IOException("Контрольная точка повреждена: " + path, e);
+            }
+        }
+    }
+
+    /**
+     * Возвращает сеть с весами последней завершенной эпохи.
+     * @return Нейронная сеть.
+     */
+    public NeuralNetwork neuralNetwork() {
+        return neuralNetwork;
+    }
+
+    /**
+     * Возвращает количество эпох, завершенных до контрольной точки.
+     * @return Количество эпох.
+     */
+    public int completedEpochs() {
+        return loss.length;
+    }
+
+    /**
+     * Возвращает состояние генератора обучающих данных перед следующей эпохой.
+     * @return Состояние генератора, переданное при записи точки.
+     */
+    public long randomState() {
+        return randomState;
+    }
+
+    /**
+     * Проверяет, отслеживалась ли при записи точки ранняя остановка.
+     * @return true, если обучение шло с ранней остановкой.
+     */
+    public boolean earlyStopping() {
+        return earlyStopping;
+    }
+
+    /**
+     * Возвращает размер мини-пакета обучения, записавшего точку.
+     * @return Размер пакета.
+     */
+    public int batchSize() {
+        return neuralNetwork.batchSize();
+    }
+
+    /**
+     * Возвращает количество потоков, между которыми делился каждый пакет.
+     * @return Количество потоков, не больше размера пакета.
+     */
+    public int workers() {
+        return workers;
+    }
+
+    /**
+     * Возвращает описание источника обучающих данных, переданное при записи точки ({@link Checkpointing#dataSource()}).
+     * @return Описание источника.
+     */
+    public String dataSource() {
+        return dataSource;
+    }
+
+    /**
+     * Сравнивает настройки обучения с настройками, при которых записана точка. При других размере пакета,
+     * количестве потоков, источнике данных или ранней остановке продолжение дало бы другие веса, чем
+     * непрерывное обучение.
+     * @param parameters Размер пакета и количество потоков продолжения.
+     * @param earlyStopping Включена ли ранняя остановка.
+     * @param dataSource Описание источника обучающих данных или null, если источник не проверяется.
+     * @return Описание первого расхождения или null, если настройки совпадают.
+     */
+    public String mismatch(TrainingParameters parameters, boolean earlyStopping, String dataSource) {
+        if (parameters.batchSize() != batchSize()) {
+            return "размер пакета " + batchSize() + " вместо " + parameters.batchSize();
+        }
+        if (parameters.effectiveWorkers() != workers) {
+            return "потоков обучения " + workers + " вместо " + parameters.effectiveWorkers();
+        }
+        if (earlyStopping != this.earlyStopping) {
+            return this.earlyStopping ? "с ранней остановкой" : "без ранней остановки";
+        }
+        if (dataSource != null && !dataSource.equals(this.dataSource)) {
+            return "источник данных \"" + this.dataSource + "\" вместо \"" + dataSource + "\"";
+        }
+        return null;
+    }
+
+    /**
+     * Продолжает обучение с эпохи, следующей за контрольной точкой, до {@code epochs} эпох всего.
+     * Данные следующих эпох должны совпадать с теми, что получило бы непрерывное обучение (для
+     * {@link ru.Maslov.neuralNetwork.generator.FigureDataSet} — набор с состоянием {@link #randomState()}),
+     * а размер пакета, количество потоков и ранняя остановка должны быть заданы так же, как при записи точки.
+     * @param trainingData Обучающие данные.
+     * @param epochs Максимальное количество эпох, включая уже завершенные.
+     * @param parameters Размер пакета и количество потоков.
+     * @param earlyStopping Параметры ранней остановки или null.
+     * @param checkpointing Параметры следующих контрольных точек или null.
+     * @return Итоги всего обучения, включая эпохи до контрольной точки.
+     * @throws IllegalArgumentException если настройки обучения не соответствуют контрольной точке.
+     */
+    public TrainingSummary resume(Iterable<FigureImage> trainingData, int epochs, TrainingParameters parameters,
+                                  EarlyStopping earlyStopping, Checkpointing checkpointing) {
+        String mismatch = mismatch(parameters, earlyStopping != null, checkpointing != null ? checkpointing.dataSource() : null);
+        if (mismatch != null) {
+            throw new IllegalArgumentException("Контрольная точка записана с другими настройками обучения: " + mismatch);
+        }
+        return neuralNetwork.train(trainingData, epochs, parameters, earlyStopping, checkpointing, this);
+    }
+
+    /**
+     * Копирует в отслеживание сходимости историю эпох контрольной точки.
+     * @param loss Ошибки эпох, не короче {@link #completedEpochs()}.
+     * @param validationLoss Ошибки на валидационном наборе; заполняются только при ранней остановке.
+     * @param validationAccuracy Доли верных предсказаний на валидационном наборе; заполняются только при ранней остановке.
+     * @return Время обучения до точки в наносекундах.
+     */
+    long restoreHistory(double[] loss, double[] validationLoss, double[] validationAccuracy) {
+        System.arraycopy(this.loss, 0, loss, 0, this.loss.length);
+        if (earlyStopping) {
+            System.arraycopy(this.validationLoss, 0, validationLoss, 0, this.validationLoss.length);
+            System.arraycopy(this.validationAccuracy, 0, validationAccuracy, 0, this.validationAccuracy.length);
+        }
+        return elapsedNanos;
+    }
+
+    double bestLoss() {
+        return bestLoss;
+    }
+
+    int bestEpoch() {
+        return bestEpoch;
+    }
+
+    int epochsWithoutImprovement() {
+        return epochsWithoutImprovement;
+    }
+
+    double[][] bestWeights() {
+        return bestWeights;
+    }
+
+    /**
+     * Кодирует контрольную точку. Вызывается в потоке обучения между эпохами: все состояние копируется
+     * в буфер, и запись буфера на диск не зависит от продолжения обучения.
+     * @param neuralNetwork Обучаемая сеть.
+     * @param workers Количество потоков, между которыми делится каждый пакет.
+     * @param dataSource Описание источника обучающих данных.
+     * @param randomState Состояние генератора обучающих данных.
+     * @param elapsedNanos Время обучения в наносекундах.
+     * @param epochs Количество завершенных эпох: записываются первые epochs элементов истории.
+     * @param loss Ошибки эпох.
+     * @param validationLoss Ошибки на валидационном наборе или null без ранней остановки.
+     * @param validationAccuracy Доли верных предсказаний на валидационном наборе.
+     * @param bestLoss Лучшая ошибка на валидационном наборе.
+     * @param bestEpoch Лучшая эпоха.
+     * @param epochsWithoutImprovement Количество эпох без улучшения.
+     * @param bestWeights Веса лучшей эпохи или null.
+     * @return Буфер с контрольной точкой, подготовленный для чтения.
+     */
+    static ByteBuffer encode(NeuralNetwork neuralNetwork, int workers, String dataSource, long randomState,
+                             long elapsedNanos, int epochs, double[] loss, double[] validationLoss,
+                             double[] validationAccuracy, double bestLoss, int bestEpoch, int epochsWithoutImprovement,
+                             double[][] bestWeights) {
+        ByteBuffer snapshot = NeuralNetworkSnapshot.encode(neuralNetwork);
+        byte[] source = dataSource.getBytes(StandardCharsets.UTF_8);
+        if (source.length > MAX_DATA_SOURCE_LENGTH) {
+            throw new IllegalArgumentException("Слишком длинное описание источника данных: " + source.length + " байт");
+        }
+        long size = 3L * Integer.BYTES + snapshot.remaining() + 2L * Integer.BYTES + source.length
+                + Integer.BYTES + 2L * Long.BYTES
+                + (long) epochs * Double.BYTES + Integer.BYTES + Long.BYTES;
+        if (validationLoss != null) {
+            size += 2L * epochs * Double.BYTES + Double.BYTES + 3L * Integer.BYTES;
+            if (bestWeights != null) {
+                for (double[] layerWeights : bestWeights) {
+                    size += (long) layerWeights.length * Double.BYTES;
+                }
+            }
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(Math.toIntExact(size));
+        buffer.putInt(MAGIC)
+                .putInt(VERSION)
+                .putInt(snapshot.remaining())
+                .put(snapshot)
+                .putInt(workers)
+                .putInt(source.length)
+                .put(source)
+                .putInt(epochs)
+                .putLong(randomState)
+                .putLong(elapsedNanos);
+        putAll(buffer, loss, epochs);
+        buffer.putInt(validationLoss != null ? 1 : 0);
+        if (validationLoss != null) {
+            putAll(buffer, validationLoss, epochs);
+            putAll(buffer, validationAccuracy, epochs);
+            buffer.putDouble(bestLoss)
+                    .putInt(bestEpoch)
+                    .putInt(epochsWithoutImprovement)
+                    .putInt(bestWeights != null ? 1 : 0);
+            if (bestWeights != null) {
+                for (double[] layerWeights : bestWeights) {
+                    buffer.asDoubleBuffer().put(layerWeights);
+                    buffer.position(buffer.position() + layerWeights.length * Double.BYTES);
+                }
+            }
+        }
+
+        CRC32 crc = new CRC32();
+        crc.update(buffer.array(), 0, buffer.position());
+        buffer.putLong(crc.getValue());
+        return buffer.flip();
+    }
+
+    /**
+     * Разбирает контрольную точку без контрольной суммы; буфер заканчивается перед ней.
+     * @param buffer Буфер с контрольной точкой.
+     * @param source Описание источника для сообщений об ошибках.
+     * @return Контрольная точка.
+     * @throws IOException если формат не соответствует ожидаемому.
+     */
+    private static TrainingCheckpoint decode(ByteBuffer buffer, String source) throws IOException {
+        if (buffer.getInt() != MAGIC) {
+            throw new IOException("Файл не является контрольной точкой обучения: " + source);
+        }
+        int version = buffer.getInt();
+        if (version != VERSION) {
+            throw new IOException("Неподдерживаемая версия контрольной точки: " + version);
+        }
+        int snapshotSize = buffer.getInt();
+        if (snapshotSize < 0 || snapshotSize > buffer.remaining()) {
+            throw new IOException("Неверная длина снимка в контрольной точке: " + snapshotSize);
+        }
+        NeuralNetwork neuralNetwork = NeuralNetworkSnapshot.decode(buffer.slice(buffer.position(), snapshotSize), source);
+        buffer.position(buffer.position() + snapshotSize);
+
+        int workers = buffer.getInt();
+        if (workers < 1 || workers > neuralNetwork.batchSize()) {
+            throw new IOException("Неверное количество потоков обучения в контрольной точке: " + workers);
+        }
+        int sourceLength = buffer.getInt();
+        if (sourceLength < 0 || sourceLength > MAX_DATA_SOURCE_LENGTH || sourceLength > buffer.remaining()) {
+            throw new IOException("Неверная длина описания источника данных в контрольной точке: " + sourceLength);
+        }
+        byte[] dataSourceBytes = new byte[sourceLength];
+        buffer.get(dataSourceBytes);
+        String dataSource = new String(dataSourceBytes, StandardCharsets.UTF_8);
+
+        int epochs = buffer.getInt();
+        if (epochs < 0 || (long) epochs * Double.BYTES > buffer.remaining()) {
+            throw new IOException("Неверное количество эпох в контрольной точке: " + epochs);
+        }
+        long randomState = buffer.getLong();
+        long elapsedNanos = buffer.getLong();
+        double[] loss = getAll(buffer, epochs);
+        boolean earlyStopping = buffer.getInt() != 0;
+        double[] validationLoss = null;
+        double[] validationAccuracy = null;
+        double bestLoss = Double.POSITIVE_INFINITY;
+        int bestEpoch = 0;
+        int epochsWithoutImprovement = 0;
+        double[][] bestWeights = null;
+        if (earlyStopping) {
+            validationLoss = getAll(buffer, epochs);
+            validationAccuracy = getAll(buffer, epochs);
+            bestLoss = buffer.getDouble();
+            bestEpoch = buffer.getInt();
+            epochsWithoutImprovement = buffer.getInt();
+            if (buffer.getInt() != 0) {
+                double[][] weights = neuralNetwork.weights();
+                bestWeights = new double[weights.length][];
+                for (int l = 0; l < weights.length; l++) {
+                    bestWeights[l] = getAll(buffer, weights[l].length);
+                }
+            }
+        }
+        if (buffer.hasRemaining()) {
+            throw new IOException("Лишние байты в контрольной точке: " + buffer.remaining());
+        }
+        return new TrainingCheckpoint(neuralNetwork, workers, dataSource, randomState, elapsedNanos, loss, earlyStopping,
+                validationLoss, validationAccuracy, bestLoss, bestEpoch, epochsWithoutImprovement, bestWeights);
+    }
+
+    private static void putAll(ByteBuffer buffer, double[] values, int count) {
+        buffer.asDoubleBuffer().put(values, 0, count);
+        buffer.position(buffer.position() + count * Double.BYTES);
+    }
+
+    private static double[] getAll(ByteBuffer buffer, int count) {
+        double[] values = new double[count];
+        buffer.asDoubleBuffer().get(values);
+        buffer.position(buffer.position() + count * Double.BYTES);
+        return values;
+    }
+}
@@ -0,0 +1,36 @@
+package ru.Maslov.neuralNetwork.model;
+
+/**
+ * Параметры мини-пакетного обучения нейронной сети.
+ * При размере пакета 1 обучение выполняется классическим стохастическим градиентным спуском
+ * с обновлением весов после каждого примера.
+ *
+ * @param batchSize количество примеров, градиенты которых суммируются до одного обновления весов
+ * @param workers   количество потоков, между которыми делится каждый пакет
+ */
+public record TrainingParameters(int batchSize, int workers) {
+
+    /**
+     * Параметры последовательного обучения: пакет из одного примера, один поток.
+     */
+    public static final TrainingParameters SEQUENTIAL = new TrainingParameters(1, 1);
+
+    public TrainingParameters {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("Размер пакета должен быть положительным: " + batchSize);
+        }
+        if (workers < 1) {
+            throw new IllegalArgumentException("Количество потоков должно быть положительным: " + workers);
+        }
+    }
+
+    /**
+     * Возвращает количество потоков, которые действительно получают части пакета: пакет не делится
+     * на части меньше одного примера.
+     *
+     * @return количество потоков, не больше размера пакета.
+     */
+    public int effectiveWorkers() {
+        return Math.min(workers, batchSize);
+    }
+}
@@ -0,0 +1,29 @@
+package ru.Maslov.neuralNetwork.model;
+
+import java.time.Duration;
+
+/**
+ * Итоги обучения нейронной сети.
+ *
+ * @param epochs             количество выполненных эпох
+ * @param loss               средняя ошибка на обучающих примерах каждой эпохи, вычисленная во время эпохи
+ * @param validationLoss     средняя ошибка на валидационном наборе после каждой эпохи; пустой массив без ранней остановки
+ * @param validationAccuracy доля верных предсказаний на валидационном наборе после каждой эпохи;
+ *                           пустой массив без ранней остановки
+ * @param bestEpoch          номер эпохи (начиная с 1), веса которой остались в сети; без ранней остановки — последняя эпоха
+ * @param stoppedEarly       остановлено ли обучение раньше заданного количества эпох
+ * @param wallTime           длительность обучения, включая оценку на валидационном наборе
+ */
+public record TrainingSummary(int epochs, double[] loss, double[] validationLoss,
+                              double[] validationAccuracy, int bestEpoch, boolean stoppedEarly,
+                              Duration wallTime) {
+
+    /**
+     * Возвращает среднюю ошибку на обучающих примерах последней эпохи.
+     *
+     * @return ошибка последней эпохи; NaN, если эпох не было.
+     */
+    public double finalLoss() {
+        return loss.length == 0 ? Double.NaN : loss[loss.length - 1];
+    }
+}
@@ -0,0 +1,195 @@
+package ru.Maslov.neuralNetwork.service;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import ru.Maslov.neuralNetwork.metrics.NeuralNetworkMetrics;
+import ru.Maslov.neuralNetwork.model.FigureImage;
+import ru.Maslov.neuralNetwork.model.FigureType;
+import ru.Maslov.neuralNetwork.model.NeuralNetwork;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Сервис BulkScoringService выполняет потоковые массовые предсказания в формате NDJSON: каждая строка
+ * входного потока содержит изображение фигуры в том же JSON, что и тело POST /, а в выходной поток
+ * для каждой строки пишется строка с номером изображения, предсказанным типом и выходами сети.
+ * <p>
+ * Изображения читаются частями по {@code chunkSize} строк, каждая часть проходит через сеть одним
+ * пакетным прямым проходом ({@link NeuralNetwork#scoresBatch}), результаты записываются и сбрасываются
+ * в выходной поток до чтения следующей части. Поэтому в памяти одновременно находится не больше одной
+ * части независимо от размера входа, а следующая часть не читается, пока клиент не принял результаты
+ * предыдущей: медленный получатель через буферы TCP замедляет и отправку входа.
+ * <p>
+ * Все изображения одного потока оцениваются одной версией модели, переданной вызывающим.
+ */
+@Service
+public class BulkScoringService {
+    public static final String BATCH_ENDPOINT = "bulk"; // Метка размера пакета в neural.network.batch.size
+
+    private static final FigureType[] FIGURE_TYPES = FigureType.values();
+
+    private final NeuralNetworkMetrics metrics;
+    private final InferenceLimiter inferenceLimiter;
+    private final ObjectMapper objectMapper;
+    private final ObjectReader reader;
+    private final int chunkSize;
+
+    /**
+     * Конструктор сервиса BulkScoringService.
+     *
+     * @param metrics метрики сервиса.
+     * @param inferenceLimiter ограничение одновременных вычислений в потоках запросов.
+     * @param objectMapper ObjectMapper приложения.
+     * @param chunkSize количество изображений, проходящих через сеть за один пакетный проход.
+     */
+    @Autowired
+    public BulkScoringService(NeuralNetworkMetrics metrics,
+                              InferenceLimiter inferenceLimiter,
+                              ObjectMapper objectMapper,
+                              @Value("${neural-network.serving.bulk.chunk-size:256}") int chunkSize) {
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("Размер части должен быть положительным: " + chunkSize);
+        }
+        this.metrics = metrics;
+        this.inferenceLimiter = inferenceLimiter;
+        this.objectMapper = objectMapper;
+        this.reader = objectMapper.readerFor(FigureImage.class);
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * Оценивает все изображения входного потока и пишет результаты в выходной поток.
+     * <p>
+     * Выходная строка: {@code {"index":0,"result":"SQUARE","scores":{"SQUARE":0.98,"CIRCLE":0.01,"TRIANGLE":0.02}}},
+     * где index — номер непустой строки входа, начиная с 0; строки результатов идут в порядке входа. Если строку
+     * не удалось разобрать или изображение не подходит по размеру, вместо результата пишется
+     * {@code {"index":1,"error":"..."}}, и обработка продолжается.
+     *
+     * @param model версия модели, оценивающая изображения.
+     * @param input входной поток строк NDJSON в UTF-8.
+     * @param output выходной поток строк NDJSON.
+     * @return количество оцененных изображений.
+     * @throws IOException при ошибке чтения входа или записи результатов.
+     */
+    public long score(VersionedNeuralNetwork model, InputStream input, OutputStream output) throws IOException {
+        NeuralNetwork neuralNetwork = model.neuralNetwork();
+        List<FigureImage> figures = new ArrayList<>(chunkSize);
+        long[] indexes = new long[chunkSize];
+        double[] scores = new double[chunkSize * FIGURE_TYPES.length];
+        long index = 0;
+        long scored = 0;
+
+        BufferedReader lines = new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8));
+        try (JsonGenerator generator = objectMapper.getFactory().createGenerator(output, JsonEncoding.UTF8)) {
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            generator.setRootValueSeparator(null); // Строки разделяются переводом строки, а не пробелом
+            String line;
+            while ((line = lines.readLine()) != null) {
+                if (line.isBlank()) {
+                    continue;
+                }
+                long lineIndex = index++;
+                FigureImage figure;
+                String error;
+                try {
+                    figure = reader.readValue(line); // null для строки с литералом null
+                    error = figure != null && figure.image() != null && neuralNetwork.supports(figure.image()) ? null
+                            : "Изображение не подходит по размеру ко входному слою сети";
+                } catch (JsonProcessingException e) {
+                    figure = null;
+                    error = "Некорректная строка: " + e.getOriginalMessage();
+                }
+                if (error != null) {
+                    scored += scoreChunk(neuralNetwork, figures, indexes, scores, generator); // Сохраняет порядок строк
+                    writeError(generator, lineIndex, error);
+                    continue;
+                }
+                indexes[figures.size()] = lineIndex;
+                figures.add(figure);
+                if (figures.size() == chunkSize) {
+                    scored += scoreChunk(neuralNetwork, figures, indexes, scores, generator);
+                }
+            }
+            scored += scoreChunk(neuralNetwork, figures, indexes, scores, generator);
+        }
+        return scored;
+    }
+
+    /**
+     * Оценивает накопленную часть изображений, пишет результаты и сбрасывает их клиенту.
+     *
+     * @param neuralNetwork нейронная сеть.
+     * @param figures изображения части; список очищается.
+     * @param indexes номера строк изображений части.
+     * @param scores переиспользуемый массив выходов сети.
+     * @param generator генератор выходного потока.
+     * @return количество оцененных изображений.
+     * @throws IOException при ошибке записи результатов.
+     */
+    private int scoreChunk(NeuralNetwork neuralNetwork, List<FigureImage> figures, long[] indexes, double[] scores,
+                           JsonGenerator generator) throws IOException {
+        int count = figures.size();
+        if (count > 0) {
+            long start = System.nanoTime();
+            inferenceLimiter.run(() -> neuralNetwork.scoresBatch(figures, scores));
+            metrics.recordPhase(NeuralNetworkMetrics.PHASE_FORWARD, BATCH_ENDPOINT, System.nanoTime() - start);
+            metrics.recordBatchSize(BATCH_ENDPOINT, count);
+
+            int outputs = FIGURE_TYPES.length;
+            for (int n = 0; n < count; n++) {
+                int offset = n * outputs;
+                int best = offset;
+                for (int i = offset + 1; i < offset + outputs; i++) {
+                    if (scores[i] > scores[best]) {
+                        best = i;
+                    }
+                }
+                FigureType figureType = FIGURE_TYPES[best - offset];
+                metrics.countPrediction(figureType);
+
+                generator.writeStartObject();
+                generator.writeNumberField("index", indexes[n]);
+                generator.writeStringField("result", figureType.name());
+                generator.writeObjectFieldStart("scores");
+                for (int i = 0; i < outputs; i++) {
+                    generator.writeNumberField(FIGURE_TYPES[i].name(), scores[offset + i]);
+                }
+                generator.writeEndObject();
+                generator.writeEndObject();
+                generator.writeRaw('\n');
+            }
+            figures.clear();
+        }
+        generator.flush();
+        return count;
+    }
+
+    /**
+     * Пишет строку с ошибкой обработки изображения.
+     *
+     * @param generator генератор выходного потока.
+     * @param index номер строки входа.
+     * @param message описание ошибки.
+     * @throws IOException при ошибке записи.
+     */
+    private void writeError(JsonGenerator generator, long index, String message) throws IOException {
+        generator.writeStartObject();
+        generator.writeNumberField("index", index);
+        generator.writeStringField("error", message);
+        generator.writeEndObject();
+        generator.writeRaw('\n');
+    }
+}
@@ -0,0 +1,167 @@
+package ru.Maslov.neuralNetwork.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import ru.Maslov.neuralNetwork.model.FigureClassifier;
+import ru.Maslov.neuralNetwork.model.FigureImage;
+import ru.Maslov.neuralNetwork.model.FigureType;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.function.Supplier;
+
+/**
+ * Класс InferenceLimiter ограничивает количество одновременных прямых проходов сети, выполняемых
+ * в потоках запросов.
+ * <p>
+ * На виртуальных потоках (Java 21, {@code spring.threads.virtual.enabled=true}) каждый запрос получает
+ * собственный поток, и без ограничения все одновременные запросы вычислялись бы разом, вытесняя друг друга
+ * с ядер. Ожидающий разрешения виртуальный поток паркуется и не занимает поток ОС, поэтому соединений
+ * может быть сколько угодно, а вычислений — не больше, чем ядер.
+ * <p>
+ * Если ограничение не задано явно, оно равно количеству процессоров при включенных виртуальных потоках
+ * и отсутствует на пуле потоков платформы, размер которого и так ограничен.
+ * <p>
+ * Буферы прямого прохода сети принадлежат потоку, а виртуальный поток создается на каждый запрос и выделял бы
+ * их заново. Поэтому при ограничении одиночные предсказания ({@link #predict(FigureClassifier, FigureImage)})
+ * берут буферы из пула по одному на разрешение: буферы выдаются вместе с разрешением и возвращаются при его
+ * освобождении, так что свободный набор буферов есть всегда, а новые выделяются только для новой версии модели.
+ */
+@Slf4j
+@Component
+public class InferenceLimiter {
+    private static final int VIRTUAL_THREADS_MIN_JAVA = 21;
+
+    private final Semaphore permits; // null, если ограничения нет
+    private final ArrayBlockingQueue<Slot> slots; // Буферы предсказаний, по одному на разрешение; null, если ограничения нет
+    private final int maxConcurrency;
+
+    /**
+     * Конструктор класса InferenceLimiter.
+     *
+     * @param maxConcurrency максимальное количество одновременных вычислений; 0 — по количеству процессоров
+     *                       на виртуальных потоках и без ограничения на потоках платформы.
+     * @param virtualThreads включены ли виртуальные потоки Spring Boot.
+     */
+    @Autowired
+    public InferenceLimiter(@Value("${neural-network.serving.inference.max-concurrency:0}") int maxConcurrency,
+                            @Value("${spring.threads.virtual.enabled:false}") boolean virtualThreads) {
+        if (maxConcurrency < 0) {
+            throw new IllegalArgumentException("Недопустимое ограничение одновременных вычислений: " + maxConcurrency);
+        }
+        boolean virtualThreadsActive = virtualThreads && Runtime.version().feature() >= VIRTUAL_THREADS_MIN_JAVA;
+        if (virtualThreads && !virtualThreadsActive) {
+            log.warn("Виртуальные потоки требуют Java {}, запущено на Java {}: запросы обслуживает пул потоков платформы",
+                    VIRTUAL_THREADS_MIN_JAVA, Runtime.version().feature());
+        }
+        if (maxConcurrency == 0 && virtualThreadsActive) {
+            maxConcurrency = Runtime.getRuntime().availableProcessors();
+        }
+        this.maxConcurrency = maxConcurrency;
+        this.permits = maxConcurrency > 0 ? new Semaphore(maxConcurrency, true) : null;
+        this.slots = maxConcurrency > 0 ? new ArrayBlockingQueue<>(maxConcurrency) : null;
+        for (int i = 0; i < maxConcurrency; i++) {
+            slots.add(new Slot());
+        }
+        if (permits != null) {
+            log.info("Одновременных вычислений сети в потоках запросов: не больше {}", maxConcurrency);
+        }
+    }
+
+    /**
+     * Возвращает ограничение одновременных вычислений.
+     *
+     * @return максимальное количество одновременных вычислений; 0, если ограничения нет.
+     */
+    public int maxConcurrency() {
+        return maxConcurrency;
+    }
+
+    /**
+     * Предсказывает тип фигуры, дождавшись разрешения. При ограничении предсказание выполняется в буферах из пула,
+     * а не в буферах потока, поэтому не выделяет память и в потоке, созданном для этого запроса.
+     *
+     * @param classifier модель, выполняющая предсказание.
+     * @param figure изображение фигуры.
+     * @return предсказанный тип фигуры.
+     * @throws IllegalStateException если поток прерван во время ожидания разрешения.
+     */
+    public FigureType predict(FigureClassifier classifier, FigureImage figure) {
+        if (permits == null) {
+            return classifier.predict(figure); // Потоки платформы переиспользуются вместе со своими буферами
+        }
+        acquire();
+        Slot slot = slots.poll(); // Свободных буферов не меньше, чем свободных разрешений
+        try {
+            return slot.predictor(classifier).predict(figure);
+        } finally {
+            slots.add(slot);
+            permits.release();
+        }
+    }
+
+    /**
+     * Выполняет вычисление, дождавшись разрешения.
+     *
+     * @param task вычисление.
+     * @param <T> тип результата.
+     * @return результат вычисления.
+     * @throws IllegalStateException если поток прерван во время ожидания разрешения.
+     */
+    public <T> T call(Supplier<T> task) {
+        if (permits == null) {
+            return task.get();
+        }
+        acquire();
+        try {
+            return task.get();
+        } finally {
+            permits.release();
+        }
+    }
+
+    /**
+     * Выполняет вычисление без результата, дождавшись разрешения.
+     *
+     * @param task вычисление.
+     */
+    public void run(Runnable task) {
+        call(() -> {
+            task.run();
+            return null;
+        });
+    }
+
+    /**
+     * Дожидается разрешения на вычисление.
+     *
+     * @throws IllegalStateException если поток прерван во время ожидания разрешения.
+     */
+    private void acquire() {
+        try {
+            permits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Ожидание вычисления прервано", e);
+        }
+    }
+
+    /**
+     * Буферы предсказаний, выдаваемые вместе с одним разрешением. Предсказатель создается для последней модели,
+     * с которой работали эти буферы, и пересоздается при переходе на другую модель.
+     */
+    private static final class Slot {
+        private FigureClassifier classifier;
+        private FigureClassifier.Predictor predictor;
+
+        private FigureClassifier.Predictor predictor(FigureClassifier classifier) {
+            if (this.classifier != classifier) {
+                this.predictor = classifier.newPredictor();
+                this.classifier = classifier;
+            }
+            return predictor;
+        }
+    }
+}
@@ -0,0 +1,170 @@
+package ru.Maslov.neuralNetwork.service;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import ru.Maslov.neuralNetwork.metrics.NeuralNetworkMetrics;
+import ru.Maslov.neuralNetwork.model.FigureImage;
+import ru.Maslov.neuralNetwork.model.NeuralNetwork;
+import ru.Maslov.neuralNetwork.model.QuantizedNeuralNetwork;
+import ru.Maslov.neuralNetwork.model.TrainingParameters;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Сервис NeuralNetworkService хранит текущую версию нейронной сети и дообучает ее на размеченных
+ * изображениях, присланных клиентами.
+ * <p>
+ * Размеченные изображения накапливаются в ограниченном буфере. Фоновый поток периодически забирает
+ * их, дообучает копию текущей сети и публикует ее атомарной заменой ссылки. Потоки, выполняющие
+ * предсказания, читают ссылку без блокировок и всегда видят полностью обученную версию.
+ * <p>
+ * Если включено квантованное обслуживание, вместе с каждой версией публикуется ее 8-битная копия
+ * ({@link QuantizedNeuralNetwork}), и предсказания выполняет она. Сети, которые нельзя квантовать
+ * (функция активации скрытых слоев отличается от сигмоиды), обслуживаются без квантования.
+ */
+@Slf4j
+@Service
+public class NeuralNetworkService {
+    private final AtomicReference<VersionedNeuralNetwork> current;
+    private final BlockingQueue<FigureImage> feedback;
+    private final ScheduledExecutorService trainer;
+    private final NeuralNetworkMetrics metrics;
+    private final int minSamples;
+    private final int epochs;
+    private final int batchSize;
+    private final boolean quantizedServing;
+
+    /**
+     * Конструктор сервиса NeuralNetworkService.
+     *
+     * @param neuralNetwork исходная обученная нейронная сеть (версия 1).
+     * @param metrics метрики сервиса.
+     * @param bufferCapacity максимальное количество ожидающих дообучения изображений.
+     * @param minSamples минимальное количество изображений для запуска дообучения.
+     * @param epochs количество эпох дообучения.
+     * @param batchSize размер мини-пакета дообучения.
+     * @param intervalMs период проверки буфера фоновым потоком в миллисекундах.
+     * @param quantizedServing выполнять ли предсказания квантованной копией сети.
+     */
+    @Autowired
+    public NeuralNetworkService(NeuralNetwork neuralNetwork,
+                                NeuralNetworkMetrics metrics,
+                                @Value("${neural-network.fine-tuning.buffer-capacity:10000}") int bufferCapacity,
+                                @Value("${neural-network.fine-tuning.min-samples:32}") int minSamples,
+                                @Value("${neural-network.fine-tuning.epochs:5}") int epochs,
+                                @Value("${neural-network.fine-tuning.batch-size:1}") int batchSize,
+                                @Value("${neural-network.fine-tuning.interval-ms:10000}") long intervalMs,
+                                @Value("${neural-network.serving.quantized:false}") boolean quantizedServing) {
+        if (quantizedServing && !neuralNetwork.topology().supportsQuantization()) {
+            log.warn("Квантованное обслуживание недоступно для функции активации {}, предсказания выполняет исходная сеть",
+                    neuralNetwork.topology().hiddenActivation());
+        }
+        this.quantizedServing = quantizedServing && neuralNetwork.topology().supportsQuantization();
+        this.current = new AtomicReference<>(version(1, neuralNetwork));
+        this.feedback = new ArrayBlockingQueue<>(bufferCapacity);
+        this.minSamples = minSamples;
+        this.epochs = epochs;
+        this.batchSize = batchSize;
+        this.metrics = metrics;
+        metrics.registerModelVersion(() -> current().version());
+        this.trainer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "neural-network-fine-tuning");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.trainer.scheduleWithFixedDelay(this::fineTune, intervalMs, intervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Возвращает текущую опубликованную версию нейронной сети. Не блокирует.
+     *
+     * @return текущая версия сети.
+     */
+    public VersionedNeuralNetwork current() {
+        return current.get();
+    }
+
+    /**
+     * Добавляет размеченные изображения в буфер дообучения.
+     * Изображения, не поместившиеся в заполненный буфер, отбрасываются.
+     *
+     * @param figureImages размеченные изображения.
+     * @return количество принятых изображений.
+     */
+    public int submitFeedback(List<FigureImage> figureImages) {
+        int accepted = 0;
+        for (FigureImage figureImage : figureImages) {
+            if (!feedback.offer(figureImage)) {
+                break;
+            }
+            accepted++;
+        }
+        return accepted;
+    }
+
+    /**
+     * Проверяет, может ли изображение использоваться для дообучения: оно должно быть размечено
+     * и подходить по размеру ко входному слою сети.
+     *
+     * @param figureImage изображение фигуры.
+     * @return true, если изображение пригодно для дообучения.
+     */
+    public boolean isValidFeedback(FigureImage figureImage) {
+        return figureImage != null && figureImage.figureType() != null
+                && current().neuralNetwork().supports(figureImage.image());
+    }
+
+    /**
+     * Дообучает копию текущей сети на накопленных изображениях и публикует ее как новую версию.
+     * Выполняется только в фоновом потоке, поэтому новая версия публикуется единственным писателем.
+     */
+    private void fineTune() {
+        if (feedback.size() < minSamples) {
+            return;
+        }
+        List<FigureImage> samples = new ArrayList<>(feedback.size());
+        feedback.drainTo(samples);
+
+        try {
+            VersionedNeuralNetwork base = current.get();
+            NeuralNetwork candidate = base.neuralNetwork().copy();
+            long start = System.nanoTime();
+            candidate.train(samples, epochs, new TrainingParameters(batchSize, 1));
+            metrics.recordTraining("fine-tuning", Duration.ofNanos(System.nanoTime() - start), candidate.meanError(samples));
+            current.set(version(base.version() + 1, candidate));
+            log.info("Опубликована версия {} нейронной сети, дообученная на {} изображениях", base.version() + 1, samples.size());
+        } catch (RuntimeException e) {
+            log.error("Ошибка дообучения нейронной сети", e);
+        }
+    }
+
+    /**
+     * Создает запись версии сети, квантуя сеть, если включено квантованное обслуживание.
+     *
+     * @param version номер версии.
+     * @param neuralNetwork обученная сеть.
+     * @return версия сети.
+     */
+    private VersionedNeuralNetwork version(long version, NeuralNetwork neuralNetwork) {
+        return new VersionedNeuralNetwork(version, neuralNetwork, quantizedServing ? neuralNetwork.quantize() : null);
+    }
+
+    /**
+     * Останавливает фоновый поток дообучения.
+     */
+    @PreDestroy
+    public void shutdown() {
+        trainer.shutdownNow();
+    }
+}
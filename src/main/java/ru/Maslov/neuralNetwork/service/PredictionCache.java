@@ -0,0 +1,328 @@
+package ru.Maslov.neuralNetwork.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import ru.Maslov.neuralNetwork.metrics.NeuralNetworkMetrics;
+import ru.Maslov.neuralNetwork.model.BitImage;
+import ru.Maslov.neuralNetwork.model.FigureType;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Кэш предсказаний для изображений не больше 64 пикселей: все пиксели такого изображения помещаются
+ * в одно слово {@code long}, которое и служит ключом. Ключи и результаты хранятся в примитивных массивах
+ * без упаковки в объекты.
+ * <p>
+ * Кэш разделен на сегменты по хешу ключа. Каждый сегмент — таблица с открытой адресацией и линейным
+ * пробированием, заполненная не больше чем наполовину. Когда сегмент заполнен, вытесняется запись,
+ * выбранная алгоритмом «часы»: стрелка обходит записи, снимая признак обращения, и вытесняет первую
+ * запись без него. Чтение выполняется без блокировки (оптимистичное чтение {@link StampedLock}) и повторяется
+ * под блокировкой чтения, только если сегмент одновременно изменялся; признак обращения — подсказка
+ * для вытеснения и записывается без блокировки.
+ * <p>
+ * Каждый сегмент помнит версию модели, предсказания которой он хранит. Чтение с другой версией — промах,
+ * а запись предсказания более новой версии очищает сегмент, поэтому после публикации новой версии модели
+ * кэш не возвращает предсказания старой.
+ */
+@Slf4j
+@Component
+public class PredictionCache {
+    private final Segment[] segments; // null, если кэш выключен
+    private final int segmentMask;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * Конструктор класса PredictionCache.
+     *
+     * @param metrics метрики сервиса.
+     * @param enabled включен ли кэш.
+     * @param capacity максимальное количество записей.
+     * @param segmentCount количество сегментов, округляется вверх до степени двойки.
+     */
+    @Autowired
+    public PredictionCache(NeuralNetworkMetrics metrics,
+                           @Value("${neural-network.serving.cache.enabled:false}") boolean enabled,
+                           @Value("${neural-network.serving.cache.capacity:16384}") int capacity,
+                           @Value("${neural-network.serving.cache.segments:16}") int segmentCount) {
+        if (!enabled) {
+            this.segments = null;
+            this.segmentMask = 0;
+            return;
+        }
+        if (capacity < 1 || segmentCount < 1 || segmentCount > capacity) {
+            throw new IllegalArgumentException("Недопустимые параметры кэша предсказаний: емкость " + capacity
+                    + ", сегментов " + segmentCount);
+        }
+        int count = Integer.highestOneBit(segmentCount - 1) << 1;
+        count = Math.max(1, Math.min(count, Integer.highestOneBit(capacity)));
+        this.segments = new Segment[count];
+        this.segmentMask = count - 1;
+        int segmentCapacity = (capacity + count - 1) / count;
+        for (int i = 0; i < count; i++) {
+            segments[i] = new Segment(segmentCapacity);
+        }
+        metrics.registerPredictionCache(hits::sum, misses::sum, evictions::sum, this::size);
+        log.info("Кэш предсказаний включен: до {} записей в {} сегментах", segmentCapacity * count, count);
+    }
+
+    /**
+     * Проверяет, включен ли кэш.
+     *
+     * @return true, если кэш включен.
+     */
+    public boolean isEnabled() {
+        return segments != null;
+    }
+
+    /**
+     * Ищет предсказание изображения, сделанное заданной версией модели.
+     *
+     * @param version версия модели.
+     * @param image изображение; размер должен соответствовать входному слою модели.
+     * @return сохраненный тип фигуры или null, если кэш выключен, изображение больше 64 пикселей
+     * или предсказания нет в кэше.
+     */
+    public FigureType get(long version, BitImage image) {
+        if (segments == null || image.wordCount() != 1) {
+            return null;
+        }
+        long key = image.word(0);
+        long hash = hash(key);
+        FigureType figureType = segments[segment(hash)].get(version, key, (int) hash);
+        if (figureType == null) {
+            misses.increment();
+        } else {
+            hits.increment();
+        }
+        return figureType;
+    }
+
+    /**
+     * Сохраняет предсказание изображения, сделанное заданной версией модели. Предсказания версий старше той,
+     * что уже хранится в сегменте, не сохраняются.
+     *
+     * @param version версия модели.
+     * @param image изображение; размер должен соответствовать входному слою модели.
+     * @param figureType предсказанный тип фигуры.
+     */
+    public void put(long version, BitImage image, FigureType figureType) {
+        if (segments == null || image.wordCount() != 1) {
+            return;
+        }
+        long key = image.word(0);
+        long hash = hash(key);
+        if (segments[segment(hash)].put(version, key, (int) hash, figureType)) {
+            evictions.increment();
+        }
+    }
+
+    /**
+     * Возвращает количество записей в кэше.
+     *
+     * @return количество записей; 0, если кэш выключен.
+     */
+    public int size() {
+        if (segments == null) {
+            return 0;
+        }
+        int size = 0;
+        for (Segment segment : segments) {
+            size += segment.size();
+        }
+        return size;
+    }
+
+    private int segment(long hash) {
+        return (int) (hash >>> 32) & segmentMask;
+    }
+
+    /**
+     * Перемешивает биты ключа (финализатор MurmurHash3), чтобы соседние изображения попадали в разные ячейки.
+     *
+     * @param key ключ.
+     * @return хеш ключа.
+     */
+    static long hash(long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        key *= 0xc4ceb9fe1a85ec53L;
+        key ^= key >>> 33;
+        return key;
+    }
+
+    /**
+     * Сегмент кэша: таблица с открытой адресацией под собственной блокировкой.
+     */
+    private static final class Segment {
+        private static final FigureType[] FIGURE_TYPES = FigureType.values();
+
+        private final StampedLock lock = new StampedLock();
+        private final long[] keys;
+        private final byte[] values; // Порядковый номер типа фигуры + 1; 0 — пустая ячейка
+        private final byte[] referenced; // Признак обращения для вытеснения «часами»
+        private final int mask;
+        private final int capacity;
+        private int size;
+        private int hand; // Стрелка «часов»
+        private long version;
+
+        private Segment(int capacity) {
+            int length = Integer.highestOneBit(Math.max(1, capacity) * 2 - 1) << 1;
+            this.keys = new long[length];
+            this.values = new byte[length];
+            this.referenced = new byte[length];
+            this.mask = length - 1;
+            this.capacity = capacity;
+        }
+
+        /**
+         * Ищет запись без блокировки и повторяет поиск под блокировкой чтения, если сегмент изменялся.
+         */
+        private FigureType get(long version, long key, int hash) {
+            long stamp = lock.tryOptimisticRead();
+            int found = find(version, key, hash);
+            if (!lock.validate(stamp)) {
+                stamp = lock.readLock();
+                try {
+                    found = find(version, key, hash);
+                } finally {
+                    lock.unlockRead(stamp);
+                }
+            }
+            if (found < 0) {
+                return null;
+            }
+            int slot = found >>> 8;
+            referenced[slot] = 1;
+            return FIGURE_TYPES[(found & 0xFF) - 1];
+        }
+
+        /**
+         * Сохраняет запись под блокировкой записи.
+         *
+         * @return true, если для записи пришлось вытеснить другую.
+         */
+        private boolean put(long version, long key, int hash, FigureType figureType) {
+            long stamp = lock.writeLock();
+            try {
+                if (version < this.version) {
+                    return false;
+                }
+                if (version > this.version) {
+                    Arrays.fill(values, (byte) 0);
+                    Arrays.fill(referenced, (byte) 0);
+                    size = 0;
+                    this.version = version;
+                }
+                byte value = (byte) (figureType.ordinal() + 1);
+                int slot = hash & mask;
+                while (values[slot] != 0) {
+                    if (keys[slot] == key) {
+                        values[slot] = value;
+                        return false;
+                    }
+                    slot = (slot + 1) & mask;
+                }
+                boolean evicted = false;
+                if (size == capacity) {
+                    evict();
+                    evicted = true;
+                    slot = hash & mask; // Вытеснение сдвигает записи, свободная ячейка ищется заново
+                    while (values[slot] != 0) {
+                        slot = (slot + 1) & mask;
+                    }
+                }
+                keys[slot] = key;
+                values[slot] = value;
+                referenced[slot] = 0;
+                size++;
+                return evicted;
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+
+        private int size() {
+            long stamp = lock.readLock();
+            try {
+                return size;
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+
+        /**
+         * Ищет ключ в таблице. Может выполняться без блокировки, поэтому обход ограничен длиной таблицы.
+         *
+         * @return номер ячейки, сдвинутый на 8 бит, вместе со значением в младших битах; -1, если записи нет.
+         */
+        private int find(long version, long key, int hash) {
+            if (this.version != version) {
+                return -1;
+            }
+            int slot = hash & mask;
+            for (int probe = 0; probe <= mask; probe++) {
+                byte value = values[slot];
+                if (value == 0) {
+                    return -1;
+                }
+                if (keys[slot] == key) {
+                    return slot << 8 | value;
+                }
+                slot = (slot + 1) & mask;
+            }
+            return -1;
+        }
+
+        /**
+         * Вытесняет запись алгоритмом «часы». Вызывается под блокировкой записи при заполненном сегменте.
+         */
+        private void evict() {
+            while (true) {
+                int slot = hand;
+                hand = (hand + 1) & mask;
+                if (values[slot] == 0) {
+                    continue;
+                }
+                if (referenced[slot] != 0) {
+                    referenced[slot] = 0;
+                    continue;
+                }
+                remove(slot);
+                return;
+            }
+        }
+
+        /**
+         * Удаляет запись, сдвигая назад следующие за ней записи той же цепочки пробирования,
+         * чтобы поиск не обрывался на освободившейся ячейке.
+         */
+        private void remove(int slot) {
+            int hole = slot;
+            int next = slot;
+            while (true) {
+                next = (next + 1) & mask;
+                if (values[next] == 0) {
+                    break;
+                }
+                int home = (int) hash(keys[next]) & mask;
+                if (((next - home) & mask) >= ((next - hole) & mask)) {
+                    keys[hole] = keys[next];
+                    values[hole] = values[next];
+                    referenced[hole] = referenced[next];
+                    hole = next;
+                }
+            }
+            values[hole] = 0;
+            referenced[hole] = 0;
+            size--;
+        }
+    }
+}
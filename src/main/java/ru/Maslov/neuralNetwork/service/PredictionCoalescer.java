@@ -0,0 +1,273 @@
+package ru.Maslov.neuralNetwork.service;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import ru.Maslov.neuralNetwork.metrics.NeuralNetworkMetrics;
+import ru.Maslov.neuralNetwork.model.FigureImage;
+import ru.Maslov.neuralNetwork.model.FigureType;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Сервис PredictionCoalescer выполняет одиночные предсказания POST / и при включенном объединении
+ * собирает одновременные запросы в пакеты.
+ * <p>
+ * Запросы ставятся в ограниченную очередь. Рабочий поток забирает первый запрос и ждет следующие,
+ * пока пакет не заполнится или с момента поступления первого запроса не пройдет заданное время; затем
+ * весь пакет проходит через сеть одним пакетным прямым проходом ({@code predictBatch}), и каждому
+ * вызывающему завершается его {@link CompletableFuture}. Строки весов читаются один раз на пакет,
+ * а не на каждое изображение, и потоки сервлета не заняты вычислениями.
+ * <p>
+ * Если очередь заполнена, предсказание выполняется в вызывающем потоке. Без объединения каждое
+ * предсказание выполняется сразу в вызывающем потоке.
+ * <p>
+ * Если включен {@link PredictionCache}, предсказание сначала ищется в кэше для текущей версии модели,
+ * и при попадании сеть не вычисляется; вычисленные предсказания сохраняются в кэш.
+ */
+@Slf4j
+@Service
+public class PredictionCoalescer {
+    public static final String BATCH_ENDPOINT = "predict"; // Метка размера пакета в neural.network.batch.size
+
+    private final NeuralNetworkService neuralNetworkService;
+    private final NeuralNetworkMetrics metrics;
+    private final PredictionCache cache;
+    private final InferenceLimiter inferenceLimiter;
+    private final boolean enabled;
+    private final int maxBatchSize;
+    private final long maxWaitNanos;
+    private final BlockingQueue<PendingPrediction> queue;
+    private final List<Thread> workers = new ArrayList<>();
+
+    /**
+     * Конструктор сервиса PredictionCoalescer.
+     *
+     * @param neuralNetworkService сервис, предоставляющий текущую версию нейронной сети.
+     * @param metrics метрики сервиса.
+     * @param cache кэш предсказаний.
+     * @param inferenceLimiter ограничение одновременных вычислений в потоках запросов.
+     * @param enabled объединять ли одновременные запросы в пакеты.
+     * @param maxBatchSize максимальное количество изображений в пакете.
+     * @param maxWaitMicros максимальное время ожидания пакета с момента поступления первого запроса, в микросекундах.
+     * @param queueCapacity емкость очереди ожидающих запросов.
+     * @param workerCount количество рабочих потоков, формирующих и вычисляющих пакеты.
+     */
+    @Autowired
+    public PredictionCoalescer(NeuralNetworkService neuralNetworkService,
+                               NeuralNetworkMetrics metrics,
+                               PredictionCache cache,
+                               InferenceLimiter inferenceLimiter,
+                               @Value("${neural-network.serving.batching.enabled:false}") boolean enabled,
+                               @Value("${neural-network.serving.batching.max-batch-size:64}") int maxBatchSize,
+                               @Value("${neural-network.serving.batching.max-wait-us:200}") long maxWaitMicros,
+                               @Value("${neural-network.serving.batching.queue-capacity:10000}") int queueCapacity,
+                               @Value("${neural-network.serving.batching.workers:1}") int workerCount) {
+        if (enabled && (maxBatchSize < 1 || maxWaitMicros < 0 || queueCapacity < 1 || workerCount < 1)) {
+            throw new IllegalArgumentException("Недопустимые параметры объединения запросов: размер пакета " + maxBatchSize
+                    + ", ожидание " + maxWaitMicros + " мкс, очередь " + queueCapacity + ", потоков " + workerCount);
+        }
+        this.neuralNetworkService = neuralNetworkService;
+        this.metrics = metrics;
+        this.cache = cache;
+        this.inferenceLimiter = inferenceLimiter;
+        this.enabled = enabled;
+        this.maxBatchSize = maxBatchSize;
+        this.maxWaitNanos = TimeUnit.MICROSECONDS.toNanos(maxWaitMicros);
+        this.queue = enabled ? new ArrayBlockingQueue<>(queueCapacity) : null;
+
+        if (enabled) {
+            for (int i = 0; i < workerCount; i++) {
+                Thread worker = new Thread(this::processBatches, "prediction-coalescer-" + i);
+                worker.setDaemon(true);
+                worker.start();
+                workers.add(worker);
+            }
+            log.info("Объединение предсказаний включено: до {} изображений в пакете, ожидание до {} мкс, потоков {}",
+                    maxBatchSize, maxWaitMicros, workerCount);
+        }
+    }
+
+    /**
+     * Предсказывает тип фигуры текущей версией нейронной сети.
+     *
+     * @param figureImage изображение фигуры.
+     * @return будущий результат предсказания; завершается с {@link IllegalArgumentException},
+     * если изображение не подходит по размеру ко входному слою сети.
+     */
+    public CompletableFuture<Prediction> predict(FigureImage figureImage) {
+        VersionedNeuralNetwork model = neuralNetworkService.current();
+        if (!model.classifier().supports(figureImage.image())) {
+            return CompletableFuture.failedFuture(new IllegalArgumentException("Изображение не подходит по размеру ко входному слою сети"));
+        }
+        if (cache.isEnabled()) {
+            FigureType cached = cache.get(model.version(), figureImage.image());
+            if (cached != null) {
+                metrics.countPrediction(cached);
+                return CompletableFuture.completedFuture(new Prediction(cached, model.version()));
+            }
+        }
+        if (!enabled) {
+            return predictNowAsFuture(model, figureImage);
+        }
+        PendingPrediction pending = new PendingPrediction(figureImage, new CompletableFuture<>(), System.nanoTime());
+        if (!queue.offer(pending)) {
+            return predictNowAsFuture(model, figureImage);
+        }
+        return pending.result();
+    }
+
+    /**
+     * Останавливает рабочие потоки; ожидающие запросы завершаются с {@link CancellationException}.
+     */
+    @PreDestroy
+    public void shutdown() {
+        workers.forEach(Thread::interrupt);
+        if (queue != null) {
+            List<PendingPrediction> pending = new ArrayList<>();
+            queue.drainTo(pending);
+            pending.forEach(prediction -> prediction.result().cancel(false));
+        }
+    }
+
+    /**
+     * Выполняет одиночное предсказание в вызывающем потоке и возвращает его как завершенный будущий результат,
+     * чтобы ошибки вычисления доходили до вызывающего так же, как из пакета.
+     *
+     * @param model версия модели, выполняющая предсказание.
+     * @param figureImage изображение фигуры.
+     * @return будущий результат предсказания, завершенный успешно или с исключением вычисления.
+     */
+    private CompletableFuture<Prediction> predictNowAsFuture(VersionedNeuralNetwork model, FigureImage figureImage) {
+        try {
+            return CompletableFuture.completedFuture(predictNow(model, figureImage));
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    /**
+     * Выполняет одиночное предсказание в вызывающем потоке с учетом ограничения одновременных вычислений.
+     *
+     * @param model версия модели, выполняющая предсказание.
+     * @param figureImage изображение фигуры.
+     * @return результат предсказания.
+     */
+    private Prediction predictNow(VersionedNeuralNetwork model, FigureImage figureImage) {
+        long start = System.nanoTime();
+        FigureType figureType = inferenceLimiter.predict(model.classifier(), figureImage);
+        metrics.recordPhase(NeuralNetworkMetrics.PHASE_FORWARD, FigureImage.class.getSimpleName(), System.nanoTime() - start);
+        metrics.countPrediction(figureType);
+        cache.put(model.version(), figureImage.image(), figureType);
+        return new Prediction(figureType, model.version());
+    }
+
+    /**
+     * Цикл рабочего потока: формирует пакеты из очереди и вычисляет их до прерывания потока.
+     */
+    private void processBatches() {
+        List<PendingPrediction> batch = new ArrayList<>(maxBatchSize);
+        List<FigureImage> images = new ArrayList<>(maxBatchSize);
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                collectBatch(batch);
+                runBatch(batch, images);
+                batch.clear();
+                images.clear();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        batch.forEach(prediction -> prediction.result().cancel(false));
+    }
+
+    /**
+     * Ждет первый запрос и добирает пакет, пока он не заполнится или не истечет время ожидания,
+     * отсчитываемое от поступления первого запроса.
+     *
+     * @param batch пустой список, в который записывается пакет.
+     * @throws InterruptedException если поток прерван во время ожидания первого запроса.
+     */
+    private void collectBatch(List<PendingPrediction> batch) throws InterruptedException {
+        PendingPrediction first = queue.take();
+        batch.add(first);
+        long deadline = first.enqueuedNanos() + maxWaitNanos;
+        queue.drainTo(batch, maxBatchSize - batch.size());
+        while (batch.size() < maxBatchSize) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                break;
+            }
+            PendingPrediction next;
+            try {
+                next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt(); // Собранный пакет вычисляется, цикл завершится после него
+                break;
+            }
+            if (next == null) {
+                break;
+            }
+            batch.add(next);
+            queue.drainTo(batch, maxBatchSize - batch.size());
+        }
+    }
+
+    /**
+     * Вычисляет пакет одним пакетным прямым проходом и завершает результаты запросов.
+     *
+     * @param batch запросы пакета.
+     * @param images переиспользуемый список для изображений пакета.
+     */
+    private void runBatch(List<PendingPrediction> batch, List<FigureImage> images) {
+        long start = System.nanoTime();
+        for (PendingPrediction pending : batch) {
+            images.add(pending.figureImage());
+            metrics.recordQueueWait(start - pending.enqueuedNanos());
+        }
+        metrics.recordBatchSize(BATCH_ENDPOINT, batch.size());
+
+        VersionedNeuralNetwork model = neuralNetworkService.current();
+        List<FigureType> predictions;
+        try {
+            predictions = model.classifier().predictBatch(images);
+        } catch (RuntimeException e) {
+            log.error("Ошибка пакетного предсказания", e);
+            batch.forEach(pending -> pending.result().completeExceptionally(e));
+            return;
+        }
+        metrics.recordPhase(NeuralNetworkMetrics.PHASE_FORWARD, "batch", System.nanoTime() - start);
+
+        for (int i = 0; i < batch.size(); i++) {
+            FigureType figureType = predictions.get(i);
+            metrics.countPrediction(figureType);
+            cache.put(model.version(), images.get(i).image(), figureType);
+            batch.get(i).result().complete(new Prediction(figureType, model.version()));
+        }
+    }
+
+    /**
+     * Результат предсказания.
+     *
+     * @param figureType   предсказанный тип фигуры.
+     * @param modelVersion версия модели, выполнившей предсказание.
+     */
+    public record Prediction(FigureType figureType, long modelVersion) {}
+
+    /**
+     * Запрос, ожидающий в очереди.
+     *
+     * @param figureImage   изображение фигуры.
+     * @param result        будущий результат, который завершает рабочий поток.
+     * @param enqueuedNanos момент постановки в очередь по {@link System#nanoTime()}.
+     */
+    private record PendingPrediction(FigureImage figureImage, CompletableFuture<Prediction> result, long enqueuedNanos) {}
+}
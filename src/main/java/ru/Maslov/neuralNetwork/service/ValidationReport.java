@@ -0,0 +1,80 @@
+package ru.Maslov.neuralNetwork.service;
+
+import lombok.Getter;
+import ru.Maslov.neuralNetwork.model.FigureType;
+
+import java.util.List;
+
+/**
+ * Класс ValidationReport содержит результаты проверки версии нейронной сети на валидационном наборе
+ * рядом с результатами ее квантованной 8-битной копии.
+ */
+@Getter
+public class ValidationReport {
+    private final Long modelVersion;
+    private final List<FigureType> figureTypes = List.of(FigureType.values());
+    private final Accuracy network;
+    private final Accuracy quantized;
+
+    /**
+     * Конструктор класса ValidationReport.
+     *
+     * @param modelVersion версия модели, по которой построен отчет.
+     * @param network      результаты нейронной сети.
+     * @param quantized    результаты квантованной копии сети; null, если сеть нельзя квантовать.
+     */
+    public ValidationReport(long modelVersion, Accuracy network, Accuracy quantized) {
+        this.modelVersion = modelVersion;
+        this.network = network;
+        this.quantized = quantized;
+    }
+
+    /**
+     * Класс Accuracy содержит результаты одной модели: общее количество изображений, количество правильных
+     * и неправильных предсказаний, процент правильных предсказаний, матрицу ошибок по типам фигур,
+     * скорость оценки и объем весов.
+     */
+    @Getter
+    public static class Accuracy {
+        private final Integer countAll;
+        private final Integer countTrue;
+        private final Integer countFalse;
+        private final Double procentTrue;
+        /**
+         * Матрица ошибок: строка — истинный тип фигуры, столбец — предсказанный (в порядке {@link FigureType#ordinal()}).
+         */
+        private final int[][] confusionMatrix;
+        private final Double evaluationMillis;
+        private final Double imagesPerSecond;
+        private final Long weightBytes;
+
+        /**
+         * Конструктор класса Accuracy.
+         *
+         * @param confusionMatrix матрица ошибок.
+         * @param evaluationNanos время оценки в наносекундах.
+         * @param weightBytes     объем весов модели в байтах.
+         */
+        public Accuracy(int[][] confusionMatrix, long evaluationNanos, long weightBytes) {
+            int all = 0;
+            int correct = 0;
+            for (int actual = 0; actual < confusionMatrix.length; actual++) {
+                for (int predicted = 0; predicted < confusionMatrix[actual].length; predicted++) {
+                    all += confusionMatrix[actual][predicted];
+                    if (actual == predicted) {
+                        correct += confusionMatrix[actual][predicted];
+                    }
+                }
+            }
+
+            this.confusionMatrix = confusionMatrix;
+            this.countAll = all;
+            this.countTrue = correct;
+            this.countFalse = all - correct;
+            this.procentTrue = countTrue / (double) countAll * 100;
+            this.evaluationMillis = evaluationNanos / 1_000_000.0;
+            this.imagesPerSecond = evaluationNanos == 0 ? 0 : all * 1_000_000_000.0 / evaluationNanos;
+            this.weightBytes = weightBytes;
+        }
+    }
+}
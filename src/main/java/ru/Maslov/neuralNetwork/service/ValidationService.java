@@ -0,0 +1,132 @@
+package ru.Maslov.neuralNetwork.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import ru.Maslov.neuralNetwork.generator.FigureDataGenerator;
+import ru.Maslov.neuralNetwork.model.FigureClassifier;
+import ru.Maslov.neuralNetwork.model.FigureImage;
+import ru.Maslov.neuralNetwork.model.FigureType;
+import ru.Maslov.neuralNetwork.model.QuantizedNeuralNetwork;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.IntStream;
+
+/**
+ * Сервис ValidationService строит отчет о точности текущей версии нейронной сети
+ * и ее квантованной 8-битной копии.
+ * <p>
+ * Валидационный набор генерируется один раз с фиксированным зерном и хранится в памяти.
+ * Оценка выполняется параллельно: набор делится на блоки, каждый поток считает матрицу ошибок
+ * своих блоков, затем матрицы складываются. Готовый отчет кэшируется до смены версии модели,
+ * поэтому повторные запросы отчета не расходуют процессор.
+ */
+@Service
+public class ValidationService {
+    private static final int CHUNK_SIZE = 256; // Количество изображений, оцениваемых одним пакетом
+
+    private final NeuralNetworkService neuralNetworkService;
+    private final List<FigureImage> validDataSet;
+    private final AtomicReference<ValidationReport> cachedReport = new AtomicReference<>();
+    private final ReentrantLock evaluationLock = new ReentrantLock(); // Не закрепляет виртуальный поток за потоком ОС, в отличие от synchronized
+
+    /**
+     * Конструктор сервиса ValidationService.
+     *
+     * @param neuralNetworkService сервис, предоставляющий текущую версию нейронной сети.
+     * @param figureDataGenerator  генератор данных для фигур.
+     * @param seed                 зерно генерации валидационного набора.
+     */
+    @Autowired
+    public ValidationService(NeuralNetworkService neuralNetworkService, FigureDataGenerator figureDataGenerator,
+                             @Value("${neural-network.validation.seed:42}") long seed) {
+        this.neuralNetworkService = neuralNetworkService;
+        this.validDataSet = List.copyOf(figureDataGenerator.getValidDataSet(seed));
+    }
+
+    /**
+     * Возвращает валидационный набор данных.
+     *
+     * @return неизменяемый список изображений валидационного набора.
+     */
+    public List<FigureImage> getValidDataSet() {
+        return validDataSet;
+    }
+
+    /**
+     * Возвращает отчет для текущей версии модели: из кэша, если версия не менялась, иначе строит новый.
+     *
+     * @return отчет о точности предсказаний.
+     */
+    public ValidationReport report() {
+        VersionedNeuralNetwork model = neuralNetworkService.current();
+        ValidationReport report = cachedReport.get();
+        if (report != null && report.getModelVersion() == model.version()) {
+            return report;
+        }
+        evaluationLock.lock();
+        try {
+            report = cachedReport.get();
+            if (report == null || report.getModelVersion() != model.version()) {
+                report = evaluate(model);
+                cachedReport.set(report);
+            }
+            return report;
+        } finally {
+            evaluationLock.unlock();
+        }
+    }
+
+    /**
+     * Оценивает версию сети и ее квантованную копию на валидационном наборе.
+     * Если версия опубликована без квантованной копии, копия создается только для отчета;
+     * сеть, которую нельзя квантовать, оценивается без копии.
+     *
+     * @param model версия нейронной сети.
+     * @return отчет о точности предсказаний.
+     */
+    private ValidationReport evaluate(VersionedNeuralNetwork model) {
+        QuantizedNeuralNetwork quantized = model.quantized();
+        if (quantized == null && model.neuralNetwork().topology().supportsQuantization()) {
+            quantized = model.neuralNetwork().quantize();
+        }
+        return new ValidationReport(model.version(), evaluate(model.neuralNetwork()),
+                quantized != null ? evaluate(quantized) : null);
+    }
+
+    /**
+     * Оценивает модель на валидационном наборе параллельно по блокам.
+     *
+     * @param classifier модель.
+     * @return результаты модели.
+     */
+    private ValidationReport.Accuracy evaluate(FigureClassifier classifier) {
+        int types = FigureType.values().length;
+        int chunks = (validDataSet.size() + CHUNK_SIZE - 1) / CHUNK_SIZE;
+
+        long start = System.nanoTime();
+        int[][] confusionMatrix = IntStream.range(0, chunks)
+                .parallel()
+                .collect(() -> new int[types][types],
+                        (matrix, chunk) -> {
+                            List<FigureImage> figures = validDataSet.subList(chunk * CHUNK_SIZE,
+                                    Math.min(validDataSet.size(), (chunk + 1) * CHUNK_SIZE));
+                            List<FigureType> predictions = classifier.predictBatch(figures);
+                            for (int i = 0; i < figures.size(); i++) {
+                                matrix[figures.get(i).figureType().ordinal()][predictions.get(i).ordinal()]++;
+                            }
+                        },
+                        (left, right) -> {
+                            for (int actual = 0; actual < types; actual++) {
+                                for (int predicted = 0; predicted < types; predicted++) {
+                                    left[actual][predicted] += right[actual][predicted];
+                                }
+                            }
+                        });
+        long elapsed = System.nanoTime() - start;
+
+        return new ValidationReport.Accuracy(confusionMatrix, elapsed, classifier.weightBytes());
+    }
+}
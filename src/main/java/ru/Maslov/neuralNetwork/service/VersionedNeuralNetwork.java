@@ -0,0 +1,25 @@
+package ru.Maslov.neuralNetwork.service;
+
+import ru.Maslov.neuralNetwork.model.FigureClassifier;
+import ru.Maslov.neuralNetwork.model.NeuralNetwork;
+import ru.Maslov.neuralNetwork.model.QuantizedNeuralNetwork;
+
+/**
+ * Опубликованная версия нейронной сети. Сеть, попавшая в эту запись, больше не изменяется:
+ * дообучение выполняется на копии, которая публикуется как новая версия.
+ *
+ * @param version       номер версии модели, начиная с 1
+ * @param neuralNetwork нейронная сеть этой версии
+ * @param quantized     квантованная копия сети для предсказаний; null, если предсказания выполняет сама сеть
+ */
+public record VersionedNeuralNetwork(long version, NeuralNetwork neuralNetwork, QuantizedNeuralNetwork quantized) {
+
+    /**
+     * Возвращает модель, выполняющую предсказания этой версии: квантованную копию, если она есть, иначе саму сеть.
+     *
+     * @return модель для предсказаний.
+     */
+    public FigureClassifier classifier() {
+        return quantized != null ? quantized : neuralNetwork;
+    }
+}
@@ -1,11 +1,25 @@
 package ru.Maslov.neuralNetwork;
 
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.nio.file.Path;
 
 @SpringBootTest
 class NeuralNetworkApplicationTests {
 
+	@TempDir
+	static Path directory;
+
+	// Файлы обучения пишутся во временный каталог, а не в рабочий каталог сборки
+	@DynamicPropertySource
+	static void trainingFiles(DynamicPropertyRegistry registry) {
+		registry.add("neural-network.snapshot.path", () -> directory.resolve("neural-network.bin").toString());
+	}
+
 	@Test
 	void contextLoads() {
 	}
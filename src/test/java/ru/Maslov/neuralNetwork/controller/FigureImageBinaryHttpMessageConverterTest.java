@@ -0,0 +1,88 @@
+package ru.Maslov.neuralNetwork.controller;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+import org.springframework.mock.http.MockHttpInputMessage;
+import ru.Maslov.neuralNetwork.generator.CircleGenerator;
+import ru.Maslov.neuralNetwork.generator.SquareGenerator;
+import ru.Maslov.neuralNetwork.metrics.NeuralNetworkMetrics;
+import ru.Maslov.neuralNetwork.model.BitImage;
+import ru.Maslov.neuralNetwork.model.FigureImage;
+import ru.Maslov.neuralNetwork.model.FigureType;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Проверяет чтение двоичного формата изображения: совпадение с исходным изображением для разных размеров
+ * и отказ на некорректных телах.
+ */
+class FigureImageBinaryHttpMessageConverterTest {
+    private final FigureImageBinaryHttpMessageConverter converter =
+            new FigureImageBinaryHttpMessageConverter(new NeuralNetworkMetrics(new SimpleMeterRegistry()));
+
+    @Test
+    void decodedImageMatchesEncodedImage() throws IOException {
+        FigureImage circle = new CircleGenerator().generate(1).get(0);
+        assertEquals(circle, read(FigureImageBinaryHttpMessageConverter.encode(circle)));
+
+        for (int size : new int[]{1, 3, 8, 9, 20, 64}) {
+            List<List<Boolean>> matrix = new ArrayList<>();
+            for (int row = 0; row < size; row++) {
+                List<Boolean> line = new ArrayList<>();
+                for (int col = 0; col < size; col++) {
+                    line.add((row * 7 + col * 3) % 5 == 0);
+                }
+                matrix.add(line);
+            }
+            FigureImage figure = new FigureImage(BitImage.fromMatrix(matrix), FigureType.TRIANGLE);
+            assertEquals(figure, read(FigureImageBinaryHttpMessageConverter.encode(figure)), "size = " + size);
+        }
+    }
+
+    @Test
+    void pixelsAreLeastSignificantBitFirst() throws IOException {
+        // 3x3, тип не задан: пиксели 0 и 8 (левый верхний и правый нижний углы)
+        FigureImage figure = read(new byte[]{1, 0, 3, 0, 0b0000_0001, 0b0000_0001});
+
+        assertNull(figure.figureType());
+        assertEquals(3, figure.image().size());
+        assertEquals(2, figure.image().cardinality());
+        assertTrue(figure.image().get(0, 0));
+        assertTrue(figure.image().get(2, 2));
+    }
+
+    @Test
+    void malformedBodyIsRejected() {
+        byte[] valid = FigureImageBinaryHttpMessageConverter.encode(new SquareGenerator().generate(1).get(0));
+
+        assertThrows(HttpMessageNotReadableException.class, () -> read(new byte[]{1, 0}));
+        assertThrows(HttpMessageNotReadableException.class, () -> read(Arrays.copyOf(valid, valid.length - 1)));
+        assertThrows(HttpMessageNotReadableException.class, () -> read(Arrays.copyOf(valid, valid.length + 1)));
+
+        byte[] version = valid.clone();
+        version[0] = 2;
+        assertThrows(HttpMessageNotReadableException.class, () -> read(version));
+
+        byte[] figureType = valid.clone();
+        figureType[1] = (byte) (FigureType.values().length + 1);
+        assertThrows(HttpMessageNotReadableException.class, () -> read(figureType));
+
+        assertThrows(HttpMessageNotReadableException.class, () -> read(new byte[]{1, 0, 0, 0}));
+        assertThrows(HttpMessageNotReadableException.class, () -> read(new byte[]{1, 0, (byte) 0xFF, (byte) 0xFF}));
+    }
+
+    private FigureImage read(byte[] body) throws IOException {
+        MockHttpInputMessage message = new MockHttpInputMessage(body);
+        message.getHeaders().setContentType(FigureImageBinaryHttpMessageConverter.MEDIA_TYPE);
+        return converter.read(FigureImage.class, message);
+    }
+}
@@ -0,0 +1,77 @@
+package ru.Maslov.neuralNetwork.generator;
+
+import org.junit.jupiter.api.Test;
+import ru.Maslov.neuralNetwork.model.FigureImage;
+import ru.Maslov.neuralNetwork.model.FigureType;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+/**
+ * Проверяет генерацию набора частями: воспроизводимый набор одинаков при любом количестве потоков,
+ * а в проходе ровно заданное количество изображений каждого типа.
+ */
+class FigureDataSetTest {
+    private static final List<FigureGenerator> GENERATORS =
+            List.of(new CircleGenerator(), new SquareGenerator(), new TriangleGenerator());
+    private static final int COUNT_FIGURE = 1000; // 12 частей
+
+    @Test
+    void parallelGenerationMatchesSequential() {
+        FigureDataSet sequential = new FigureDataSet(GENERATORS, COUNT_FIGURE, 0, 17L);
+        List<FigureImage> expected = toList(sequential);
+        List<FigureImage> expectedValid = new FigureDataGenerator(GENERATORS).getValidDataSet(17);
+
+        for (int threads : new int[]{1, 2, 3, 8}) {
+            ForkJoinPool pool = new ForkJoinPool(threads);
+            try {
+                FigureDataSet parallel = sequential.withExecutor(pool, threads);
+                assertEquals(expected, toList(parallel), "threads = " + threads);
+                assertEquals(expectedValid, new FigureDataGenerator(GENERATORS, pool, threads).getValidDataSet(17),
+                        "threads = " + threads);
+            } finally {
+                pool.shutdown();
+            }
+        }
+    }
+
+    @Test
+    void randomStatePassesMatchAcrossThreadCounts() {
+        FigureDataSet sequential = new FigureDataSet(GENERATORS, COUNT_FIGURE, 100, null).withRandomState(5);
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            FigureDataSet parallel = sequential.withExecutor(pool, 4);
+            List<FigureImage> first = toList(sequential);
+            assertEquals(first, toList(parallel));
+            List<FigureImage> second = toList(sequential);
+            assertEquals(second, toList(parallel));
+            assertNotEquals(first, second);
+            assertEquals(sequential.randomState(), parallel.randomState());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    void passContainsExactCountOfEachType() {
+        Map<FigureType, Integer> counts = new EnumMap<>(FigureType.class);
+        for (FigureImage figure : new FigureDataSet(GENERATORS, COUNT_FIGURE, 0, null)) {
+            counts.merge(figure.figureType(), 1, Integer::sum);
+        }
+        for (FigureType figureType : FigureType.values()) {
+            assertEquals(COUNT_FIGURE, counts.get(figureType), figureType.name());
+        }
+    }
+
+    private static List<FigureImage> toList(FigureDataSet dataSet) {
+        List<FigureImage> figures = new ArrayList<>(dataSet.size());
+        dataSet.forEach(figures::add);
+        return figures;
+    }
+}
@@ -0,0 +1,94 @@
+package ru.Maslov.neuralNetwork.generator;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ru.Maslov.neuralNetwork.model.BitImage;
+import ru.Maslov.neuralNetwork.model.FigureImage;
+import ru.Maslov.neuralNetwork.model.FigureType;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Проверяет файл набора данных: изображения читаются такими же, какими были записаны, для размеров
+ * в одно и несколько слов, повторное открытие не пересоздает файл, а поврежденный файл не открывается.
+ */
+class FigureDataStoreTest {
+    private static final List<FigureGenerator> GENERATORS =
+            List.of(new CircleGenerator(), new SquareGenerator(), new TriangleGenerator());
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void storedImagesMatchGeneratedImages() throws IOException {
+        Path path = directory.resolve("train.dataset");
+        FigureDataStore store = new FigureDataGenerator(GENERATORS).openDataStore(path, 50, 5);
+        List<FigureImage> expected = new ArrayList<>();
+        new FigureDataSet(GENERATORS, 50, 0, 5L).forEach(expected::add);
+
+        assertEquals(expected, store);
+        assertEquals(5, store.seed());
+        assertEquals(FigureDataStore.HEADER_SIZE + 150L * 8, Files.size(path)); // 7x7: 7 байт пикселей и тип
+
+        long modified = Files.getLastModifiedTime(path).toMillis();
+        FigureDataStore reopened = new FigureDataGenerator(GENERATORS).openDataStore(path, 50, 5);
+        assertEquals(expected, reopened);
+        assertEquals(modified, Files.getLastModifiedTime(path).toMillis());
+    }
+
+    @Test
+    void multiWordImagesRoundTrip() throws IOException {
+        for (int size : new int[]{1, 8, 9, 20}) {
+            List<FigureImage> figures = new ArrayList<>();
+            for (int n = 0; n < 5; n++) {
+                List<List<Boolean>> matrix = new ArrayList<>();
+                for (int row = 0; row < size; row++) {
+                    List<Boolean> line = new ArrayList<>();
+                    for (int col = 0; col < size; col++) {
+                        line.add((row * 7 + col * 3 + n) % 5 == 0);
+                    }
+                    matrix.add(line);
+                }
+                figures.add(new FigureImage(BitImage.fromMatrix(matrix), n == 0 ? null : FigureType.values()[n % 3]));
+            }
+            Path path = directory.resolve("size" + size + ".dataset");
+            FigureDataStore.write(path, figures, 0);
+
+            FigureDataStore store = FigureDataStore.open(path);
+            assertEquals(figures, store, "size = " + size);
+            assertEquals(size, store.imageSize());
+        }
+    }
+
+    @Test
+    void malformedFileIsRejected() throws IOException {
+        Path path = directory.resolve("train.dataset");
+        FigureDataStore.write(path, new FigureDataSet(GENERATORS, 10, 0, 1L), 1);
+        byte[] valid = Files.readAllBytes(path);
+
+        Files.write(path, Arrays.copyOf(valid, valid.length - 1));
+        assertThrows(IOException.class, () -> FigureDataStore.open(path));
+
+        byte[] magic = valid.clone();
+        magic[0] ^= 1;
+        Files.write(path, magic);
+        assertThrows(IOException.class, () -> FigureDataStore.open(path));
+
+        Files.write(path, new byte[]{1, 2, 3});
+        assertThrows(IOException.class, () -> FigureDataStore.open(path));
+
+        // Поврежденный файл создается заново, с тем же зерном — побайтно таким же
+        FigureDataStore store = new FigureDataGenerator(GENERATORS).openDataStore(path, 10, 1);
+        assertEquals(30, store.size());
+        assertArrayEquals(valid, Files.readAllBytes(path));
+    }
+}
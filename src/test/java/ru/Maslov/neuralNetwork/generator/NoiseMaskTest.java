@@ -0,0 +1,53 @@
+package ru.Maslov.neuralNetwork.generator;
+
+import org.junit.jupiter.api.Test;
+import ru.Maslov.neuralNetwork.model.BitImage;
+
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.random.RandomGenerator;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Проверяет шум генераторов: каждый пиксель шаблона инвертируется с вероятностью {@value NoiseMask#PROBABILITY},
+ * а биты за пределами изображения остаются нулевыми.
+ */
+class NoiseMaskTest {
+    private static final RandomGenerator NO_NOISE = () -> 0L; // Все слова маски нулевые
+
+    @Test
+    void maskBitsAreSetWithNoiseProbability() {
+        SplittableRandom random = new SplittableRandom(1);
+        int words = 20_000;
+        long bits = 0;
+        for (int i = 0; i < words; i++) {
+            bits += Long.bitCount(NoiseMask.next(random));
+        }
+        assertEquals(NoiseMask.PROBABILITY, (double) bits / ((long) words * Long.SIZE), 0.001);
+    }
+
+    @Test
+    void generatorsFlipTemplatePixelsWithNoiseProbability() {
+        for (int size : new int[]{7, 10}) { // Одно и два слова на изображение
+            SplittableRandom random = new SplittableRandom(size);
+            for (FigureGenerator generator : List.of(new CircleGenerator(size), new SquareGenerator(size),
+                    new TriangleGenerator(size))) {
+                BitImage template = generator.generate(NO_NOISE).image();
+                int images = 4000;
+                long flipped = 0;
+                for (int i = 0; i < images; i++) {
+                    BitImage image = generator.generate(random).image();
+                    int last = image.wordCount() - 1;
+                    for (int w = 0; w <= last; w++) {
+                        flipped += Long.bitCount(image.word(w) ^ template.word(w));
+                    }
+                    int tail = (size * size) & (Long.SIZE - 1);
+                    assertEquals(0, image.word(last) >>> tail, "size = " + size);
+                }
+                assertEquals(NoiseMask.PROBABILITY, (double) flipped / ((long) images * size * size), 0.003,
+                        generator.getClass().getSimpleName() + ", size = " + size);
+            }
+        }
+    }
+}
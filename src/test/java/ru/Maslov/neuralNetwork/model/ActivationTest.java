@@ -0,0 +1,63 @@
+package ru.Maslov.neuralNetwork.model;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Проверяет функции активации: производные по выходу нейрона, точность табличной сигмоиды,
+ * устойчивость softmax и сохранение функций активации в снимке сети.
+ */
+class ActivationTest {
+    private static final double STEP = 1e-6;
+
+    @Test
+    void derivativeMatchesNumericDerivative() {
+        for (Activation activation : new Activation[]{Activation.SIGMOID, Activation.FAST_SIGMOID, Activation.TANH, Activation.RELU}) {
+            // Табличная сигмоида кусочно-линейна, поэтому ее производная сравнивается с производной точной сигмоиды.
+            Activation exact = activation == Activation.FAST_SIGMOID ? Activation.SIGMOID : activation;
+            for (double x = -6.05; x < 6; x += 0.1) {
+                double numeric = (exact.value(x + STEP) - exact.value(x - STEP)) / (2 * STEP);
+                assertEquals(numeric, activation.derivative(activation.value(x)), 1e-4, activation + " при x = " + x);
+            }
+        }
+    }
+
+    @Test
+    void fastSigmoidMatchesSigmoid() {
+        for (double x = -40; x <= 40; x += 0.0007) {
+            assertEquals(Activation.SIGMOID.value(x), Activation.FAST_SIGMOID.value(x), 1e-6, "x = " + x);
+        }
+    }
+
+    @Test
+    void softmaxIsStableForLargeInputs() {
+        double[] values = {1000, 1001, 999, 5};
+        Activation.SOFTMAX.apply(values, 1, 3);
+
+        assertEquals(1000, values[0]);
+        assertEquals(5, values[3]);
+        assertEquals(1.0, values[1] + values[2], 1e-12);
+        assertEquals(1 / (1 + Math.exp(-2)), values[1], 1e-12);
+    }
+
+    @Test
+    void snapshotKeepsActivations(@TempDir Path directory) throws IOException {
+        NetworkTopology topology = NetworkTopology.of(7, 12).withActivations(Activation.RELU, Activation.SOFTMAX);
+        NeuralNetwork neuralNetwork = new NeuralNetwork(topology, 1);
+        Path snapshot = directory.resolve("network.bin");
+
+        neuralNetwork.save(snapshot);
+        NeuralNetwork loaded = NeuralNetwork.load(snapshot);
+
+        assertEquals(topology, loaded.topology());
+        assertFalse(loaded.topology().supportsQuantization());
+        assertThrows(IllegalStateException.class, loaded::quantize);
+    }
+}
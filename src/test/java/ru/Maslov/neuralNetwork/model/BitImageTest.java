@@ -0,0 +1,33 @@
+package ru.Maslov.neuralNetwork.model;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Проверяет, что изображение в одном слове отбрасывает биты за последним пикселем при любом способе создания,
+ * поэтому сеть не обращается к несуществующим входам.
+ */
+class BitImageTest {
+
+    @Test
+    void longBitImageDropsBitsBeyondLastPixel() {
+        LongBitImage image = new LongBitImage(7, -1L);
+
+        assertEquals(49, image.cardinality());
+        assertEquals(BitImage.of(7, new long[]{-1L}), image);
+        assertEquals(-1L, new LongBitImage(8, -1L).bits());
+
+        // Разреженный вход: без маски индекс 63 вышел бы за пределы входного слоя из 49 нейронов
+        NeuralNetwork neuralNetwork = new NeuralNetwork(1);
+        FigureType expected = neuralNetwork.predict(new FigureImage(BitImage.of(7, new long[]{1L}), null));
+        assertEquals(expected, neuralNetwork.predict(new FigureImage(new LongBitImage(7, 1L | 1L << 63), null)));
+    }
+
+    @Test
+    void longBitImageRejectsSizeBeyondOneWord() {
+        assertThrows(IllegalArgumentException.class, () -> new LongBitImage(9, 0));
+        assertThrows(IllegalArgumentException.class, () -> new LongBitImage(0, 0));
+    }
+}
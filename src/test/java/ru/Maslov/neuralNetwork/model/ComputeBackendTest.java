@@ -0,0 +1,121 @@
+package ru.Maslov.neuralNetwork.model;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import ru.Maslov.neuralNetwork.generator.CircleGenerator;
+import ru.Maslov.neuralNetwork.generator.FigureDataGenerator;
+import ru.Maslov.neuralNetwork.generator.SquareGenerator;
+import ru.Maslov.neuralNetwork.generator.TriangleGenerator;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Проверяет, что вычислитель VECTOR и режим FLOAT дают те же выходы сети, что и скалярный
+ * вычислитель в 64-битных числах, с точностью до заданного допуска.
+ */
+class ComputeBackendTest {
+    private static final double DOUBLE_TOLERANCE = 1e-12;
+    private static final double FLOAT_TOLERANCE = 1e-5;
+
+    // Ширины слоев не кратны длине SIMD-регистра и превышают блок столбцов, чтобы проверить хвосты и блоки.
+    private static final NetworkTopology TOPOLOGY = NetworkTopology.of(7, 300, 37);
+
+    private static List<FigureImage> trainDataSet;
+    private static List<FigureImage> validDataSet;
+
+    @BeforeAll
+    static void setUp() {
+        FigureDataGenerator figureDataGenerator = new FigureDataGenerator(
+                List.of(new CircleGenerator(), new SquareGenerator(), new TriangleGenerator()));
+        trainDataSet = figureDataGenerator.getValidDataSet(1);
+        validDataSet = figureDataGenerator.getValidDataSet(2);
+    }
+
+    @Test
+    void vectorBackendMatchesScalar() {
+        assumeTrue(ComputeBackend.VECTOR.isAvailable());
+        NeuralNetwork scalar = trainedNetwork();
+        NeuralNetwork vector = scalar.copy();
+        vector.configureCompute(ComputeBackend.VECTOR, Precision.DOUBLE);
+
+        assertEquivalent(scalar, vector, DOUBLE_TOLERANCE);
+    }
+
+    @Test
+    void floatPrecisionMatchesDouble() {
+        NeuralNetwork reference = trainedNetwork();
+        NeuralNetwork scalarFloat = reference.copy();
+        scalarFloat.configureCompute(ComputeBackend.SCALAR, Precision.FLOAT);
+
+        assertEquivalent(reference, scalarFloat, FLOAT_TOLERANCE);
+    }
+
+    @Test
+    void vectorFloatPrecisionMatchesDouble() {
+        assumeTrue(ComputeBackend.VECTOR.isAvailable());
+        NeuralNetwork reference = trainedNetwork();
+        NeuralNetwork vectorFloat = reference.copy();
+        vectorFloat.configureCompute(ComputeBackend.VECTOR, Precision.FLOAT);
+
+        assertEquivalent(reference, vectorFloat, FLOAT_TOLERANCE);
+    }
+
+    @Test
+    void vectorTrainingMatchesScalar() {
+        assumeTrue(ComputeBackend.VECTOR.isAvailable());
+        NeuralNetwork scalar = new NeuralNetwork(TOPOLOGY, 1);
+        NeuralNetwork vector = new NeuralNetwork(TOPOLOGY, 1);
+        vector.configureCompute(ComputeBackend.VECTOR, Precision.DOUBLE);
+
+        scalar.train(trainDataSet, 3);
+        vector.train(trainDataSet, 3);
+
+        // Суммы обратного прохода складываются по линиям регистра в другом порядке, поэтому допуск шире.
+        assertEquivalent(scalar, vector, 1e-9);
+    }
+
+    private static NeuralNetwork trainedNetwork() {
+        NeuralNetwork neuralNetwork = new NeuralNetwork(TOPOLOGY, 1);
+        neuralNetwork.train(trainDataSet, 5);
+        return neuralNetwork;
+    }
+
+    /**
+     * Сравнивает выходы сетей и предсказания, одиночные и пакетные, на валидационном наборе.
+     * Предсказания сравниваются для изображений, у которых два лучших выхода эталона различаются больше допуска.
+     */
+    private static void assertEquivalent(NeuralNetwork expected, NeuralNetwork actual, double tolerance) {
+        List<FigureType> expectedBatch = expected.predictBatch(validDataSet);
+        List<FigureType> actualBatch = actual.predictBatch(validDataSet);
+
+        for (int i = 0; i < validDataSet.size(); i++) {
+            FigureImage figure = validDataSet.get(i);
+            double[] expectedScores = expected.scores(figure);
+            assertArrayEquals(expectedScores, actual.scores(figure), tolerance);
+
+            if (margin(expectedScores) > 2 * tolerance) {
+                assertEquals(expected.predict(figure), actual.predict(figure));
+                assertEquals(expectedBatch.get(i), actualBatch.get(i));
+            }
+            assertEquals(actual.predict(figure), actualBatch.get(i));
+        }
+    }
+
+    private static double margin(double[] scores) {
+        double first = Double.NEGATIVE_INFINITY;
+        double second = Double.NEGATIVE_INFINITY;
+        for (double score : scores) {
+            if (score > first) {
+                second = first;
+                first = score;
+            } else if (score > second) {
+                second = score;
+            }
+        }
+        return first - second;
+    }
+}
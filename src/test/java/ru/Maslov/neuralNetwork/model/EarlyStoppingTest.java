@@ -0,0 +1,76 @@
+package ru.Maslov.neuralNetwork.model;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import ru.Maslov.neuralNetwork.generator.CircleGenerator;
+import ru.Maslov.neuralNetwork.generator.FigureDataGenerator;
+import ru.Maslov.neuralNetwork.generator.SquareGenerator;
+import ru.Maslov.neuralNetwork.generator.TriangleGenerator;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Проверяет раннюю остановку обучения: остановку после заданного количества эпох без улучшения,
+ * восстановление весов лучшей эпохи и содержимое итогов обучения.
+ */
+class EarlyStoppingTest {
+    private static final NetworkTopology TOPOLOGY = NetworkTopology.of(7, 20);
+    private static final TrainingParameters PARAMETERS = new TrainingParameters(8, 1);
+    private static final long SEED = 3;
+
+    private static List<FigureImage> trainDataSet;
+    private static List<FigureImage> validDataSet;
+
+    @BeforeAll
+    static void setUp() {
+        FigureDataGenerator figureDataGenerator = new FigureDataGenerator(
+                List.of(new CircleGenerator(), new SquareGenerator(), new TriangleGenerator()));
+        trainDataSet = figureDataGenerator.getValidDataSet(1);
+        validDataSet = figureDataGenerator.getValidDataSet(2);
+    }
+
+    @Test
+    void stopsAfterPatienceAndRestoresBestWeights() {
+        // Никакое уменьшение ошибки не превышает minDelta, поэтому лучшей остается первая эпоха
+        NeuralNetwork stopped = new NeuralNetwork(TOPOLOGY, SEED);
+        TrainingSummary summary = stopped.train(trainDataSet, 50, PARAMETERS, new EarlyStopping(validDataSet, 2, 1.0));
+
+        assertTrue(summary.stoppedEarly());
+        assertEquals(3, summary.epochs());
+        assertEquals(1, summary.bestEpoch());
+        assertEquals(3, summary.loss().length);
+        assertEquals(3, summary.validationLoss().length);
+        assertEquals(3, summary.validationAccuracy().length);
+        assertEquals(3, stopped.trainedEpochs());
+
+        NeuralNetwork oneEpoch = new NeuralNetwork(TOPOLOGY, SEED);
+        oneEpoch.train(trainDataSet, 1, PARAMETERS);
+        for (int l = 0; l < oneEpoch.weights().length; l++) {
+            assertArrayEquals(oneEpoch.weights()[l], stopped.weights()[l], "layer = " + l);
+        }
+        assertEquals(oneEpoch.meanError(validDataSet), summary.validationLoss()[0]);
+    }
+
+    @Test
+    void runsAllEpochsWhileImproving() {
+        NeuralNetwork withoutStopping = new NeuralNetwork(TOPOLOGY, SEED);
+        TrainingSummary plain = withoutStopping.train(trainDataSet, 4, PARAMETERS, null);
+        NeuralNetwork withStopping = new NeuralNetwork(TOPOLOGY, SEED);
+        TrainingSummary tracked = withStopping.train(trainDataSet, 4, PARAMETERS, new EarlyStopping(validDataSet, 4, 0));
+
+        assertFalse(plain.stoppedEarly());
+        assertFalse(tracked.stoppedEarly());
+        assertEquals(4, plain.epochs());
+        assertEquals(4, tracked.epochs());
+        assertEquals(0, plain.validationLoss().length);
+        assertArrayEquals(plain.loss(), tracked.loss());
+        assertTrue(tracked.loss()[3] < tracked.loss()[0]);
+        assertTrue(Arrays.stream(tracked.validationAccuracy()).allMatch(accuracy -> accuracy >= 0 && accuracy <= 1));
+    }
+}
@@ -0,0 +1,85 @@
+package ru.Maslov.neuralNetwork.model;
+
+import com.sun.management.ThreadMXBean;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import ru.Maslov.neuralNetwork.generator.CircleGenerator;
+import ru.Maslov.neuralNetwork.generator.FigureDataGenerator;
+import ru.Maslov.neuralNetwork.generator.SquareGenerator;
+import ru.Maslov.neuralNetwork.generator.TriangleGenerator;
+
+import java.lang.management.ManagementFactory;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Проверяет по счетчику выделенной потоком памяти, что обучение и предсказание
+ * в установившемся режиме не выделяют память.
+ */
+class NeuralNetworkAllocationTest {
+    private static final ThreadMXBean THREAD_MX_BEAN = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    private static List<FigureImage> dataSet;
+
+    @BeforeAll
+    static void setUp() {
+        assumeTrue(THREAD_MX_BEAN.isThreadAllocatedMemorySupported());
+        THREAD_MX_BEAN.setThreadAllocatedMemoryEnabled(true);
+        dataSet = new FigureDataGenerator(List.of(new CircleGenerator(), new SquareGenerator(), new TriangleGenerator()))
+                .getValidDataSet();
+    }
+
+    @Test
+    void sequentialTrainingEpochDoesNotAllocate() {
+        NeuralNetwork neuralNetwork = new NeuralNetwork(1);
+
+        long allocated = steadyStateAllocatedBytes(() -> neuralNetwork.train(dataSet, 1));
+
+        assertEquals(0, allocated);
+    }
+
+    @Test
+    void miniBatchTrainingAllocatesOnlyPerCall() {
+        NeuralNetwork neuralNetwork = new NeuralNetwork(1);
+        TrainingParameters parameters = new TrainingParameters(16, 1);
+
+        long oneEpoch = steadyStateAllocatedBytes(() -> neuralNetwork.train(dataSet, 1, parameters));
+        long threeEpochs = steadyStateAllocatedBytes(() -> neuralNetwork.train(dataSet, 3, parameters));
+
+        assertEquals(oneEpoch, threeEpochs);
+    }
+
+    @Test
+    void predictionDoesNotAllocate() {
+        NeuralNetwork neuralNetwork = new NeuralNetwork(1);
+        NeuralNetwork.Workspace workspace = neuralNetwork.newWorkspace();
+
+        long allocated = steadyStateAllocatedBytes(() -> {
+            for (int i = 0; i < dataSet.size(); i++) {
+                neuralNetwork.predict(dataSet.get(i));
+                neuralNetwork.predict(dataSet.get(i), workspace);
+            }
+        });
+
+        assertEquals(0, allocated);
+    }
+
+    /**
+     * Прогревает действие и возвращает минимальный объем памяти, выделенный за один его запуск.
+     * Минимум по нескольким запускам отсекает однократные выделения при компиляции и связывании кода.
+     */
+    private static long steadyStateAllocatedBytes(Runnable action) {
+        for (int i = 0; i < 20; i++) {
+            action.run();
+        }
+        long min = Long.MAX_VALUE;
+        for (int i = 0; i < 5; i++) {
+            long before = THREAD_MX_BEAN.getCurrentThreadAllocatedBytes();
+            action.run();
+            min = Math.min(min, THREAD_MX_BEAN.getCurrentThreadAllocatedBytes() - before);
+        }
+        return min;
+    }
+}
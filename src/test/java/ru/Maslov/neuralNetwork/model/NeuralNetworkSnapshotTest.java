@@ -0,0 +1,49 @@
+package ru.Maslov.neuralNetwork.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Проверяет, что поврежденный заголовок снимка отклоняется до выделения памяти под слои и веса,
+ * а снимки других версий формата не загружаются.
+ */
+class NeuralNetworkSnapshotTest {
+    private static final int VERSION_OFFSET = Integer.BYTES; // После сигнатуры
+    private static final int LAYER_COUNT_OFFSET = 2 * Integer.BYTES; // После сигнатуры и версии
+
+    @Test
+    void snapshotRoundTrip() throws IOException {
+        NeuralNetwork neuralNetwork = new NeuralNetwork(1);
+
+        NeuralNetwork decoded = NeuralNetworkSnapshot.decode(NeuralNetworkSnapshot.encode(neuralNetwork), "test");
+
+        for (int l = 0; l < neuralNetwork.weights().length; l++) {
+            assertArrayEquals(neuralNetwork.weights()[l], decoded.weights()[l]);
+        }
+    }
+
+    @Test
+    void hugeLayerCountIsRejected() {
+        // 0x40000001 * Integer.BYTES переполняет int и дает 4 байта
+        for (int layerCount : new int[]{0x40000001, Integer.MAX_VALUE, 1_000_000}) {
+            ByteBuffer buffer = NeuralNetworkSnapshot.encode(new NeuralNetwork(1));
+            buffer.putInt(LAYER_COUNT_OFFSET, layerCount);
+            assertThrows(IOException.class, () -> NeuralNetworkSnapshot.decode(buffer, "test"), "layerCount = " + layerCount);
+        }
+    }
+
+    @Test
+    void snapshotsOfOtherVersionsAreRejected() {
+        // Версии 1 и 2 сохранялись до исправления обратного распространения ошибки
+        for (int version : new int[]{1, 2, 4}) {
+            ByteBuffer buffer = NeuralNetworkSnapshot.encode(new NeuralNetwork(1));
+            buffer.putInt(VERSION_OFFSET, version);
+            assertThrows(IOException.class, () -> NeuralNetworkSnapshot.decode(buffer, "test"), "version = " + version);
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package ru.Maslov.neuralNetwork.model;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ru.Maslov.neuralNetwork.generator.CircleGenerator;
+import ru.Maslov.neuralNetwork.generator.FigureDataGenerator;
+import ru.Maslov.neuralNetwork.generator.FigureDataSet;
+import ru.Maslov.neuralNetwork.generator.FigureGenerator;
+import ru.Maslov.neuralNetwork.generator.SquareGenerator;
+import ru.Maslov.neuralNetwork.generator.TriangleGenerator;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Проверяет контрольные точки обучения: продолжение с точки дает те же веса и историю эпох,
+ * что и непрерывное обучение, точка других настроек обучения не продолжается, а поврежденная точка не читается.
+ */
+class TrainingCheckpointTest {
+    private static final NetworkTopology TOPOLOGY = NetworkTopology.of(7, 20);
+    private static final TrainingParameters PARAMETERS = new TrainingParameters(8, 2);
+    private static final List<FigureGenerator> GENERATORS =
+            List.of(new CircleGenerator(), new SquareGenerator(), new TriangleGenerator());
+    private static final long SEED = 3;
+    private static final long RANDOM_STATE = 11;
+    private static final String DATA_SOURCE = "lazy, shuffle-buffer 0";
+
+    private static List<FigureImage> validDataSet;
+
+    @TempDir
+    Path directory;
+
+    @BeforeAll
+    static void setUp() {
+        validDataSet = new FigureDataGenerator(GENERATORS).getValidDataSet(2);
+    }
+
+    @Test
+    void resumedTrainingMatchesUninterruptedTraining() throws IOException {
+        EarlyStopping earlyStopping = new EarlyStopping(validDataSet, 10, 0);
+        NeuralNetwork uninterrupted = new NeuralNetwork(TOPOLOGY, SEED);
+        TrainingSummary expected = uninterrupted.train(trainDataSet(RANDOM_STATE), 6, PARAMETERS, earlyStopping);
+
+        // Обучение «прерывается» после 3 эпох, на которых записана контрольная точка
+        Path path = directory.resolve("training.checkpoint");
+        FigureDataSet interruptedData = trainDataSet(RANDOM_STATE);
+        new NeuralNetwork(TOPOLOGY, SEED).train(interruptedData, 3, PARAMETERS, earlyStopping,
+                new Checkpointing(path, 3, Duration.ZERO, interruptedData::randomState, DATA_SOURCE));
+
+        TrainingCheckpoint checkpoint = TrainingCheckpoint.read(path);
+        assertEquals(3, checkpoint.completedEpochs());
+        TrainingSummary resumed = checkpoint.resume(trainDataSet(checkpoint.randomState()), 6, PARAMETERS,
+                earlyStopping, null);
+
+        assertEquals(expected.epochs(), resumed.epochs());
+        assertArrayEquals(expected.loss(), resumed.loss());
+        assertArrayEquals(expected.validationLoss(), resumed.validationLoss());
+        assertEquals(expected.bestEpoch(), resumed.bestEpoch());
+        for (int l = 0; l < uninterrupted.weights().length; l++) {
+            assertArrayEquals(uninterrupted.weights()[l], checkpoint.neuralNetwork().weights()[l], "layer = " + l);
+        }
+        assertEquals(uninterrupted.trainedEpochs(), checkpoint.neuralNetwork().trainedEpochs());
+    }
+
+    @Test
+    void corruptedCheckpointIsRejected() throws IOException {
+        Path path = directory.resolve("training.checkpoint");
+        new NeuralNetwork(TOPOLOGY, SEED).train(trainDataSet(RANDOM_STATE), 1, PARAMETERS, null,
+                new Checkpointing(path, 1, Duration.ZERO, null, DATA_SOURCE));
+        byte[] bytes = Files.readAllBytes(path);
+
+        bytes[bytes.length / 2] ^= 1;
+        Files.write(path, bytes);
+        assertThrows(IOException.class, () -> TrainingCheckpoint.read(path));
+
+        Files.write(path, new byte[]{1, 2, 3});
+        assertThrows(IOException.class, () -> TrainingCheckpoint.read(path));
+    }
+
+    @Test
+    void checkpointOfOtherSettingsIsNotResumed() throws IOException {
+        Path path = directory.resolve("training.checkpoint");
+        new NeuralNetwork(TOPOLOGY, SEED).train(trainDataSet(RANDOM_STATE), 1, PARAMETERS, null,
+                new Checkpointing(path, 1, Duration.ZERO, null, DATA_SOURCE));
+        TrainingCheckpoint checkpoint = TrainingCheckpoint.read(path);
+
+        assertEquals(PARAMETERS.batchSize(), checkpoint.batchSize());
+        assertEquals(PARAMETERS.workers(), checkpoint.workers());
+        assertEquals(DATA_SOURCE, checkpoint.dataSource());
+        assertNull(checkpoint.mismatch(PARAMETERS, false, DATA_SOURCE));
+        assertNotNull(checkpoint.mismatch(new TrainingParameters(16, 2), false, DATA_SOURCE));
+        assertNotNull(checkpoint.mismatch(new TrainingParameters(8, 4), false, DATA_SOURCE));
+        assertNotNull(checkpoint.mismatch(PARAMETERS, true, DATA_SOURCE));
+        assertNotNull(checkpoint.mismatch(PARAMETERS, false, "data-store training.bin, count 100, seed 1"));
+        assertThrows(IllegalArgumentException.class, () -> checkpoint.resume(trainDataSet(checkpoint.randomState()), 2,
+                new TrainingParameters(16, 2), null, null));
+    }
+
+    private static FigureDataSet trainDataSet(long randomState) {
+        return new FigureDataSet(GENERATORS, 100, 0, null).withRandomState(randomState);
+    }
+}
@@ -0,0 +1,79 @@
+package ru.Maslov.neuralNetwork.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import ru.Maslov.neuralNetwork.generator.CircleGenerator;
+import ru.Maslov.neuralNetwork.generator.FigureDataGenerator;
+import ru.Maslov.neuralNetwork.generator.SquareGenerator;
+import ru.Maslov.neuralNetwork.generator.TriangleGenerator;
+import ru.Maslov.neuralNetwork.metrics.NeuralNetworkMetrics;
+import ru.Maslov.neuralNetwork.model.FigureImage;
+import ru.Maslov.neuralNetwork.model.FigureType;
+import ru.Maslov.neuralNetwork.model.NeuralNetwork;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Проверяет, что массовые предсказания по частям совпадают с одиночными, сохраняют порядок строк
+ * и продолжаются после некорректных строк.
+ */
+class BulkScoringServiceTest {
+    private static final int CHUNK_SIZE = 7;
+
+    @Test
+    void streamedScoresMatchSingleScores() throws IOException {
+        ObjectMapper objectMapper = new ObjectMapper();
+        NeuralNetwork neuralNetwork = new NeuralNetwork(1);
+        List<FigureImage> figures = new FigureDataGenerator(List.of(new CircleGenerator(), new SquareGenerator(), new TriangleGenerator()))
+                .getValidDataSet(3).subList(0, 40);
+        neuralNetwork.train(figures, 3);
+
+        StringBuilder input = new StringBuilder();
+        for (int i = 0; i < figures.size(); i++) {
+            if (i == 10) {
+                input.append("{\"image\":[[true]]}\n");
+            }
+            if (i == 20) {
+                input.append("not json\n\n");
+            }
+            if (i == 30) {
+                input.append("null\n");
+            }
+            input.append(objectMapper.writeValueAsString(new FigureImage(figures.get(i).image(), null))).append('\n');
+        }
+
+        BulkScoringService service = new BulkScoringService(new NeuralNetworkMetrics(new SimpleMeterRegistry()),
+                new InferenceLimiter(2, false), objectMapper, CHUNK_SIZE);
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        long scored = service.score(new VersionedNeuralNetwork(1, neuralNetwork, null),
+                new ByteArrayInputStream(input.toString().getBytes(StandardCharsets.UTF_8)), output);
+
+        String[] lines = output.toString(StandardCharsets.UTF_8).split("\n");
+        assertEquals(figures.size(), scored);
+        assertEquals(figures.size() + 3, lines.length);
+        int figure = 0;
+        for (int i = 0; i < lines.length; i++) {
+            JsonNode line = objectMapper.readTree(lines[i]);
+            assertEquals(i, line.get("index").asLong());
+            if (i == 10 || i == 21 || i == 32) {
+                assertTrue(line.has("error"), lines[i]);
+                continue;
+            }
+            FigureImage expected = figures.get(figure++);
+            assertEquals(neuralNetwork.predict(expected).name(), line.get("result").asText());
+            double[] scores = neuralNetwork.scores(expected);
+            for (FigureType figureType : FigureType.values()) {
+                assertEquals(scores[figureType.ordinal()], line.get("scores").get(figureType.name()).asDouble(), 1e-12);
+            }
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package ru.Maslov.neuralNetwork.service;
+
+import com.sun.management.ThreadMXBean;
+import org.junit.jupiter.api.Test;
+import ru.Maslov.neuralNetwork.generator.CircleGenerator;
+import ru.Maslov.neuralNetwork.generator.FigureDataGenerator;
+import ru.Maslov.neuralNetwork.generator.SquareGenerator;
+import ru.Maslov.neuralNetwork.generator.TriangleGenerator;
+import ru.Maslov.neuralNetwork.model.FigureClassifier;
+import ru.Maslov.neuralNetwork.model.FigureImage;
+import ru.Maslov.neuralNetwork.model.NeuralNetwork;
+
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Проверяет, что предсказания через ограничение одновременных вычислений берут буферы из пула и не выделяют
+ * память в потоках, создаваемых на каждый запрос, как виртуальные потоки. Новый поток платформы так же
+ * начинает без буферов потока, поэтому тест не требует Java 21.
+ */
+class InferenceLimiterTest {
+    private static final ThreadMXBean THREAD_MX_BEAN = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    @Test
+    void predictionsOnFreshThreadsDoNotAllocate() throws InterruptedException {
+        assumeTrue(THREAD_MX_BEAN.isThreadAllocatedMemorySupported());
+        THREAD_MX_BEAN.setThreadAllocatedMemoryEnabled(true);
+        List<FigureImage> dataSet = new FigureDataGenerator(List.of(new CircleGenerator(), new SquareGenerator(), new TriangleGenerator()))
+                .getValidDataSet();
+        InferenceLimiter limiter = new InferenceLimiter(2, false);
+
+        for (FigureClassifier classifier : List.of(new NeuralNetwork(1), new NeuralNetwork(1).quantize())) {
+            for (int i = 0; i < 20; i++) { // Прогрев кода предсказания
+                allocatedOnFreshThread(limiter, classifier, dataSet);
+            }
+            long min = Long.MAX_VALUE;
+            for (int i = 0; i < 5; i++) {
+                min = Math.min(min, allocatedOnFreshThread(limiter, classifier, dataSet));
+            }
+            assertEquals(0, min, classifier.getClass().getSimpleName());
+        }
+    }
+
+    /**
+     * Предсказывает все изображения набора в новом потоке и возвращает объем памяти, выделенный этим потоком.
+     */
+    private static long allocatedOnFreshThread(InferenceLimiter limiter, FigureClassifier classifier,
+                                               List<FigureImage> dataSet) throws InterruptedException {
+        AtomicLong allocated = new AtomicLong();
+        Thread thread = new Thread(() -> {
+            long before = THREAD_MX_BEAN.getCurrentThreadAllocatedBytes();
+            for (int i = 0; i < dataSet.size(); i++) {
+                limiter.predict(classifier, dataSet.get(i));
+            }
+            allocated.set(THREAD_MX_BEAN.getCurrentThreadAllocatedBytes() - before);
+        });
+        thread.start();
+        thread.join();
+        return allocated.get();
+    }
+}
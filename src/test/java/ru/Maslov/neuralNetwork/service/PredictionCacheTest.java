@@ -0,0 +1,107 @@
+package ru.Maslov.neuralNetwork.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import ru.Maslov.neuralNetwork.metrics.NeuralNetworkMetrics;
+import ru.Maslov.neuralNetwork.model.BitImage;
+import ru.Maslov.neuralNetwork.model.FigureType;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Проверяет кэш предсказаний: корректность записей при вытеснении, сохранение часто используемых записей,
+ * сброс при смене версии модели и согласованность при одновременном доступе.
+ */
+class PredictionCacheTest {
+    private static final int SIZE = 7;
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+    @Test
+    void evictionKeepsEntriesConsistentAndHotEntriesResident() {
+        PredictionCache cache = new PredictionCache(new NeuralNetworkMetrics(registry), true, 256, 4);
+        SplittableRandom random = new SplittableRandom(1);
+        List<BitImage> hot = new ArrayList<>();
+        for (int i = 0; i < 32; i++) {
+            hot.add(image(random.nextLong()));
+        }
+        hot.forEach(image -> cache.put(1, image, expected(image)));
+
+        for (int i = 0; i < 20_000; i++) {
+            BitImage image = i % 2 == 0 ? hot.get(random.nextInt(hot.size())) : image(random.nextLong());
+            FigureType cached = cache.get(1, image);
+            if (cached == null) {
+                cache.put(1, image, expected(image));
+            } else {
+                assertEquals(expected(image), cached);
+            }
+            assertTrue(cache.size() <= 256);
+        }
+        for (BitImage image : hot) {
+            assertEquals(expected(image), cache.get(1, image));
+        }
+        assertTrue(registry.get("neural.network.prediction.cache.evictions").functionCounter().count() > 0);
+        assertTrue(registry.get("neural.network.prediction.cache").tag("result", "hit").functionCounter().count() > 10_000);
+    }
+
+    @Test
+    void newModelVersionInvalidatesEntries() {
+        PredictionCache cache = new PredictionCache(new NeuralNetworkMetrics(registry), true, 64, 2);
+        BitImage image = image(42);
+        cache.put(1, image, FigureType.SQUARE);
+        assertEquals(FigureType.SQUARE, cache.get(1, image));
+
+        assertNull(cache.get(2, image));
+        cache.put(2, image, FigureType.CIRCLE);
+        cache.put(1, image, FigureType.SQUARE); // Запоздавшее предсказание старой версии не сохраняется
+        assertNull(cache.get(1, image));
+        assertEquals(FigureType.CIRCLE, cache.get(2, image));
+    }
+
+    @Test
+    void concurrentAccessReturnsOnlyStoredPredictions() throws Exception {
+        PredictionCache cache = new PredictionCache(new NeuralNetworkMetrics(registry), true, 512, 4);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                long seed = t;
+                futures.add(executor.submit(() -> {
+                    SplittableRandom random = new SplittableRandom(seed);
+                    for (int i = 0; i < 200_000; i++) {
+                        BitImage image = image(random.nextInt(2048));
+                        FigureType cached = cache.get(1, image);
+                        if (cached == null) {
+                            cache.put(1, image, expected(image));
+                        } else {
+                            assertEquals(expected(image), cached);
+                        }
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+        assertTrue(cache.size() <= 512);
+    }
+
+    private static BitImage image(long bits) {
+        return BitImage.of(SIZE, new long[]{bits});
+    }
+
+    private static FigureType expected(BitImage image) {
+        return FigureType.values()[(int) Long.remainderUnsigned(image.word(0) * 31 + 7, FigureType.values().length)];
+    }
+}
@@ -0,0 +1,110 @@
+package ru.Maslov.neuralNetwork.service;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import ru.Maslov.neuralNetwork.generator.CircleGenerator;
+import ru.Maslov.neuralNetwork.generator.FigureDataGenerator;
+import ru.Maslov.neuralNetwork.generator.SquareGenerator;
+import ru.Maslov.neuralNetwork.generator.TriangleGenerator;
+import ru.Maslov.neuralNetwork.metrics.NeuralNetworkMetrics;
+import ru.Maslov.neuralNetwork.model.BitImage;
+import ru.Maslov.neuralNetwork.model.FigureImage;
+import ru.Maslov.neuralNetwork.model.NeuralNetwork;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Проверяет, что объединение одновременных предсказаний в пакеты возвращает каждому вызывающему
+ * результат его изображения и записывает метрики пакетов.
+ */
+class PredictionCoalescerTest {
+    private static final int MAX_BATCH_SIZE = 16;
+
+    private SimpleMeterRegistry registry;
+    private NeuralNetworkService neuralNetworkService;
+    private PredictionCoalescer coalescer;
+
+    @BeforeEach
+    void setUp() {
+        registry = new SimpleMeterRegistry();
+        NeuralNetworkMetrics metrics = new NeuralNetworkMetrics(registry);
+        NeuralNetwork neuralNetwork = new NeuralNetwork(1);
+        neuralNetwork.train(new FigureDataGenerator(List.of(new CircleGenerator(), new SquareGenerator(), new TriangleGenerator()))
+                .getValidDataSet(1), 5);
+        neuralNetworkService = new NeuralNetworkService(neuralNetwork, metrics, 100, 32, 1, 1, 60_000, false);
+        coalescer = new PredictionCoalescer(neuralNetworkService, metrics, new PredictionCache(metrics, false, 0, 0),
+                new InferenceLimiter(0, false), true, MAX_BATCH_SIZE, 2_000, 10_000, 2);
+    }
+
+    @AfterEach
+    void tearDown() {
+        coalescer.shutdown();
+        neuralNetworkService.shutdown();
+    }
+
+    @Test
+    void concurrentPredictionsMatchSinglePredictions() throws Exception {
+        List<FigureImage> figures = new FigureDataGenerator(List.of(new CircleGenerator(), new SquareGenerator(), new TriangleGenerator()))
+                .getValidDataSet(2);
+        NeuralNetwork neuralNetwork = neuralNetworkService.current().neuralNetwork();
+
+        ExecutorService clients = Executors.newFixedThreadPool(8);
+        try {
+            List<CompletableFuture<PredictionCoalescer.Prediction>> futures = figures.stream()
+                    .map(figure -> CompletableFuture.supplyAsync(() -> coalescer.predict(figure), clients)
+                            .thenCompose(future -> future))
+                    .toList();
+            for (int i = 0; i < figures.size(); i++) {
+                PredictionCoalescer.Prediction prediction = futures.get(i).get(10, TimeUnit.SECONDS);
+                assertEquals(neuralNetwork.predict(figures.get(i)), prediction.figureType());
+                assertEquals(1, prediction.modelVersion());
+            }
+        } finally {
+            clients.shutdown();
+        }
+
+        DistributionSummary batchSize = registry.get("neural.network.batch.size")
+                .tag("endpoint", PredictionCoalescer.BATCH_ENDPOINT).summary();
+        assertEquals(figures.size(), (long) batchSize.totalAmount());
+        assertTrue(batchSize.max() <= MAX_BATCH_SIZE);
+        assertEquals(figures.size(), registry.get("neural.network.batching.queue.wait").timer().count());
+    }
+
+    @Test
+    void imageOfWrongSizeIsRejected() {
+        FigureImage figure = new FigureImage(BitImage.of(5, new long[1]), null);
+
+        ExecutionException exception = assertThrows(ExecutionException.class,
+                () -> coalescer.predict(figure).get(10, TimeUnit.SECONDS));
+        assertInstanceOf(IllegalArgumentException.class, exception.getCause());
+    }
+
+    @Test
+    void imageOfWrongSizeIsRejectedWithoutBatching() {
+        NeuralNetworkMetrics metrics = new NeuralNetworkMetrics(registry);
+        PredictionCoalescer direct = new PredictionCoalescer(neuralNetworkService, metrics, new PredictionCache(metrics, false, 0, 0),
+                new InferenceLimiter(0, false), false, MAX_BATCH_SIZE, 2_000, 10_000, 2);
+        FigureImage figure = new FigureImage(BitImage.of(5, new long[1]), null);
+        try {
+            CompletableFuture<PredictionCoalescer.Prediction> future = direct.predict(figure); // Не бросает исключение
+
+            ExecutionException exception = assertThrows(ExecutionException.class, () -> future.get(10, TimeUnit.SECONDS));
+            assertInstanceOf(IllegalArgumentException.class, exception.getCause());
+        } finally {
+            direct.shutdown();
+        }
+    }
+}
@@ -0,0 +1,260 @@
+package ru.Maslov.neuralNetwork.model;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+import java.util.Arrays;
+
+/**
+ * Реализация матричных операций на Java Vector API: внутренние циклы по столбцам выполняются
+ * регистрами максимальной ширины, поддерживаемой процессором (AVX2 — 4 double или 8 float,
+ * AVX-512 — 8 double или 16 float).
+ * <p>
+ * В {@code gemv}, {@code sumRows}, {@code gemm}, {@code subtractOuter} и {@code subtractRows} каждый
+ * элемент результата вычисляется теми же умножениями и сложениями в том же порядке, что и
+ * в {@link ScalarKernels}, поэтому результаты совпадают побитово. В {@code gemvTransposed} сумма
+ * складывается по линиям регистра в другом порядке и может отличаться в последних разрядах.
+ * <p>
+ * Класс компилируется только с профилем Maven {@code vector} и загружается по имени, только если модуль
+ * {@code jdk.incubator.vector} доступен ({@link ComputeBackend#isAvailable()}).
+ */
+final class VectorKernels implements DenseKernels {
+    static final VectorKernels INSTANCE = new VectorKernels();
+
+    private static final VectorSpecies<Double> DOUBLES = DoubleVector.SPECIES_PREFERRED;
+    private static final VectorSpecies<Float> FLOATS = FloatVector.SPECIES_PREFERRED;
+
+    private VectorKernels() {
+    }
+
+    /**
+     * Матрица читается построчно, как в скалярной реализации: блок результата шириной {@code COL_BLOCK}
+     * остается в L1, а каждая строка матрицы прибавляется к нему регистрами.
+     */
+    @Override
+    public void gemv(double[] vector, double[] matrix, int rows, int cols, double[] result) {
+        Arrays.fill(result, 0, cols, 0.0);
+        int lanes = DOUBLES.length();
+        for (int jj = 0; jj < cols; jj += COL_BLOCK) {
+            int jEnd = Math.min(cols, jj + COL_BLOCK);
+            int bound = jj + DOUBLES.loopBound(jEnd - jj);
+            for (int k = 0; k < rows; k++) {
+                double v = vector[k];
+                if (v == 0.0) {
+                    continue;
+                }
+                DoubleVector broadcast = DoubleVector.broadcast(DOUBLES, v);
+                int row = k * cols;
+                int j = jj;
+                for (; j < bound; j += lanes) {
+                    DoubleVector.fromArray(DOUBLES, result, j)
+                            .add(DoubleVector.fromArray(DOUBLES, matrix, row + j).mul(broadcast))
+                            .intoArray(result, j);
+                }
+                for (; j < jEnd; j++) {
+                    result[j] += v * matrix[row + j];
+                }
+            }
+        }
+    }
+
+    @Override
+    public void gemv(float[] vector, float[] matrix, int rows, int cols, float[] result) {
+        Arrays.fill(result, 0, cols, 0.0f);
+        int lanes = FLOATS.length();
+        for (int jj = 0; jj < cols; jj += COL_BLOCK) {
+            int jEnd = Math.min(cols, jj + COL_BLOCK);
+            int bound = jj + FLOATS.loopBound(jEnd - jj);
+            for (int k = 0; k < rows; k++) {
+                float v = vector[k];
+                if (v == 0.0f) {
+                    continue;
+                }
+                FloatVector broadcast = FloatVector.broadcast(FLOATS, v);
+                int row = k * cols;
+                int j = jj;
+                for (; j < bound; j += lanes) {
+                    FloatVector.fromArray(FLOATS, result, j)
+                            .add(FloatVector.fromArray(FLOATS, matrix, row + j).mul(broadcast))
+                            .intoArray(result, j);
+                }
+                for (; j < jEnd; j++) {
+                    result[j] += v * matrix[row + j];
+                }
+            }
+        }
+    }
+
+    @Override
+    public void sumRows(int[] rows, int count, double[] matrix, int cols, double[] result) {
+        Arrays.fill(result, 0, cols, 0.0);
+        int lanes = DOUBLES.length();
+        for (int jj = 0; jj < cols; jj += COL_BLOCK) {
+            int jEnd = Math.min(cols, jj + COL_BLOCK);
+            int bound = jj + DOUBLES.loopBound(jEnd - jj);
+            for (int n = 0; n < count; n++) {
+                int row = rows[n] * cols;
+                int j = jj;
+                for (; j < bound; j += lanes) {
+                    DoubleVector.fromArray(DOUBLES, result, j)
+                            .add(DoubleVector.fromArray(DOUBLES, matrix, row + j))
+                            .intoArray(result, j);
+                }
+                for (; j < jEnd; j++) {
+                    result[j] += matrix[row + j];
+                }
+            }
+        }
+    }
+
+    @Override
+    public void sumRows(int[] rows, int count, float[] matrix, int cols, float[] result) {
+        Arrays.fill(result, 0, cols, 0.0f);
+        int lanes = FLOATS.length();
+        for (int jj = 0; jj < cols; jj += COL_BLOCK) {
+            int jEnd = Math.min(cols, jj + COL_BLOCK);
+            int bound = jj + FLOATS.loopBound(jEnd - jj);
+            for (int n = 0; n < count; n++) {
+                int row = rows[n] * cols;
+                int j = jj;
+                for (; j < bound; j += lanes) {
+                    FloatVector.fromArray(FLOATS, result, j)
+                            .add(FloatVector.fromArray(FLOATS, matrix, row + j))
+                            .intoArray(result, j);
+                }
+                for (; j < jEnd; j++) {
+                    result[j] += matrix[row + j];
+                }
+            }
+        }
+    }
+
+    @Override
+    public void gemvTransposed(double[] vector, double[] matrix, int rows, int cols, double[] result) {
+        int bound = DOUBLES.loopBound(cols);
+        for (int i = 0; i < rows; i++) {
+            int row = i * cols;
+            DoubleVector sum = DoubleVector.zero(DOUBLES);
+            int j = 0;
+            for (; j < bound; j += DOUBLES.length()) {
+                sum = sum.add(DoubleVector.fromArray(DOUBLES, vector, j).mul(DoubleVector.fromArray(DOUBLES, matrix, row + j)));
+            }
+            double tail = 0.0;
+            for (; j < cols; j++) {
+                tail += vector[j] * matrix[row + j];
+            }
+            result[i] = sum.reduceLanes(VectorOperators.ADD) + tail;
+        }
+    }
+
+    @Override
+    public void gemm(double[] a, int rows, int inner, double[] b, int cols, double[] result) {
+        Arrays.fill(result, 0, rows * cols, 0.0);
+        int lanes = DOUBLES.length();
+        for (int kk = 0; kk < inner; kk += INNER_BLOCK) {
+            int kEnd = Math.min(inner, kk + INNER_BLOCK);
+            for (int jj = 0; jj < cols; jj += COL_BLOCK) {
+                int jEnd = Math.min(cols, jj + COL_BLOCK);
+                int bound = jj + DOUBLES.loopBound(jEnd - jj);
+                for (int i = 0; i < rows; i++) {
+                    int aRow = i * inner;
+                    int resultRow = i * cols;
+                    for (int k = kk; k < kEnd; k++) {
+                        double v = a[aRow + k];
+                        if (v == 0.0) {
+                            continue;
+                        }
+                        DoubleVector broadcast = DoubleVector.broadcast(DOUBLES, v);
+                        int bRow = k * cols;
+                        int j = jj;
+                        for (; j < bound; j += lanes) {
+                            DoubleVector.fromArray(DOUBLES, result, resultRow + j)
+                                    .add(DoubleVector.fromArray(DOUBLES, b, bRow + j).mul(broadcast))
+                                    .intoArray(result, resultRow + j);
+                        }
+                        for (; j < jEnd; j++) {
+                            result[resultRow + j] += v * b[bRow + j];
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    @Override
+    public void gemm(float[] a, int rows, int inner, float[] b, int cols, float[] result) {
+        Arrays.fill(result, 0, rows * cols, 0.0f);
+        int lanes = FLOATS.length();
+        for (int kk = 0; kk < inner; kk += INNER_BLOCK) {
+            int kEnd = Math.min(inner, kk + INNER_BLOCK);
+            for (int jj = 0; jj < cols; jj += COL_BLOCK) {
+                int jEnd = Math.min(cols, jj + COL_BLOCK);
+                int bound = jj + FLOATS.loopBound(jEnd - jj);
+                for (int i = 0; i < rows; i++) {
+                    int aRow = i * inner;
+                    int resultRow = i * cols;
+                    for (int k = kk; k < kEnd; k++) {
+                        float v = a[aRow + k];
+                        if (v == 0.0f) {
+                            continue;
+                        }
+                        FloatVector broadcast = FloatVector.broadcast(FLOATS, v);
+                        int bRow = k * cols;
+                        int j = jj;
+                        for (; j < bound; j += lanes) {
+                            FloatVector.fromArray(FLOATS, result, resultRow + j)
+                                    .add(FloatVector.fromArray(FLOATS, b, bRow + j).mul(broadcast))
+                                    .intoArray(result, resultRow + j);
+                        }
+                        for (; j < jEnd; j++) {
+                            result[resultRow + j] += v * b[bRow + j];
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    @Override
+    public void subtractOuter(double[] matrix, double[] left, int rows, double[] right, int cols) {
+        int lanes = DOUBLES.length();
+        int bound = DOUBLES.loopBound(cols);
+        for (int k = 0; k < rows; k++) {
+            double v = left[k];
+            if (v == 0.0) {
+                continue;
+            }
+            DoubleVector broadcast = DoubleVector.broadcast(DOUBLES, v);
+            int row = k * cols;
+            int j = 0;
+            for (; j < bound; j += lanes) {
+                DoubleVector.fromArray(DOUBLES, matrix, row + j)
+                        .sub(DoubleVector.fromArray(DOUBLES, right, j).mul(broadcast))
+                        .intoArray(matrix, row + j);
+            }
+            for (; j < cols; j++) {
+                matrix[row + j] -= right[j] * v;
+            }
+        }
+    }
+
+    @Override
+    public void subtractRows(double[] matrix, int[] rows, int count, double[] right, int cols) {
+        int lanes = DOUBLES.length();
+        int bound = DOUBLES.loopBound(cols);
+        for (int n = 0; n < count; n++) {
+            int row = rows[n] * cols;
+            int j = 0;
+            for (; j < bound; j += lanes) {
+                DoubleVector.fromArray(DOUBLES, matrix, row + j)
+                        .sub(DoubleVector.fromArray(DOUBLES, right, j))
+                        .intoArray(matrix, row + j);
+            }
+            for (; j < cols; j++) {
+                matrix[row + j] -= right[j];
+            }
+        }
+    }
+}